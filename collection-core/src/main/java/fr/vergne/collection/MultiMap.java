@@ -1,9 +1,13 @@
 package fr.vergne.collection;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <p>
@@ -214,6 +218,115 @@ public interface MultiMap<Key, Value> extends Iterable<Entry<Key, Value>> {
 		return !iterator().hasNext();
 	}
 
+	/**
+	 * Apply an action on each (key, value) couple of this {@link MultiMap}.
+	 * Contrary to {@link #forEach(java.util.function.Consumer)}, no
+	 * {@link Entry} is provided, which allows implementations to not create
+	 * any object for each couple.
+	 * 
+	 * @param action
+	 *            the action to apply on each couple
+	 */
+	default void forEach(BiConsumer<? super Key, ? super Value> action) {
+		for (Entry<Key, Value> couple : this) {
+			action.accept(couple.getKey(), couple.getValue());
+		}
+	}
+
+	/**
+	 * A {@link Cursor} allows to go through the (key, value) couples of a
+	 * {@link MultiMap}. At the opposite of an {@link Iterator}, which provides
+	 * an {@link Entry} for each couple, the same {@link Cursor} is reused for
+	 * all the couples: each call to {@link #advance()} moves it to the next
+	 * couple, which is then available through {@link #key()} and
+	 * {@link #value()}.
+	 * 
+	 * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+	 * 
+	 * @param <Key>
+	 * @param <Value>
+	 */
+	public static interface Cursor<Key, Value> {
+		/**
+		 * Move this {@link Cursor} to the next couple.
+		 * 
+		 * @return <code>true</code> if the {@link Cursor} is on a new couple,
+		 *         <code>false</code> if there is no couple anymore
+		 */
+		public boolean advance();
+
+		/**
+		 * 
+		 * @return the key of the current couple
+		 * @throws IllegalStateException
+		 *             if the {@link Cursor} is not on a couple
+		 */
+		public Key key();
+
+		/**
+		 * 
+		 * @return the value of the current couple
+		 * @throws IllegalStateException
+		 *             if the {@link Cursor} is not on a couple
+		 */
+		public Value value();
+	}
+
+	/**
+	 * 
+	 * @return a new {@link Cursor} placed before the first couple of this
+	 *         {@link MultiMap}
+	 */
+	default Cursor<Key, Value> cursor() {
+		Iterator<Entry<Key, Value>> iterator = iterator();
+		return new Cursor<Key, Value>() {
+
+			private Entry<Key, Value> couple;
+
+			@Override
+			public boolean advance() {
+				couple = iterator.hasNext() ? iterator.next() : null;
+				return couple != null;
+			}
+
+			@Override
+			public Key key() {
+				return current().getKey();
+			}
+
+			@Override
+			public Value value() {
+				return current().getValue();
+			}
+
+			private Entry<Key, Value> current() {
+				if (couple == null) {
+					throw new IllegalStateException("No current couple");
+				} else {
+					return couple;
+				}
+			}
+		};
+	}
+
+	/**
+	 * 
+	 * @return a sequential {@link Stream} over the (key, value) couples of
+	 *         this {@link MultiMap}
+	 */
+	default Stream<Entry<Key, Value>> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * 
+	 * @return a parallel {@link Stream} over the (key, value) couples of this
+	 *         {@link MultiMap}
+	 */
+	default Stream<Entry<Key, Value>> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+
 	default Map<Key, Collection<Value>> toMap() {
 		return new Map<Key, Collection<Value>>() {
 
@@ -0,0 +1,134 @@
+package fr.vergne.collection;
+
+import java.util.Comparator;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link NavigableMultiMap} is a {@link MultiMap} which keeps its keys
+ * sorted, like a {@link NavigableMap}. It allows to search the keys closest to
+ * a given one and to retrieve ranges of keys. The ranges are provided as
+ * {@link NavigableMultiMap} views backed by the original one, so no copy is
+ * made and the changes in one are reflected in the other.
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public interface NavigableMultiMap<Key, Value> extends MultiMap<Key, Value> {
+
+	/**
+	 *
+	 * @return the {@link Comparator} used to sort the keys, <code>null</code>
+	 *         if they use their natural ordering
+	 */
+	public Comparator<? super Key> comparator();
+
+	/**
+	 *
+	 * @return the lowest key
+	 * @throws NoSuchElementException
+	 *             if this {@link NavigableMultiMap} is empty
+	 */
+	public Key firstKey();
+
+	/**
+	 *
+	 * @return the highest key
+	 * @throws NoSuchElementException
+	 *             if this {@link NavigableMultiMap} is empty
+	 */
+	public Key lastKey();
+
+	/**
+	 *
+	 * @return the lowest key greater than or equal to the given key,
+	 *         <code>null</code> if there is no such key
+	 */
+	public Key ceilingKey(Key key);
+
+	/**
+	 *
+	 * @return the highest key lower than or equal to the given key,
+	 *         <code>null</code> if there is no such key
+	 */
+	public Key floorKey(Key key);
+
+	/**
+	 *
+	 * @return the lowest key strictly greater than the given key,
+	 *         <code>null</code> if there is no such key
+	 */
+	public Key higherKey(Key key);
+
+	/**
+	 *
+	 * @return the highest key strictly lower than the given key,
+	 *         <code>null</code> if there is no such key
+	 */
+	public Key lowerKey(Key key);
+
+	/**
+	 *
+	 * @return all the keys stored in this {@link NavigableMultiMap}, in
+	 *         ascending order
+	 */
+	@Override
+	public NavigableSet<Key> keySet();
+
+	/**
+	 *
+	 * @param fromKey
+	 *            the lowest key of the range
+	 * @param fromInclusive
+	 *            <code>true</code> if the lowest key is part of the range
+	 * @param toKey
+	 *            the highest key of the range
+	 * @param toInclusive
+	 *            <code>true</code> if the highest key is part of the range
+	 * @return a view of the part of this {@link NavigableMultiMap} whose keys
+	 *         are in the range
+	 */
+	public NavigableMultiMap<Key, Value> subMap(Key fromKey,
+			boolean fromInclusive, Key toKey, boolean toInclusive);
+
+	/**
+	 * Equivalent to {@link #subMap(Object, boolean, Object, boolean)} with
+	 * the lowest key included and the highest key excluded.
+	 */
+	default NavigableMultiMap<Key, Value> subMap(Key fromKey, Key toKey) {
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	/**
+	 *
+	 * @param toKey
+	 *            the highest key of the range
+	 * @param inclusive
+	 *            <code>true</code> if the highest key is part of the range
+	 * @return a view of the part of this {@link NavigableMultiMap} whose keys
+	 *         are lower than the given key
+	 */
+	public NavigableMultiMap<Key, Value> headMap(Key toKey, boolean inclusive);
+
+	/**
+	 *
+	 * @param fromKey
+	 *            the lowest key of the range
+	 * @param inclusive
+	 *            <code>true</code> if the lowest key is part of the range
+	 * @return a view of the part of this {@link NavigableMultiMap} whose keys
+	 *         are greater than the given key
+	 */
+	public NavigableMultiMap<Key, Value> tailMap(Key fromKey, boolean inclusive);
+
+	/**
+	 *
+	 * @return a view of this {@link NavigableMultiMap} where the keys are in
+	 *         descending order
+	 */
+	public NavigableMultiMap<Key, Value> descendingMap();
+}
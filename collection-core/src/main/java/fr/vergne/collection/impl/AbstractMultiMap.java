@@ -1,23 +1,54 @@
 package fr.vergne.collection.impl;
 
+import java.util.AbstractCollection;
+import java.util.AbstractList;
 import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.util.Equivalence;
 
 /**
+ * <p>
  * An {@link AbstractMultiMap} is a {@link MultiMap} which implements most of
- * the features. It is basically a {@link HashMap}, so a given key appears only
- * once. However, the type of collection used for values is not provided, which
+ * the features. It is basically a hash table, so a given key appears only
+ * once. The keys are compared with an {@link Equivalence}, which is by default
+ * based on {@link Object#hashCode()} and {@link Object#equals(Object)}, but
+ * can be replaced, for instance to compare canonical instances by identity.
+ * However, the type of collection used for values is not provided, which
  * leads to a method to implement in the classes which extend this
  * {@link AbstractMultiMap}.
- * 
+ * </p>
+ *
+ * <p>
+ * A key mapped to a single value does not have any {@link Collection}: its
+ * value is stored directly in the table. The {@link Collection} is
+ * generated only when a second value is added to the key, and it is dropped
+ * again when the key goes back to a single value. Consequently, the
+ * {@link Collection}s returned by {@link #getAll(Object)},
+ * {@link #collections()} and {@link #entrySet()} are views over the values of
+ * the keys, and a key is removed as soon as it has no value anymore. Values
+ * which are {@link Collection}s themselves are never inlined.
+ * </p>
+ *
  * @author Matthieu Vergne <vergne@fbk.eu>
- * 
+ *
  * @param <Key>
  * @param <Value>
  * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
@@ -25,127 +56,959 @@ import fr.vergne.collection.MultiMap;
 public abstract class AbstractMultiMap<Key, Value> implements
 		MultiMap<Key, Value> {
 
-	private final HashMap<Key, Collection<Value>> innerMap = new HashMap<Key, Collection<Value>>();
+	private static final Object ABSENT = new Object();
+
+	/**
+	 * Map each key to either its single value or its {@link Collection} of
+	 * values.
+	 */
+	private OpenHashMap<Key, Object> innerMap;
+	private long couples = 0;
 
 	public AbstractMultiMap(MultiMap<Key, Value> map) {
+		this();
 		for (Entry<Key, Collection<Value>> entry : map.entrySet()) {
 			addAll(entry.getKey(), entry.getValue());
 		}
 	}
 
 	public AbstractMultiMap() {
+		this(Equivalence.natural());
+	}
+
+	/**
+	 * 
+	 * @param keyEquivalence
+	 *            the {@link Equivalence} telling which keys are the same
+	 */
+	public AbstractMultiMap(Equivalence<? super Key> keyEquivalence) {
+		innerMap = new OpenHashMap<Key, Object>(keyEquivalence);
+	}
+
+	/**
+	 * 
+	 * @return the {@link Equivalence} telling which keys are the same
+	 */
+	public Equivalence<? super Key> getKeyEquivalence() {
+		return innerMap.getEquivalence();
 	}
 
 	@Override
 	public boolean add(Key key, Value value) {
-		Collection<Value> set = getContainerFor(key);
-		return set.add(value);
+		Object slot = innerMap.getOrDefault(key, ABSENT);
+		boolean isChanged;
+		if (slot == ABSENT && isInlinable(value)) {
+			innerMap.put(key, value);
+			isChanged = true;
+		} else if (slot != ABSENT && isContainer(slot)) {
+			isChanged = asContainer(slot).add(value);
+		} else {
+			Collection<Value> container = toContainer(key, slot);
+			isChanged = container.add(value);
+			store(key, container);
+		}
+		if (isChanged) {
+			couples++;
+		} else {
+			// no new couple
+		}
+		return isChanged;
 	}
 
 	@Override
 	public boolean addAll(Key key, Collection<Value> values) {
-		Collection<Value> set = getContainerFor(key);
-		return set.addAll(values);
+		if (values.isEmpty()) {
+			return false;
+		} else if (values.size() == 1) {
+			return add(key, values.iterator().next());
+		} else {
+			Object slot = innerMap.getOrDefault(key, ABSENT);
+			int previousSize = sizeOfSlot(slot);
+			Collection<Value> container = toContainer(key, slot, previousSize
+					+ values.size());
+			boolean isChanged = container.addAll(values);
+			couples += container.size() - previousSize;
+			store(key, container);
+			return isChanged;
+		}
 	}
 
 	@Override
 	public boolean remove(Key key, Value value) {
-		Collection<Value> set = getContainerFor(key);
-		return set.remove(value);
+		Object slot = innerMap.getOrDefault(key, ABSENT);
+		if (slot == ABSENT) {
+			return false;
+		} else if (isContainer(slot)) {
+			Collection<Value> container = asContainer(slot);
+			boolean isChanged = container.remove(value);
+			if (isChanged) {
+				couples--;
+				store(key, container);
+			} else {
+				// nothing removed
+			}
+			return isChanged;
+		} else if (Objects.equals(slot, value)) {
+			innerMap.remove(key);
+			couples--;
+			return true;
+		} else {
+			return false;
+		}
 	}
 
 	@Override
 	public boolean removeAll(Key key, Collection<Value> values) {
-		Collection<Value> set = getContainerFor(key);
-		return set.removeAll(values);
+		Object slot = innerMap.getOrDefault(key, ABSENT);
+		if (slot == ABSENT) {
+			return false;
+		} else if (isContainer(slot)) {
+			Collection<Value> container = asContainer(slot);
+			int previousSize = container.size();
+			boolean isChanged = container.removeAll(values);
+			couples += container.size() - previousSize;
+			store(key, container);
+			return isChanged;
+		} else if (values.contains(slot)) {
+			innerMap.remove(key);
+			couples--;
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Generate the {@link Collection} storing the values of a key. It may be
+	 * called concurrently by {@link #absorbAll(Collection)}, which merges the
+	 * keys in parallel, so it must be thread-safe: it should only create a
+	 * new {@link Collection}, without changing any shared state.
+	 * 
+	 * @param key
+	 *            the key to generate the {@link Collection} for
+	 * @return a new empty {@link Collection}
+	 */
+	protected abstract Collection<Value> generateInnerCollection(Key key);
+
+	/**
+	 * Generate the {@link Collection} of a key which is about to receive a
+	 * given number of values, which allows to pre-size it. By default, the
+	 * hint is ignored and {@link #generateInnerCollection(Object)} is used, so
+	 * the classes which change the kind of {@link Collection} should override
+	 * both methods. Like {@link #generateInnerCollection(Object)}, it may be
+	 * called concurrently and must be thread-safe.
+	 * 
+	 * @param key
+	 *            the key to generate the {@link Collection} for
+	 * @param expectedSize
+	 *            the number of values expected in the {@link Collection}
+	 * @return a new empty {@link Collection}
+	 */
+	protected Collection<Value> generateInnerCollection(Key key,
+			int expectedSize) {
+		return generateInnerCollection(key);
+	}
+
+	/**
+	 * Apply an action on each {@link Collection} generated by
+	 * {@link #generateInnerCollection(Object)} and currently stored. The keys
+	 * having a single value are not concerned, since their value is stored
+	 * without {@link Collection}. The action should not change the content of
+	 * the {@link Collection}s.
+	 * 
+	 * @param action
+	 *            the action to apply
+	 */
+	protected void forEachInnerCollection(
+			Consumer<? super Collection<Value>> action) {
+		for (Object slot : innerMap.values()) {
+			if (isContainer(slot)) {
+				action.accept(asContainer(slot));
+			} else {
+				// inlined value
+			}
+		}
+	}
+
+	/**
+	 * Called when a {@link Collection} generated by another instance of the
+	 * same class is moved into this one, like by
+	 * {@link #absorb(AbstractMultiMap)}, so a {@link Collection} depending on
+	 * the instance which generated it can be attached to this one instead. By
+	 * default, nothing is done. It may be called concurrently for different
+	 * {@link Collection}s by {@link #absorbAll(Collection)}, so it must be
+	 * thread-safe.
+	 * 
+	 * @param collection
+	 *            the {@link Collection} moved into this {@link AbstractMultiMap}
+	 */
+	protected void adoptInnerCollection(Collection<Value> collection) {
+		// nothing to attach by default
+	}
+
+	/**
+	 * Shrink the internal structures to the current content, typically after
+	 * the removal of many couples, since they do not shrink by themselves.
+	 * The table of keys is rebuilt for the current number of keys, and each
+	 * {@link Collection} generated by {@link #generateInnerCollection(Object)}
+	 * is replaced by a new one with the same values. The iterators created
+	 * before are not valid anymore.
+	 */
+	public void compact() {
+		OpenHashMap<Key, Object> compacted = new OpenHashMap<Key, Object>(
+				getKeyEquivalence(), innerMap.size());
+		for (Entry<Key, Object> entry : innerMap.entrySet()) {
+			Object slot = entry.getValue();
+			if (isContainer(slot)) {
+				Collection<Value> container = newContainer(entry.getKey(),
+						asContainer(slot).size());
+				container.addAll(asContainer(slot));
+				compacted.put(entry.getKey(), container);
+			} else {
+				compacted.put(entry.getKey(), slot);
+			}
+		}
+		innerMap = compacted;
+	}
+
+	/**
+	 * 
+	 * @param key
+	 *            the key to search for
+	 * @return the {@link Collection} generated by
+	 *         {@link #generateInnerCollection(Object)} for the key, or
+	 *         <code>null</code> if the key has no value or a single value
+	 *         stored without {@link Collection}
+	 */
+	protected Collection<Value> getInnerCollection(Key key) {
+		Object slot = innerMap.get(key);
+		return isContainer(slot) ? asContainer(slot) : null;
+	}
+
+	private boolean isInlinable(Object value) {
+		return !(value instanceof Collection);
+	}
+
+	private boolean isContainer(Object slot) {
+		return slot instanceof Collection;
 	}
 
-	private Collection<Value> getContainerFor(Key key) {
-		if (!containsKey(key)) {
-			innerMap.put(key, generateInnerCollection(key));
+	@SuppressWarnings("unchecked")
+	private Collection<Value> asContainer(Object slot) {
+		return (Collection<Value>) slot;
+	}
+
+	/**
+	 * @return a {@link Collection} containing the values of the slot, which is
+	 *         the slot itself if it is already a {@link Collection}
+	 */
+	private Collection<Value> toContainer(Key key, Object slot) {
+		return toContainer(key, slot, sizeOfSlot(slot) + 1);
+	}
+
+	/**
+	 * @param expectedSize
+	 *            the number of values expected in the {@link Collection} if
+	 *            it needs to be generated
+	 */
+	@SuppressWarnings("unchecked")
+	private Collection<Value> toContainer(Key key, Object slot,
+			int expectedSize) {
+		if (slot == ABSENT) {
+			return newContainer(key, expectedSize);
+		} else if (isContainer(slot)) {
+			return asContainer(slot);
 		} else {
-			// use the already present collection
+			Collection<Value> container = newContainer(key, expectedSize);
+			container.add((Value) slot);
+			return container;
 		}
-		return innerMap.get(key);
 	}
 
-	protected abstract Collection<Value> generateInnerCollection(Key key);
+	/**
+	 * Store the values of the key in the most compact form: no slot if there
+	 * is no value, the value itself if it is alone, the {@link Collection}
+	 * otherwise.
+	 */
+	private void store(Key key, Collection<Value> container) {
+		Object slot = compact(container);
+		if (slot == ABSENT) {
+			innerMap.remove(key);
+		} else {
+			innerMap.put(key, slot);
+		}
+	}
+
+	private int sizeOfSlot(Object slot) {
+		if (slot == ABSENT) {
+			return 0;
+		} else if (isContainer(slot)) {
+			return asContainer(slot).size();
+		} else {
+			return 1;
+		}
+	}
+
+	private Object compact(Collection<Value> container) {
+		if (container.isEmpty()) {
+			return ABSENT;
+		} else if (container.size() == 1) {
+			Value value = container.iterator().next();
+			return isInlinable(value) ? value : container;
+		} else {
+			return container;
+		}
+	}
 
 	@Override
 	public boolean containsCouple(Key key, Value value) {
-		return containsKey(key) && innerMap.get(key).contains(value);
+		Object slot = innerMap.getOrDefault(key, ABSENT);
+		if (slot == ABSENT) {
+			return false;
+		} else if (isContainer(slot)) {
+			return asContainer(slot).contains(value);
+		} else {
+			return Objects.equals(slot, value);
+		}
 	}
 
 	@Override
 	public Iterator<Entry<Key, Value>> iterator() {
 		return new Iterator<Entry<Key, Value>>() {
 
-			private Iterator<Key> keysIterator = keySet().iterator();
-			private Iterator<Value> valuesIterator;
-			private Key key;
-			private Value value;
+			private final Iterator<Entry<Key, Object>> entriesIterator = innerMap
+					.entrySet().iterator();
+			private Entry<Key, Object> entry;
+			private Collection<Value> container;
+			private Iterator<Value> valuesIterator = Collections
+					.<Value> emptySet().iterator();
+			private boolean isInline = false;
+			private boolean isRemovable = false;
 
 			@Override
 			public boolean hasNext() {
-				return keysIterator.hasNext() || valuesIterator != null
-						&& valuesIterator.hasNext();
+				return valuesIterator.hasNext() || entriesIterator.hasNext();
 			}
 
 			@Override
+			@SuppressWarnings("unchecked")
 			public Entry<Key, Value> next() {
-				while (valuesIterator == null || !valuesIterator.hasNext()) {
-					key = keysIterator.next();
-					valuesIterator = AbstractMultiMap.this.innerMap.get(key)
-							.iterator();
+				Value value;
+				if (valuesIterator.hasNext()) {
+					value = valuesIterator.next();
+				} else {
+					entry = entriesIterator.next();
+					Object slot = entry.getValue();
+					isInline = !isContainer(slot);
+					if (isInline) {
+						valuesIterator = Collections.<Value> emptySet()
+								.iterator();
+						value = (Value) slot;
+					} else {
+						container = asContainer(slot);
+						valuesIterator = container.iterator();
+						value = valuesIterator.next();
+					}
 				}
-				value = valuesIterator.next();
-				return new AbstractMap.SimpleImmutableEntry<Key, Value>(key,
-						value);
+				isRemovable = true;
+				return new AbstractMap.SimpleImmutableEntry<Key, Value>(
+						entry.getKey(), value);
 			}
 
 			@Override
 			public void remove() {
-				AbstractMultiMap.this.remove(key, value);
+				if (!isRemovable) {
+					throw new IllegalStateException();
+				} else if (isInline) {
+					entriesIterator.remove();
+					couples--;
+				} else {
+					valuesIterator.remove();
+					couples--;
+					Object slot = compact(container);
+					if (slot == ABSENT) {
+						entriesIterator.remove();
+					} else {
+						entry.setValue(slot);
+					}
+				}
+				isRemovable = false;
+			}
+
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void forEach(BiConsumer<? super Key, ? super Value> action) {
+		for (Entry<Key, Object> entry : innerMap.entrySet()) {
+			Key key = entry.getKey();
+			Object slot = entry.getValue();
+			if (isContainer(slot)) {
+				for (Value value : asContainer(slot)) {
+					action.accept(key, value);
+				}
+			} else {
+				action.accept(key, (Value) slot);
+			}
+		}
+	}
+
+	@Override
+	public Cursor<Key, Value> cursor() {
+		return new Cursor<Key, Value>() {
+
+			private final Iterator<Entry<Key, Object>> entriesIterator = innerMap
+					.entrySet().iterator();
+			private Iterator<Value> valuesIterator = Collections
+					.<Value> emptySet().iterator();
+			private boolean isOnCouple = false;
+			private Key key;
+			private Value value;
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public boolean advance() {
+				if (valuesIterator.hasNext()) {
+					value = valuesIterator.next();
+				} else if (entriesIterator.hasNext()) {
+					Entry<Key, Object> entry = entriesIterator.next();
+					key = entry.getKey();
+					Object slot = entry.getValue();
+					if (isContainer(slot)) {
+						valuesIterator = asContainer(slot).iterator();
+						value = valuesIterator.next();
+					} else {
+						valuesIterator = Collections.<Value> emptySet()
+								.iterator();
+						value = (Value) slot;
+					}
+				} else {
+					isOnCouple = false;
+					key = null;
+					value = null;
+					return false;
+				}
+				isOnCouple = true;
+				return true;
+			}
+
+			@Override
+			public Key key() {
+				checkCouple();
+				return key;
+			}
+
+			@Override
+			public Value value() {
+				checkCouple();
+				return value;
 			}
 
+			private void checkCouple() {
+				if (!isOnCouple) {
+					throw new IllegalStateException("No current couple");
+				} else {
+					// OK
+				}
+			}
 		};
 	}
-	
+
+	/**
+	 * The {@link Spliterator} of an {@link AbstractMultiMap} splits first the
+	 * keys, then the values of the current key if it has too many of them. The
+	 * {@link Spliterator} covering the whole {@link AbstractMultiMap} knows its
+	 * exact size, the split ones only estimate it.
+	 */
+	@Override
+	public Spliterator<Entry<Key, Value>> spliterator() {
+		return new CouplesSpliterator(innerMap.entrySet().spliterator(), null,
+				null, couples, Spliterator.SIZED);
+	}
+
+	private class CouplesSpliterator implements Spliterator<Entry<Key, Value>> {
+
+		private final Spliterator<Entry<Key, Object>> entries;
+		private Key key;
+		private Spliterator<Value> values;
+		private long estimate;
+		private int sizeCharacteristics;
+
+		public CouplesSpliterator(Spliterator<Entry<Key, Object>> entries,
+				Key key, Spliterator<Value> values, long estimate,
+				int sizeCharacteristics) {
+			this.entries = entries;
+			this.key = key;
+			this.values = values;
+			this.estimate = estimate;
+			this.sizeCharacteristics = sizeCharacteristics;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean tryAdvance(Consumer<? super Entry<Key, Value>> action) {
+			while (true) {
+				if (values != null
+						&& values.tryAdvance(value -> action
+								.accept(new AbstractMap.SimpleImmutableEntry<Key, Value>(
+										key, value)))) {
+					consume();
+					return true;
+				} else if (entries == null) {
+					return false;
+				} else {
+					Object[] slot = { ABSENT };
+					boolean hasEntry = entries.tryAdvance(entry -> {
+						key = entry.getKey();
+						slot[0] = entry.getValue();
+					});
+					if (!hasEntry) {
+						return false;
+					} else if (isContainer(slot[0])) {
+						values = asContainer(slot[0]).spliterator();
+					} else {
+						values = null;
+						consume();
+						action.accept(new AbstractMap.SimpleImmutableEntry<Key, Value>(
+								key, (Value) slot[0]));
+						return true;
+					}
+				}
+			}
+		}
+
+		private void consume() {
+			if (estimate > 0) {
+				estimate--;
+			} else {
+				// already at the minimum
+			}
+		}
+
+		@Override
+		public Spliterator<Entry<Key, Value>> trySplit() {
+			Spliterator<Entry<Key, Object>> prefixEntries = entries == null ? null
+					: entries.trySplit();
+			if (prefixEntries != null) {
+				long prefixEstimate = estimate >>> 1;
+				estimate -= prefixEstimate;
+				sizeCharacteristics = 0;
+				return new CouplesSpliterator(prefixEntries, null, null,
+						prefixEstimate, 0);
+			} else if (values != null && values.estimateSize() > 1) {
+				Spliterator<Value> prefixValues = values.trySplit();
+				if (prefixValues == null) {
+					return null;
+				} else {
+					long prefixEstimate = Math.min(estimate,
+							prefixValues.estimateSize());
+					estimate -= prefixEstimate;
+					sizeCharacteristics = 0;
+					return new CouplesSpliterator(null, key, prefixValues,
+							prefixEstimate, 0);
+				}
+			} else {
+				return null;
+			}
+		}
+
+		@Override
+		public long estimateSize() {
+			if (entries == null && values != null) {
+				return values.estimateSize();
+			} else {
+				return estimate;
+			}
+		}
+
+		@Override
+		public int characteristics() {
+			if (entries == null && values != null) {
+				return values.characteristics()
+						& (Spliterator.SIZED | Spliterator.SUBSIZED)
+						| Spliterator.NONNULL;
+			} else {
+				return sizeCharacteristics | Spliterator.NONNULL;
+			}
+		}
+	}
+
+	/**
+	 * Move all the couples of another {@link AbstractMultiMap} into this one,
+	 * leaving the other one empty. If both are of the same class and key
+	 * {@link Equivalence}, the {@link Collection}s of the other one are reused
+	 * rather than copied: a key present only in the other one gets its
+	 * {@link Collection} as is, and a key present in both keeps the biggest
+	 * {@link Collection} to add the values of the smallest one. Otherwise, the
+	 * couples are added one key at a time, so the keys equivalent in this
+	 * {@link AbstractMultiMap} are merged. For {@link List}s, the values of
+	 * this {@link AbstractMultiMap} remain before the ones of the other.
+	 * 
+	 * @param other
+	 *            the {@link AbstractMultiMap} to empty into this one
+	 */
+	public void absorb(AbstractMultiMap<Key, Value> other) {
+		if (other == this) {
+			// nothing to move
+		} else if (other.getClass() != getClass()
+				|| other.getKeyEquivalence() != getKeyEquivalence()) {
+			for (Entry<Key, Collection<Value>> entry : other.entrySet()) {
+				addAll(entry.getKey(), entry.getValue());
+			}
+			other.clear();
+		} else {
+			for (Entry<Key, Object> entry : other.innerMap.entrySet()) {
+				Key key = entry.getKey();
+				Object otherSlot = entry.getValue();
+				if (isContainer(otherSlot)) {
+					adoptInnerCollection(asContainer(otherSlot));
+				} else {
+					// inlined value
+				}
+				Object slot = innerMap.getOrDefault(key, ABSENT);
+				if (slot == ABSENT) {
+					innerMap.put(key, otherSlot);
+				} else {
+					store(key, merge(key, slot, otherSlot));
+				}
+			}
+			couples = 0;
+			for (Object slot : innerMap.values()) {
+				couples += sizeOfSlot(slot);
+			}
+			other.clear();
+		}
+	}
+
+	/**
+	 * Move all the couples of other {@link AbstractMultiMap}s into this one,
+	 * leaving them empty. The result is the same as calling
+	 * {@link #absorb(AbstractMultiMap)} on each of them in order, but the work
+	 * is done in parallel on the common {@link ForkJoinPool}: the keys are
+	 * partitioned by hash code, and each partition merges the couples of its
+	 * keys from all the {@link AbstractMultiMap}s. As with
+	 * {@link #absorb(AbstractMultiMap)}, the {@link Collection}s of the
+	 * {@link AbstractMultiMap}s of the same class and key {@link Equivalence}
+	 * are reused rather than copied, while the values of the others are
+	 * copied beforehand in {@link Collection}s of this
+	 * {@link AbstractMultiMap}. In both cases, the values of a {@link List}
+	 * follow the order of the given {@link AbstractMultiMap}s. The
+	 * {@link Collection}s are generated and adopted from the threads of the
+	 * {@link ForkJoinPool}, so {@link #generateInnerCollection(Object, int)}
+	 * and {@link #adoptInnerCollection(Collection)} must be thread-safe.
+	 * 
+	 * @param others
+	 *            the {@link AbstractMultiMap}s to empty into this one
+	 */
+	public void absorbAll(Collection<? extends AbstractMultiMap<Key, Value>> others) {
+		List<AbstractMultiMap<Key, Value>> reused = new ArrayList<AbstractMultiMap<Key, Value>>();
+		List<AbstractMultiMap<Key, Value>> copied = new ArrayList<AbstractMultiMap<Key, Value>>();
+		List<Collection<Entry<Key, Object>>> sources = new ArrayList<Collection<Entry<Key, Object>>>();
+		Set<AbstractMultiMap<Key, Value>> known = Collections
+				.newSetFromMap(new IdentityHashMap<AbstractMultiMap<Key, Value>, Boolean>());
+		sources.add(innerMap.entrySet());
+		known.add(this);
+		for (AbstractMultiMap<Key, Value> other : others) {
+			if (!known.add(other)) {
+				// already considered
+			} else if (other.getClass() != getClass()
+					|| other.getKeyEquivalence() != getKeyEquivalence()) {
+				sources.add(slotsOf(other));
+				copied.add(other);
+			} else {
+				sources.add(other.innerMap.entrySet());
+				reused.add(other);
+			}
+		}
+
+		int partitions = 4 * ForkJoinPool.getCommonPoolParallelism();
+		List<List<List<Entry<Key, Object>>>> split = sources
+				.parallelStream()
+				.map(source -> {
+					List<List<Entry<Key, Object>>> buckets = new ArrayList<List<Entry<Key, Object>>>(
+							partitions);
+					for (int i = 0; i < partitions; i++) {
+						buckets.add(new ArrayList<Entry<Key, Object>>());
+					}
+					for (Entry<Key, Object> entry : source) {
+						buckets.get(
+								partitionOf(innerMap.hashOf(entry.getKey()),
+										partitions))
+								.add(entry);
+					}
+					return buckets;
+				}).collect(Collectors.toList());
+
+		List<OpenHashMap<Key, Object>> merged = IntStream
+				.range(0, partitions)
+				.parallel()
+				.mapToObj(
+						partition -> {
+							int size = 0;
+							for (List<List<Entry<Key, Object>>> buckets : split) {
+								size += buckets.get(partition).size();
+							}
+							OpenHashMap<Key, Object> part = new OpenHashMap<Key, Object>(
+									getKeyEquivalence(), size);
+							for (List<List<Entry<Key, Object>>> buckets : split) {
+								for (Entry<Key, Object> entry : buckets
+										.get(partition)) {
+									Key key = entry.getKey();
+									if (isContainer(entry.getValue())) {
+										adoptInnerCollection(asContainer(entry
+												.getValue()));
+									} else {
+										// inlined value
+									}
+									Object slot = part.getOrDefault(key,
+											ABSENT);
+									if (slot == ABSENT) {
+										part.put(key, entry.getValue());
+									} else {
+										part.put(key, compact(merge(key, slot,
+												entry.getValue())));
+									}
+								}
+							}
+							return part;
+						}).collect(Collectors.toList());
+
+		int size = 0;
+		for (OpenHashMap<Key, Object> part : merged) {
+			size += part.size();
+		}
+		innerMap = new OpenHashMap<Key, Object>(getKeyEquivalence(), size);
+		couples = 0;
+		for (OpenHashMap<Key, Object> part : merged) {
+			innerMap.putAll(part);
+			for (Object slot : part.values()) {
+				couples += sizeOfSlot(slot);
+			}
+		}
+		for (AbstractMultiMap<Key, Value> source : reused) {
+			source.innerMap = new OpenHashMap<Key, Object>(
+					getKeyEquivalence());
+			source.couples = 0;
+		}
+		for (AbstractMultiMap<Key, Value> source : copied) {
+			source.clear();
+		}
+	}
+
+	/**
+	 * @return the slots that the couples of the other
+	 *         {@link AbstractMultiMap} would have in this one
+	 */
+	private List<Entry<Key, Object>> slotsOf(AbstractMultiMap<Key, Value> other) {
+		List<Entry<Key, Object>> slots = new ArrayList<Entry<Key, Object>>(
+				other.size());
+		for (Entry<Key, Collection<Value>> entry : other.entrySet()) {
+			Key key = entry.getKey();
+			Collection<Value> values = entry.getValue();
+			Collection<Value> container = newContainer(key, values.size());
+			container.addAll(values);
+			slots.add(new AbstractMap.SimpleEntry<Key, Object>(key,
+					compact(container)));
+		}
+		return slots;
+	}
+
+	private static int partitionOf(int hash, int partitions) {
+		return Math.floorMod(hash ^ (hash >>> 16), partitions);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Collection<Value> merge(Key key, Object slot, Object otherSlot) {
+		int size = sizeOfSlot(slot) + sizeOfSlot(otherSlot);
+		Collection<Value> container = toContainer(key, slot, size);
+		Collection<Value> otherContainer = toContainer(key, otherSlot, size);
+		if (container.size() >= otherContainer.size()) {
+			container.addAll(otherContainer);
+			return container;
+		} else if (otherContainer instanceof List) {
+			((List<Value>) otherContainer).addAll(0, container);
+			return otherContainer;
+		} else {
+			otherContainer.addAll(container);
+			return otherContainer;
+		}
+	}
+
+	/**
+	 * Produce an immutable snapshot of this {@link AbstractMultiMap}, which
+	 * consumes less memory and iterates faster. Further changes on this
+	 * {@link AbstractMultiMap} are not reflected in the snapshot.
+	 * 
+	 * @return a {@link FrozenMultiMap} having the same content
+	 */
+	public FrozenMultiMap<Key, Value> freeze() {
+		return new FrozenMultiMap<Key, Value>(this, getKeyEquivalence());
+	}
+
 	@Override
 	public Collection<Value> replaceAll(Key key, Collection<Value> collection) {
-		Collection<Value> actualCollection = generateInnerCollection(key);
+		Collection<Value> actualCollection = newContainer(key,
+				collection.size());
 		actualCollection.addAll(collection);
-		return innerMap.put(key, actualCollection);
+		Object previous = innerMap.getOrDefault(key, ABSENT);
+		couples += actualCollection.size() - sizeOfSlot(previous);
+		store(key, actualCollection);
+		return previous == ABSENT ? null : toContainer(key, previous);
 	}
 
 	@Override
 	public Collection<Value> getAll(Object key) {
-		return innerMap.get(key);
+		return innerMap.containsKey(key) ? view(key) : null;
 	}
 
+	/**
+	 * The removals made through the {@link Set} update the number of couples.
+	 */
 	@Override
 	public Set<Key> keySet() {
-		return innerMap.keySet();
+		return new AbstractSet<Key>() {
+
+			@Override
+			public Iterator<Key> iterator() {
+				Iterator<Entry<Key, Object>> entries = innerMap.entrySet()
+						.iterator();
+				return new Iterator<Key>() {
+
+					private Entry<Key, Object> last;
+
+					@Override
+					public boolean hasNext() {
+						return entries.hasNext();
+					}
+
+					@Override
+					public Key next() {
+						last = entries.next();
+						return last.getKey();
+					}
+
+					@Override
+					public void remove() {
+						Object slot = last.getValue();
+						entries.remove();
+						couples -= sizeOfSlot(slot);
+					}
+				};
+			}
+
+			@Override
+			public Spliterator<Key> spliterator() {
+				return innerMap.keySet().spliterator();
+			}
+
+			@Override
+			public int size() {
+				return innerMap.size();
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return innerMap.containsKey(key);
+			}
+
+			@Override
+			public boolean remove(Object key) {
+				return AbstractMultiMap.this.remove(key) != null;
+			}
+
+			@Override
+			public void clear() {
+				AbstractMultiMap.this.clear();
+			}
+		};
 	}
 
 	@Override
 	public Collection<Collection<Value>> collections() {
-		return innerMap.values();
+		return new AbstractCollection<Collection<Value>>() {
+
+			@Override
+			public Iterator<Collection<Value>> iterator() {
+				Iterator<Key> keys = keySet().iterator();
+				return new Iterator<Collection<Value>>() {
+
+					@Override
+					public boolean hasNext() {
+						return keys.hasNext();
+					}
+
+					@Override
+					public Collection<Value> next() {
+						return view(keys.next());
+					}
+
+					@Override
+					public void remove() {
+						keys.remove();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return innerMap.size();
+			}
+		};
 	}
 
 	@Override
 	public Set<Entry<Key, Collection<Value>>> entrySet() {
-		return innerMap.entrySet();
+		return new AbstractSet<Entry<Key, Collection<Value>>>() {
+
+			@Override
+			public Iterator<Entry<Key, Collection<Value>>> iterator() {
+				Iterator<Key> keys = keySet().iterator();
+				return new Iterator<Entry<Key, Collection<Value>>>() {
+
+					@Override
+					public boolean hasNext() {
+						return keys.hasNext();
+					}
+
+					@Override
+					public Entry<Key, Collection<Value>> next() {
+						Key key = keys.next();
+						return new AbstractMap.SimpleImmutableEntry<Key, Collection<Value>>(
+								key, view(key));
+					}
+
+					@Override
+					public void remove() {
+						keys.remove();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return innerMap.size();
+			}
+		};
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public Collection<Value> remove(Object key) {
-		return innerMap.remove(key);
+		Object previous = innerMap.getOrDefault(key, ABSENT);
+		if (previous == ABSENT) {
+			return null;
+		} else {
+			innerMap.remove(key);
+			couples -= sizeOfSlot(previous);
+			return toContainer((Key) key, previous);
+		}
 	}
 
 	@Override
 	public void clear() {
 		innerMap.clear();
+		couples = 0;
 	}
 
 	@Override
@@ -155,11 +1018,311 @@ public abstract class AbstractMultiMap<Key, Value> implements
 
 	@Override
 	public boolean containsCollection(Collection<Value> collection) {
-		return innerMap.containsValue(collection);
+		for (Entry<Key, Object> entry : innerMap.entrySet()) {
+			if (toContainer(entry.getKey(), entry.getValue()).equals(
+					collection)) {
+				return true;
+			} else {
+				// continue searching
+			}
+		}
+		return false;
 	}
 
 	@Override
 	public int size() {
 		return innerMap.size();
 	}
+
+	@Override
+	public boolean isEmpty() {
+		return innerMap.isEmpty();
+	}
+
+	/**
+	 * 
+	 * @return the number of (key, value) couples of this
+	 *         {@link AbstractMultiMap}
+	 */
+	public long couplesCount() {
+		return couples;
+	}
+
+	/**
+	 * The kind of {@link Collection} generated by
+	 * {@link #generateInnerCollection(Object)}, so the views returned by
+	 * {@link #getAll(Object)} can compare to other {@link Collection}s the same
+	 * way.
+	 */
+	private static enum ViewKind {
+		COLLECTION, SET, LIST;
+
+		static ViewKind of(Collection<?> collection) {
+			if (collection instanceof List) {
+				return LIST;
+			} else if (collection instanceof Set) {
+				return SET;
+			} else {
+				return COLLECTION;
+			}
+		}
+	}
+
+	private ViewKind viewKind;
+
+	private Collection<Value> newContainer(Key key, int expectedSize) {
+		Collection<Value> container = generateInnerCollection(key,
+				expectedSize);
+		if (viewKind == null) {
+			viewKind = ViewKind.of(container);
+		} else {
+			// kind already known
+		}
+		return container;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Collection<Value> view(Object key) {
+		if (viewKind == null) {
+			newContainer((Key) key, 0);
+		} else {
+			// kind already known
+		}
+		switch (viewKind) {
+		case LIST:
+			return new KeyValuesList((Key) key);
+		case SET:
+			return new KeyValuesSet((Key) key);
+		default:
+			return new KeyValues((Key) key);
+		}
+	}
+
+	private int sizeOf(Key key) {
+		return sizeOfSlot(innerMap.getOrDefault(key, ABSENT));
+	}
+
+	private Iterator<Value> iteratorOf(Key key) {
+		Object slot = innerMap.getOrDefault(key, ABSENT);
+		if (slot == ABSENT) {
+			return Collections.<Value> emptySet().iterator();
+		} else if (isContainer(slot)) {
+			Collection<Value> container = asContainer(slot);
+			Iterator<Value> iterator = container.iterator();
+			return new Iterator<Value>() {
+
+				@Override
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+
+				@Override
+				public Value next() {
+					return iterator.next();
+				}
+
+				@Override
+				public void remove() {
+					iterator.remove();
+					couples--;
+					store(key, container);
+				}
+			};
+		} else {
+			return new Iterator<Value>() {
+
+				private boolean hasNext = true;
+
+				@Override
+				public boolean hasNext() {
+					return hasNext;
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public Value next() {
+					if (!hasNext) {
+						throw new NoSuchElementException();
+					} else {
+						hasNext = false;
+						return (Value) slot;
+					}
+				}
+
+				@Override
+				public void remove() {
+					if (hasNext) {
+						throw new IllegalStateException();
+					} else if (innerMap.remove(key, slot)) {
+						couples--;
+					} else {
+						// already removed
+					}
+				}
+			};
+		}
+	}
+
+	/**
+	 * A {@link KeyValues} is a live view over the values of a key, whether
+	 * they are inlined or stored in a {@link Collection}. Its
+	 * {@link #equals(Object)} and {@link #hashCode()} are the ones of the
+	 * {@link Collection} generated for the key.
+	 */
+	private class KeyValues extends AbstractCollection<Value> {
+
+		protected final Key key;
+
+		public KeyValues(Key key) {
+			this.key = key;
+		}
+
+		@Override
+		public int size() {
+			return sizeOf(key);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean contains(Object value) {
+			return containsCouple(key, (Value) value);
+		}
+
+		@Override
+		public boolean add(Value value) {
+			return AbstractMultiMap.this.add(key, value);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean remove(Object value) {
+			return AbstractMultiMap.this.remove(key, (Value) value);
+		}
+
+		@Override
+		public void clear() {
+			AbstractMultiMap.this.remove(key);
+		}
+
+		@Override
+		public Iterator<Value> iterator() {
+			return iteratorOf(key);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			} else {
+				return toContainer(key, innerMap.getOrDefault(key, ABSENT))
+						.equals(obj);
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return toContainer(key, innerMap.getOrDefault(key, ABSENT))
+					.hashCode();
+		}
+	}
+
+	private class KeyValuesSet extends KeyValues implements Set<Value> {
+
+		public KeyValuesSet(Key key) {
+			super(key);
+		}
+	}
+
+	/**
+	 * A {@link KeyValuesList} is the {@link List} version of
+	 * {@link KeyValues}. The positional operations are applied on the
+	 * {@link List} of the key, which is generated on the fly if the key has a
+	 * single value.
+	 */
+	private class KeyValuesList extends AbstractList<Value> {
+
+		private final Key key;
+
+		public KeyValuesList(Key key) {
+			this.key = key;
+		}
+
+		@SuppressWarnings("unchecked")
+		private List<Value> list() {
+			return (List<Value>) toContainer(key,
+					innerMap.getOrDefault(key, ABSENT));
+		}
+
+		@Override
+		public Value get(int index) {
+			return list().get(index);
+		}
+
+		@Override
+		public Value set(int index, Value value) {
+			List<Value> list = list();
+			Value previous = list.set(index, value);
+			store(key, list);
+			return previous;
+		}
+
+		@Override
+		public void add(int index, Value value) {
+			List<Value> list = list();
+			list.add(index, value);
+			couples++;
+			store(key, list);
+		}
+
+		@Override
+		public Value remove(int index) {
+			List<Value> list = list();
+			Value previous = list.remove(index);
+			couples--;
+			store(key, list);
+			return previous;
+		}
+
+		@Override
+		public int size() {
+			return sizeOf(key);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean contains(Object value) {
+			return containsCouple(key, (Value) value);
+		}
+
+		@Override
+		public boolean add(Value value) {
+			return AbstractMultiMap.this.add(key, value);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean remove(Object value) {
+			return AbstractMultiMap.this.remove(key, (Value) value);
+		}
+
+		@Override
+		public void clear() {
+			AbstractMultiMap.this.remove(key);
+		}
+
+		@Override
+		public Iterator<Value> iterator() {
+			return iteratorOf(key);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj == this || list().equals(obj);
+		}
+
+		@Override
+		public int hashCode() {
+			return list().hashCode();
+		}
+	}
 }
@@ -0,0 +1,306 @@
+package fr.vergne.collection.impl;
+
+import java.util.Arrays;
+
+/**
+ * An {@link AbstractPrimitiveMultiMap} manages the open-addressing table
+ * shared by the primitive multimaps, like {@link IntIntMultiMap} and
+ * {@link LongLongMultiMap}: the state of the slots, the number of values of
+ * each key, the insertions with linear probing and the rehashes. The
+ * subclasses store the keys in an array of their primitive type and the values
+ * of each key in a sorted array of their primitive type, this class only
+ * moving them between slots.
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Keys>
+ *            the type of the array storing the keys
+ * @param <Values>
+ *            the type of the array storing the values of a key
+ */
+abstract class AbstractPrimitiveMultiMap<Keys, Values> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final Values removedMarker;
+	protected Keys keys;
+	/**
+	 * <code>null</code> for free slots, the removed marker for removed keys.
+	 */
+	protected Values[] values;
+	protected int[] counts;
+	protected int size = 0;
+	private int removed = 0;
+	protected long couples = 0;
+
+	/**
+	 *
+	 * @param removedMarker
+	 *            the empty array which marks the slots of the removed keys
+	 * @param expectedKeys
+	 *            the number of keys to store without rehash
+	 */
+	protected AbstractPrimitiveMultiMap(Values removedMarker, int expectedKeys) {
+		this.removedMarker = removedMarker;
+		allocate(capacityFor(expectedKeys));
+	}
+
+	/**
+	 *
+	 * @return an array able to store the given number of keys
+	 */
+	protected abstract Keys newKeys(int capacity);
+
+	/**
+	 *
+	 * @return an array able to store the values of the given number of keys
+	 */
+	protected abstract Values[] newValuesTable(int capacity);
+
+	/**
+	 *
+	 * @return an array able to store the given number of values
+	 */
+	protected abstract Values newValues(int length);
+
+	/**
+	 *
+	 * @return the length of an array of values
+	 */
+	protected abstract int lengthOf(Values array);
+
+	/**
+	 *
+	 * @return the hash of the key stored in the given slot of the given array
+	 */
+	protected abstract int hashAt(Keys keys, int slot);
+
+	private static int capacityFor(int keys) {
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity * 3 / 4 < keys) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private void allocate(int capacity) {
+		keys = newKeys(capacity);
+		values = newValuesTable(capacity);
+		counts = new int[capacity];
+	}
+
+	/**
+	 *
+	 * @return <code>true</code> if no key has ever been stored in this slot
+	 *         since the last rehash, so the probing can stop there
+	 */
+	protected boolean isFree(int slot) {
+		return values[slot] == null;
+	}
+
+	/**
+	 *
+	 * @return <code>true</code> if a key is currently stored in this slot
+	 */
+	protected boolean isUsed(int slot) {
+		return values[slot] != null && values[slot] != removedMarker;
+	}
+
+	/**
+	 *
+	 * @return the mask to apply to a hash or an incremented slot to obtain a
+	 *         slot
+	 */
+	protected int mask() {
+		return counts.length - 1;
+	}
+
+	/**
+	 *
+	 * @return the first used slot from the given one, or the capacity of the
+	 *         table if there is none
+	 */
+	protected int nextUsedSlot(int slot) {
+		while (slot < counts.length && !isUsed(slot)) {
+			slot++;
+		}
+		return slot;
+	}
+
+	/**
+	 * Reserve a slot for a new key, rehashing the table if it is too full.
+	 * The caller must store the key in the returned slot, which is given a
+	 * single-value array and a count of zero.
+	 *
+	 * @param hash
+	 *            the hash of the new key
+	 * @return the slot of the new key
+	 */
+	protected int claimSlot(int hash) {
+		if ((size + removed + 1) * 4 > counts.length * 3) {
+			rehash((size + 1) * 2 > counts.length ? counts.length << 1
+					: counts.length);
+		} else {
+			// enough room
+		}
+		int mask = mask();
+		int slot = hash & mask;
+		while (isUsed(slot)) {
+			slot = (slot + 1) & mask;
+		}
+		if (values[slot] == removedMarker) {
+			removed--;
+		} else {
+			// free slot
+		}
+		values[slot] = newValues(1);
+		counts[slot] = 0;
+		size++;
+		return slot;
+	}
+
+	private void rehash(int capacity) {
+		Keys oldKeys = keys;
+		Values[] oldValues = values;
+		int[] oldCounts = counts;
+		allocate(capacity);
+		removed = 0;
+		int mask = capacity - 1;
+		for (int oldSlot = 0; oldSlot < oldCounts.length; oldSlot++) {
+			if (oldValues[oldSlot] != null
+					&& oldValues[oldSlot] != removedMarker) {
+				int slot = hashAt(oldKeys, oldSlot) & mask;
+				while (values[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				System.arraycopy(oldKeys, oldSlot, keys, slot, 1);
+				values[slot] = oldValues[oldSlot];
+				counts[slot] = oldCounts[oldSlot];
+			} else {
+				// nothing to move
+			}
+		}
+	}
+
+	protected void removeSlot(int slot) {
+		couples -= counts[slot];
+		values[slot] = removedMarker;
+		counts[slot] = 0;
+		size--;
+		removed++;
+	}
+
+	/**
+	 * Insert a value in the sorted values of a slot, growing its array if it
+	 * is full. The following values are shifted, so it costs O(n) for a key
+	 * having n values: {@link #appendValues(int, int)} should be preferred to
+	 * insert several values at once.
+	 *
+	 * @param index
+	 *            the index where the value must be inserted
+	 * @return the array in which the value must be written at the given index
+	 */
+	protected Values openValue(int slot, int index) {
+		Values array = values[slot];
+		int count = counts[slot];
+		if (count == lengthOf(array)) {
+			Values grown = newValues(count + (count >> 1) + 1);
+			System.arraycopy(array, 0, grown, 0, index);
+			System.arraycopy(array, index, grown, index + 1, count - index);
+			array = grown;
+			values[slot] = array;
+		} else {
+			System.arraycopy(array, index, array, index + 1, count - index);
+		}
+		counts[slot]++;
+		couples++;
+		return array;
+	}
+
+	/**
+	 * Reserve room for new values after the sorted values of a slot, growing
+	 * its array if it is too small. The caller must write the new values in
+	 * the returned array and merge them with the current ones, so the values
+	 * remain sorted.
+	 *
+	 * @param added
+	 *            the number of values to add
+	 * @return the array in which the current values are followed by the room
+	 *         of the added ones
+	 */
+	protected Values appendValues(int slot, int added) {
+		Values array = values[slot];
+		int count = counts[slot];
+		if (count + added > lengthOf(array)) {
+			Values grown = newValues(Math.max(count + added, count
+					+ (count >> 1) + 1));
+			System.arraycopy(array, 0, grown, 0, count);
+			array = grown;
+			values[slot] = array;
+		} else {
+			// enough room
+		}
+		counts[slot] += added;
+		couples += added;
+		return array;
+	}
+
+	/**
+	 * Remove the value at the given index from the sorted values of a slot,
+	 * the key being removed with its last value.
+	 */
+	protected void closeValue(int slot, int index) {
+		int count = counts[slot];
+		if (count == 1) {
+			removeSlot(slot);
+		} else {
+			Values array = values[slot];
+			System.arraycopy(array, index + 1, array, index, count - index - 1);
+			counts[slot]--;
+			couples--;
+		}
+	}
+
+	/**
+	 * @return the number of keys of this multimap
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of (key, value) couples of this multimap
+	 */
+	public long couplesCount() {
+		return couples;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(values, null);
+		Arrays.fill(counts, 0);
+		size = 0;
+		removed = 0;
+		couples = 0;
+	}
+
+	/**
+	 * Reduce the value arrays to their actual number of values and the key
+	 * table to the smallest capacity able to store the current keys.
+	 */
+	public void trimToSize() {
+		for (int slot = 0; slot < counts.length; slot++) {
+			if (isUsed(slot) && lengthOf(values[slot]) > counts[slot]) {
+				Values trimmed = newValues(counts[slot]);
+				System.arraycopy(values[slot], 0, trimmed, 0, counts[slot]);
+				values[slot] = trimmed;
+			} else {
+				// nothing to trim
+			}
+		}
+		rehash(capacityFor(size));
+	}
+}
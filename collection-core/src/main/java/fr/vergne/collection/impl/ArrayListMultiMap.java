@@ -0,0 +1,64 @@
+package fr.vergne.collection.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map.Entry;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.util.Equivalence;
+
+/**
+ * An {@link ArrayListMultiMap} is a {@link ListMultiMap} which stores the
+ * values of each key in an {@link ArrayList} rather than a
+ * {@link java.util.LinkedList}. The values are thus stored contiguously, which
+ * reduces the memory needed for each value and makes the iterations faster.
+ * The {@link ArrayList}s grow by themselves when values are added, and
+ * {@link #trimToSize()} allows to reclaim the unused capacity of all the keys
+ * at once.
+ * 
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * 
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class ArrayListMultiMap<Key, Value> extends ListMultiMap<Key, Value>
+		implements MultiMap<Key, Value> {
+
+	public ArrayListMultiMap(MultiMap<Key, Value> map) {
+		for (Entry<Key, Collection<Value>> entry : map.entrySet()) {
+			addAll(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public ArrayListMultiMap() {
+	}
+
+	/**
+	 * 
+	 * @param keyEquivalence
+	 *            the {@link Equivalence} telling which keys are the same
+	 */
+	public ArrayListMultiMap(Equivalence<? super Key> keyEquivalence) {
+		super(keyEquivalence);
+	}
+
+	/**
+	 * A key obtains an {@link ArrayList} only when it has a second value, so
+	 * it starts with the capacity for two values.
+	 */
+	@Override
+	protected Collection<Value> generateInnerCollection(Key key) {
+		return new ArrayList<Value>(2);
+	}
+
+	/**
+	 * Reduce the capacity of the {@link ArrayList} of each key to its actual
+	 * number of values. It is typically called once the {@link MultiMap} has
+	 * been fully built, to reclaim the memory reserved for additional values.
+	 */
+	public void trimToSize() {
+		forEachInnerCollection(collection -> ((ArrayList<Value>) collection)
+				.trimToSize());
+	}
+}
@@ -0,0 +1,122 @@
+package fr.vergne.collection.impl;
+
+import java.util.Collection;
+import java.util.Map.Entry;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.util.ReflexiveMap;
+
+/**
+ * A {@link BidirectionalMultiMap} is a {@link MultiMap} which maintains the
+ * inverse mapping of its couples: for each value, it knows the keys mapping to
+ * it. This inverse mapping is updated at each change, so retrieving the keys of
+ * a value does not need to go through all the couples. It is accessible
+ * through {@link #inverse()}, which provides a {@link BidirectionalMultiMap}
+ * where keys and values are swapped, like {@link ReflexiveMap#reverse()} does
+ * for one-to-one mappings. Both {@link BidirectionalMultiMap}s share the same
+ * data, so a change in one is a change in the other. Like an
+ * {@link HashMultiMap}, it allows at most one instance for each (key, value).
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class BidirectionalMultiMap<Key, Value> extends ForwardingMultiMap<Key, Value> {
+
+	private final MultiMap<Key, Value> keyValues;
+	private final MultiMap<Value, Key> valueKeys;
+	private final BidirectionalMultiMap<Value, Key> inverse;
+
+	public BidirectionalMultiMap() {
+		keyValues = generateInternalMultiMap();
+		valueKeys = generateInternalMultiMap();
+		inverse = new BidirectionalMultiMap<Value, Key>(this);
+	}
+
+	public BidirectionalMultiMap(MultiMap<Key, Value> map) {
+		this();
+		for (Entry<Key, Collection<Value>> entry : map.entrySet()) {
+			addAll(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private BidirectionalMultiMap(BidirectionalMultiMap<Value, Key> reflex) {
+		keyValues = reflex.valueKeys;
+		valueKeys = reflex.keyValues;
+		inverse = reflex;
+	}
+
+	/**
+	 * Internally, two different {@link MultiMap}s are used to store the data.
+	 * Each update on this {@link BidirectionalMultiMap} correspond to an update
+	 * to both these internal {@link MultiMap}s. You can override this method to
+	 * change the type of internal {@link MultiMap} used, as long as it allows
+	 * at most one instance for each (key, value).
+	 *
+	 * @return the type of {@link MultiMap} backed by this
+	 *         {@link BidirectionalMultiMap}
+	 */
+	protected <K, V> MultiMap<K, V> generateInternalMultiMap() {
+		return new HashMultiMap<K, V>();
+	}
+
+	/**
+	 * @return the {@link BidirectionalMultiMap} which maps the values of this
+	 *         one to their keys
+	 */
+	public BidirectionalMultiMap<Value, Key> inverse() {
+		return inverse;
+	}
+
+	@Override
+	protected MultiMap<Key, Value> delegate() {
+		return keyValues;
+	}
+
+	@Override
+	protected void onRemoved(Key key, Value value) {
+		valueKeys.remove(value, key);
+	}
+
+	@Override
+	public boolean add(Key key, Value value) {
+		if (keyValues.add(key, value)) {
+			valueKeys.add(value, key);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public boolean remove(Key key, Value value) {
+		if (keyValues.remove(key, value)) {
+			valueKeys.remove(value, key);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Collection<Value> remove(Object key) {
+		Collection<Value> removed = keyValues.remove(key);
+		if (removed != null) {
+			for (Value value : removed) {
+				valueKeys.remove(value, (Key) key);
+			}
+		} else {
+			// nothing to update
+		}
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		keyValues.clear();
+		valueKeys.clear();
+	}
+}
@@ -0,0 +1,292 @@
+package fr.vergne.collection.impl;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Map.Entry;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.util.Equivalence;
+
+/**
+ * <p>
+ * A {@link BloomFilterMultiMap} is a decorator which accelerates the negative
+ * answers of {@link #containsCouple(Object, Object)}. Each couple added to the
+ * decorated {@link MultiMap} is recorded in a counting Bloom filter, so most
+ * of the absent couples are detected without searching in the values of the
+ * key, which is especially useful for {@link ListMultiMap}s, where this search
+ * goes through all the values. The positive answers are confirmed by the
+ * decorated {@link MultiMap}, so the answers are always exact. To ensure it,
+ * the keys are hashed like in the decorated {@link MultiMap}, which must
+ * consequently identify them through an
+ * {@link fr.vergne.collection.util.Equivalence} rather than a
+ * {@link java.util.Comparator}.
+ * </p>
+ *
+ * <p>
+ * The filter uses 4-bit counters, so the removed couples are removed from the
+ * filter too. A counter which reaches its maximum is never decremented again,
+ * which preserves the correctness at the cost of more false positives. The
+ * number of counters and hash functions is computed from the expected number
+ * of couples and the acceptable rate of false positives: the filter takes
+ * about 0.6 * n * ln(1/p) bytes for n couples and a rate p. If more couples
+ * are stored, the filter remains correct but the rate of false positives
+ * increases, which can be checked with {@link #getFalsePositiveRate()}.
+ * </p>
+ *
+ * <p>
+ * The decorated {@link MultiMap} should not be modified directly, otherwise
+ * the filter could miss some couples. Changes made through the views of this
+ * {@link BloomFilterMultiMap} are properly recorded.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class BloomFilterMultiMap<Key, Value> extends ForwardingMultiMap<Key, Value> {
+
+	private static final int COUNTER_BITS = 4;
+	private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+	private static final long MAX_COUNT = (1 << COUNTER_BITS) - 1;
+
+	private final MultiMap<Key, Value> map;
+	private final Equivalence<? super Key> keyEquivalence;
+	private final long[] counters;
+	private final int countersCount;
+	private final int hashesCount;
+	private long couples = 0;
+
+	/**
+	 *
+	 * @param map
+	 *            the {@link MultiMap} to decorate
+	 * @param expectedCouples
+	 *            the number of couples expected in the {@link MultiMap}
+	 * @param falsePositiveRate
+	 *            the acceptable rate of false positives, between 0 and 1
+	 *            excluded, when the expected number of couples is reached
+	 * @throws IllegalArgumentException
+	 *             if the {@link MultiMap} compares its keys with a
+	 *             {@link java.util.Comparator}, which does not allow to hash
+	 *             them consistently
+	 */
+	public BloomFilterMultiMap(MultiMap<Key, Value> map, int expectedCouples,
+			double falsePositiveRate) {
+		this.keyEquivalence = keyEquivalenceOf(map);
+		if (keyEquivalence == null) {
+			throw new IllegalArgumentException(
+					"The keys of the decorated map cannot be hashed consistently");
+		} else if (expectedCouples <= 0) {
+			throw new IllegalArgumentException(
+					"The expected number of couples must be positive: "
+							+ expectedCouples);
+		} else if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException(
+					"The rate of false positives must be in ]0;1[: "
+							+ falsePositiveRate);
+		} else {
+			double ln2 = Math.log(2);
+			long size = (long) Math.ceil(-expectedCouples
+					* Math.log(falsePositiveRate) / (ln2 * ln2));
+			this.countersCount = (int) Math.min(Math.max(size,
+					COUNTERS_PER_WORD), Integer.MAX_VALUE - COUNTERS_PER_WORD);
+			this.hashesCount = Math.max(1, (int) Math.round((double) countersCount
+					/ expectedCouples * ln2));
+			this.counters = new long[(countersCount + COUNTERS_PER_WORD - 1)
+					/ COUNTERS_PER_WORD];
+			this.map = map;
+			for (Entry<Key, Value> couple : map) {
+				record(couple.getKey(), couple.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Create a {@link BloomFilterMultiMap} with a rate of false positives of
+	 * 1% for twice the current number of couples.
+	 *
+	 * @param map
+	 *            the {@link MultiMap} to decorate
+	 */
+	public BloomFilterMultiMap(MultiMap<Key, Value> map) {
+		this(map, Math.max(1024, 2 * countCouples(map)), 0.01);
+	}
+
+	private static int countCouples(MultiMap<?, ?> map) {
+		if (map instanceof AbstractMultiMap) {
+			return (int) Math.min(Integer.MAX_VALUE / 2,
+					((AbstractMultiMap<?, ?>) map).couplesCount());
+		} else {
+			int count = 0;
+			for (Collection<?> values : map.collections()) {
+				count += values.size();
+			}
+			return count;
+		}
+	}
+
+	/**
+	 *
+	 * @return the probability that an absent couple is not rejected by the
+	 *         filter, given the current number of couples
+	 */
+	public double getFalsePositiveRate() {
+		return Math.pow(1 - Math.exp(-(double) hashesCount * couples
+				/ countersCount), hashesCount);
+	}
+
+	/**
+	 *
+	 * @return the memory used by the filter, in bytes
+	 */
+	public long getFilterSize() {
+		return (long) counters.length * Long.BYTES;
+	}
+
+	/*
+	 * FILTER
+	 */
+
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	/**
+	 * The positions of a couple are computed by double hashing: the i-th
+	 * position is h1 + i * h2.
+	 */
+	private int position(int h1, int h2, int i) {
+		return Math.floorMod(h1 + i * h2, countersCount);
+	}
+
+	private long count(int position) {
+		return (counters[position / COUNTERS_PER_WORD] >>> (position
+				% COUNTERS_PER_WORD * COUNTER_BITS))
+				& MAX_COUNT;
+	}
+
+	private void increment(int position, long delta) {
+		counters[position / COUNTERS_PER_WORD] += delta << (position
+				% COUNTERS_PER_WORD * COUNTER_BITS);
+	}
+
+	/**
+	 * The key is hashed with the {@link Equivalence} of the decorated
+	 * {@link MultiMap}, so equivalent keys give the same positions.
+	 */
+	@SuppressWarnings("unchecked")
+	private int hash(Object key, Object value) {
+		return mix(keyEquivalence.hash((Key) key) * 31
+				+ Objects.hashCode(value));
+	}
+
+	private void record(Object key, Object value) {
+		int h1 = hash(key, value);
+		int h2 = mix(h1) | 1;
+		for (int i = 0; i < hashesCount; i++) {
+			int position = position(h1, h2, i);
+			if (count(position) < MAX_COUNT) {
+				increment(position, 1);
+			} else {
+				// saturated
+			}
+		}
+		couples++;
+	}
+
+	private void forget(Object key, Object value) {
+		int h1 = hash(key, value);
+		int h2 = mix(h1) | 1;
+		for (int i = 0; i < hashesCount; i++) {
+			int position = position(h1, h2, i);
+			long count = count(position);
+			if (count > 0 && count < MAX_COUNT) {
+				increment(position, -1);
+			} else {
+				// saturated, we cannot know whether it can be decremented
+			}
+		}
+		couples--;
+	}
+
+	private boolean mightContain(Object key, Object value) {
+		int h1 = hash(key, value);
+		int h2 = mix(h1) | 1;
+		for (int i = 0; i < hashesCount; i++) {
+			if (count(position(h1, h2, i)) == 0) {
+				return false;
+			} else {
+				// continue checking
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * MULTIMAP
+	 */
+
+	@Override
+	protected MultiMap<Key, Value> delegate() {
+		return map;
+	}
+
+	@Override
+	protected void onRemoved(Key key, Value value) {
+		forget(key, value);
+	}
+
+	@Override
+	public boolean add(Key key, Value value) {
+		if (map.add(key, value)) {
+			record(key, value);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public boolean remove(Key key, Value value) {
+		if (mightContain(key, value) && map.remove(key, value)) {
+			forget(key, value);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public Collection<Value> remove(Object key) {
+		Collection<Value> values = map.remove(key);
+		if (values != null) {
+			for (Value value : values) {
+				forget(key, value);
+			}
+		} else {
+			// nothing to forget
+		}
+		return values;
+	}
+
+	@Override
+	public void clear() {
+		map.clear();
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] = 0;
+		}
+		couples = 0;
+	}
+
+	@Override
+	public boolean containsCouple(Key key, Value value) {
+		return mightContain(key, value) && map.containsCouple(key, value);
+	}
+}
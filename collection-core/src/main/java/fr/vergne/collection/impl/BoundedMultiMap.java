@@ -0,0 +1,393 @@
+package fr.vergne.collection.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+
+import fr.vergne.collection.MultiMap;
+
+/**
+ * <p>
+ * A {@link BoundedMultiMap} is a {@link MultiMap} which limits both its number
+ * of keys and the number of values of each key. Like a {@link ListMultiMap},
+ * it allows to have several instances for each (key, value), and it keeps the
+ * values of each key in their order of addition.
+ * </p>
+ *
+ * <p>
+ * When a value is added to a key which has already the maximum number of
+ * values, the oldest value of this key is dropped. When a new key is added
+ * while the maximum number of keys is reached, a key is evicted with all its
+ * values, depending on the {@link EvictionPolicy}. A key is used when a value
+ * is added to it or when its values are retrieved through
+ * {@link #getAll(Object)}. Each dropped or evicted couple is notified to the
+ * listener set with {@link #setEvictionListener(BiConsumer)}, which allows to
+ * use a {@link BoundedMultiMap} as a buffer of recent values. The bookkeeping
+ * of the uses and the eviction cost O(1).
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class BoundedMultiMap<Key, Value> extends MultiMapView<Key, Value> {
+
+	public static enum EvictionPolicy {
+		/**
+		 * Evict the key used the least recently.
+		 */
+		LEAST_RECENTLY_USED,
+		/**
+		 * Evict the key used the least number of times, or the least recently
+		 * among the ones used the same number of times.
+		 */
+		LEAST_FREQUENTLY_USED
+	}
+
+	/**
+	 * The data of a key, which is ranked in the {@link BucketList} by number
+	 * of uses.
+	 */
+	private static class Slot<Key, Value> extends
+			BucketList.Node<Slot<Key, Value>> {
+		final Key key;
+		final ArrayDeque<Value> values = new ArrayDeque<Value>();
+
+		Slot(Key key) {
+			this.key = key;
+		}
+	}
+
+	private final Map<Key, Slot<Key, Value>> slots = new HashMap<Key, Slot<Key, Value>>();
+	private final int maxKeys;
+	private final int maxValuesPerKey;
+	private final EvictionPolicy policy;
+	/**
+	 * The keys grouped by number of uses, from the least to the most recently
+	 * used in each group. With {@link EvictionPolicy#LEAST_RECENTLY_USED}, all
+	 * the keys stay in the first group.
+	 */
+	private final BucketList<Slot<Key, Value>> buckets = new BucketList<Slot<Key, Value>>();
+	private BiConsumer<? super Key, ? super Value> listener = (key, value) -> {
+	};
+
+	/**
+	 *
+	 * @param maxKeys
+	 *            the maximum number of keys
+	 * @param maxValuesPerKey
+	 *            the maximum number of values of each key
+	 * @param policy
+	 *            the way to select the keys to evict
+	 */
+	public BoundedMultiMap(int maxKeys, int maxValuesPerKey,
+			EvictionPolicy policy) {
+		if (maxKeys < 1 || maxValuesPerKey < 1) {
+			throw new IllegalArgumentException(
+					"The limits must be positive: " + maxKeys + ", "
+							+ maxValuesPerKey);
+		} else {
+			this.maxKeys = maxKeys;
+			this.maxValuesPerKey = maxValuesPerKey;
+			this.policy = policy;
+		}
+	}
+
+	public BoundedMultiMap(int maxKeys, int maxValuesPerKey) {
+		this(maxKeys, maxValuesPerKey, EvictionPolicy.LEAST_RECENTLY_USED);
+	}
+
+	/**
+	 *
+	 * @param listener
+	 *            the listener notified of each couple dropped or evicted
+	 */
+	public void setEvictionListener(
+			BiConsumer<? super Key, ? super Value> listener) {
+		this.listener = listener;
+	}
+
+	/*
+	 * BOOKKEEPING
+	 */
+
+	private void use(Slot<Key, Value> slot) {
+		if (policy == EvictionPolicy.LEAST_RECENTLY_USED) {
+			buckets.moveToEnd(slot);
+		} else {
+			buckets.promote(slot);
+		}
+	}
+
+	private Slot<Key, Value> createSlot(Key key) {
+		if (slots.size() >= maxKeys) {
+			Slot<Key, Value> evicted = buckets.first().first;
+			removeSlot(evicted);
+			for (Value value : evicted.values) {
+				listener.accept(evicted.key, value);
+			}
+		} else {
+			// enough room
+		}
+		Slot<Key, Value> slot = new Slot<Key, Value>(key);
+		buckets.addFirst(slot, 1);
+		slots.put(key, slot);
+		return slot;
+	}
+
+	private void removeSlot(Slot<Key, Value> slot) {
+		buckets.remove(slot);
+		slots.remove(slot.key);
+	}
+
+	private void prune(Slot<Key, Value> slot) {
+		if (slot.values.isEmpty() && slot.bucket != null) {
+			removeSlot(slot);
+		} else {
+			// still used
+		}
+	}
+
+	/*
+	 * MULTIMAP
+	 */
+
+	@Override
+	public boolean add(Key key, Value value) {
+		Slot<Key, Value> slot = slots.get(key);
+		if (slot == null) {
+			slot = createSlot(key);
+		} else {
+			use(slot);
+		}
+		slot.values.addLast(value);
+		if (slot.values.size() > maxValuesPerKey) {
+			listener.accept(key, slot.values.removeFirst());
+		} else {
+			// enough room
+		}
+		return true;
+	}
+
+	@Override
+	public boolean remove(Key key, Value value) {
+		Slot<Key, Value> slot = slots.get(key);
+		if (slot != null && slot.values.remove(value)) {
+			prune(slot);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public Collection<Value> remove(Object key) {
+		Slot<Key, Value> slot = slots.get(key);
+		if (slot == null) {
+			return null;
+		} else {
+			removeSlot(slot);
+			return slot.values;
+		}
+	}
+
+	@Override
+	public void clear() {
+		slots.clear();
+		buckets.clear();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return slots.containsKey(key);
+	}
+
+	@Override
+	public boolean containsCouple(Key key, Value value) {
+		Slot<Key, Value> slot = slots.get(key);
+		return slot != null && slot.values.contains(value);
+	}
+
+	@Override
+	public int size() {
+		return slots.size();
+	}
+
+	@Override
+	public Collection<Value> getAll(Object key) {
+		Slot<Key, Value> initialSlot = slots.get(key);
+		if (initialSlot == null) {
+			return null;
+		} else {
+			use(initialSlot);
+			@SuppressWarnings("unchecked")
+			Key castedKey = (Key) key;
+			return new AbstractCollection<Value>() {
+
+				private Collection<Value> values() {
+					Slot<Key, Value> slot = slots.get(key);
+					return slot == null ? Collections.<Value> emptySet()
+							: slot.values;
+				}
+
+				@Override
+				public Iterator<Value> iterator() {
+					Slot<Key, Value> slot = slots.get(key);
+					if (slot == null) {
+						return Collections.<Value> emptySet().iterator();
+					} else {
+						Iterator<Value> iterator = slot.values.iterator();
+						return new Iterator<Value>() {
+
+							@Override
+							public boolean hasNext() {
+								return iterator.hasNext();
+							}
+
+							@Override
+							public Value next() {
+								return iterator.next();
+							}
+
+							@Override
+							public void remove() {
+								iterator.remove();
+								prune(slot);
+							}
+						};
+					}
+				}
+
+				@Override
+				public int size() {
+					return values().size();
+				}
+
+				@Override
+				public boolean contains(Object value) {
+					return values().contains(value);
+				}
+
+				@Override
+				public boolean add(Value value) {
+					return BoundedMultiMap.this.add(castedKey, value);
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public boolean remove(Object value) {
+					return BoundedMultiMap.this.remove(castedKey,
+							(Value) value);
+				}
+
+				@Override
+				public void clear() {
+					BoundedMultiMap.this.remove(castedKey);
+				}
+			};
+		}
+	}
+
+	@Override
+	public Set<Key> keySet() {
+		return new AbstractSet<Key>() {
+
+			@Override
+			public Iterator<Key> iterator() {
+				Iterator<Slot<Key, Value>> iterator = slots.values().iterator();
+				return new Iterator<Key>() {
+
+					private Slot<Key, Value> last;
+
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public Key next() {
+						last = iterator.next();
+						return last.key;
+					}
+
+					@Override
+					public void remove() {
+						iterator.remove();
+						buckets.remove(last);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return slots.size();
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return slots.containsKey(key);
+			}
+
+			@Override
+			public boolean remove(Object key) {
+				return BoundedMultiMap.this.remove(key) != null;
+			}
+		};
+	}
+
+	/**
+	 * Iterating over the couples does not count as a use of the keys.
+	 */
+	@Override
+	public Iterator<Entry<Key, Value>> iterator() {
+		Iterator<Slot<Key, Value>> slotsIterator = slots.values().iterator();
+		return new Iterator<Entry<Key, Value>>() {
+
+			private Slot<Key, Value> slot;
+			private Iterator<Value> valuesIterator = Collections
+					.<Value> emptySet().iterator();
+
+			@Override
+			public boolean hasNext() {
+				return valuesIterator.hasNext() || slotsIterator.hasNext();
+			}
+
+			@Override
+			public Entry<Key, Value> next() {
+				if (valuesIterator.hasNext()) {
+					// continue on the current key
+				} else if (slotsIterator.hasNext()) {
+					slot = slotsIterator.next();
+					valuesIterator = slot.values.iterator();
+				} else {
+					throw new NoSuchElementException();
+				}
+				return new AbstractMap.SimpleImmutableEntry<Key, Value>(
+						slot.key, valuesIterator.next());
+			}
+
+			@Override
+			public void remove() {
+				valuesIterator.remove();
+				if (slot.values.isEmpty()) {
+					slotsIterator.remove();
+					buckets.remove(slot);
+				} else {
+					// still used
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,208 @@
+package fr.vergne.collection.impl;
+
+/**
+ * A {@link BucketList} groups {@link Node}s in {@link Bucket}s of the same
+ * rank, the {@link Bucket}s being sorted by increasing rank and the
+ * {@link Node}s of a {@link Bucket} by order of arrival. Both are linked
+ * lists, and the {@link Node}s are the items themselves, so moving an item to
+ * a neighbour rank costs O(1), which is enough to maintain counts of uses or
+ * sizes incremented or decremented one at a time.
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <N>
+ */
+class BucketList<N extends BucketList.Node<N>> {
+
+	/**
+	 * An item of a {@link BucketList}, which knows its {@link Bucket} and its
+	 * neighbours within it.
+	 */
+	static class Node<N extends Node<N>> {
+		Bucket<N> bucket;
+		N previous;
+		N next;
+	}
+
+	/**
+	 * The {@link Node}s having the same rank, from the oldest to the newest
+	 * arrived.
+	 */
+	static class Bucket<N extends Node<N>> {
+		final long rank;
+		N first;
+		N last;
+		Bucket<N> previous;
+		Bucket<N> next;
+
+		Bucket(long rank) {
+			this.rank = rank;
+		}
+	}
+
+	private Bucket<N> first;
+	private Bucket<N> last;
+
+	/**
+	 *
+	 * @return the {@link Bucket} having the lowest rank, <code>null</code> if
+	 *         there is none
+	 */
+	Bucket<N> first() {
+		return first;
+	}
+
+	/**
+	 *
+	 * @return the {@link Bucket} having the highest rank, <code>null</code> if
+	 *         there is none
+	 */
+	Bucket<N> last() {
+		return last;
+	}
+
+	/**
+	 * Add a {@link Node} at the end of the {@link Bucket} of the given rank,
+	 * which must be lower than or equal to the lowest one.
+	 */
+	void addFirst(N node, long rank) {
+		Bucket<N> bucket = first;
+		if (bucket == null || bucket.rank != rank) {
+			bucket = insertBucket(null, rank);
+		} else {
+			// bucket already available
+		}
+		append(bucket, node);
+	}
+
+	/**
+	 * Add a {@link Node} at the end of the {@link Bucket} of the given rank,
+	 * which must be greater than or equal to the highest one.
+	 */
+	void addLast(N node, long rank) {
+		Bucket<N> bucket = last;
+		if (bucket == null || bucket.rank != rank) {
+			bucket = insertBucket(last, rank);
+		} else {
+			// bucket already available
+		}
+		append(bucket, node);
+	}
+
+	/**
+	 * Move a {@link Node} at the end of the {@link Bucket} of the next rank.
+	 */
+	void promote(N node) {
+		Bucket<N> bucket = node.bucket;
+		long rank = bucket.rank + 1;
+		Bucket<N> next = bucket.next;
+		if (next == null || next.rank != rank) {
+			next = insertBucket(bucket, rank);
+		} else {
+			// bucket already available
+		}
+		remove(node);
+		append(next, node);
+	}
+
+	/**
+	 * Move a {@link Node} at the end of the {@link Bucket} of the previous
+	 * rank.
+	 */
+	void demote(N node) {
+		Bucket<N> bucket = node.bucket;
+		long rank = bucket.rank - 1;
+		Bucket<N> previous = bucket.previous;
+		if (previous == null || previous.rank != rank) {
+			previous = insertBucket(previous, rank);
+		} else {
+			// bucket already available
+		}
+		remove(node);
+		append(previous, node);
+	}
+
+	/**
+	 * Move a {@link Node} at the end of its {@link Bucket}.
+	 */
+	void moveToEnd(N node) {
+		Bucket<N> bucket = node.bucket;
+		if (bucket.last != node) {
+			remove(node);
+			append(bucket, node);
+		} else {
+			// already the newest
+		}
+	}
+
+	/**
+	 * Remove a {@link Node} from its {@link Bucket}, which is removed too if
+	 * it becomes empty.
+	 */
+	void remove(N node) {
+		Bucket<N> bucket = node.bucket;
+		if (node.previous == null) {
+			bucket.first = node.next;
+		} else {
+			node.previous.next = node.next;
+		}
+		if (node.next == null) {
+			bucket.last = node.previous;
+		} else {
+			node.next.previous = node.previous;
+		}
+		node.bucket = null;
+		if (bucket.first == null) {
+			if (bucket.previous == null) {
+				first = bucket.next;
+			} else {
+				bucket.previous.next = bucket.next;
+			}
+			if (bucket.next == null) {
+				last = bucket.previous;
+			} else {
+				bucket.next.previous = bucket.previous;
+			}
+		} else {
+			// bucket still used
+		}
+	}
+
+	void clear() {
+		first = null;
+		last = null;
+	}
+
+	private void append(Bucket<N> bucket, N node) {
+		node.bucket = bucket;
+		node.previous = bucket.last;
+		node.next = null;
+		if (bucket.last == null) {
+			bucket.first = node;
+		} else {
+			bucket.last.next = node;
+		}
+		bucket.last = node;
+	}
+
+	/**
+	 * Create a {@link Bucket} after the given one, or as the first one if no
+	 * {@link Bucket} is given.
+	 */
+	private Bucket<N> insertBucket(Bucket<N> previous, long rank) {
+		Bucket<N> bucket = new Bucket<N>(rank);
+		bucket.previous = previous;
+		bucket.next = previous == null ? first : previous.next;
+		if (bucket.next == null) {
+			last = bucket;
+		} else {
+			bucket.next.previous = bucket;
+		}
+		if (previous == null) {
+			first = bucket;
+		} else {
+			previous.next = bucket;
+		}
+		return bucket;
+	}
+}
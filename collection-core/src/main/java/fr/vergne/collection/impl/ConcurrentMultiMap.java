@@ -0,0 +1,243 @@
+package fr.vergne.collection.impl;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import fr.vergne.collection.MultiMap;
+
+/**
+ * <p>
+ * A {@link ConcurrentMultiMap} is a thread-safe {@link MultiMap} which allows
+ * at most one instance for each (key, value), like a {@link HashMultiMap}. It
+ * is backed by a {@link ConcurrentHashMap}, so the operations on a given key (
+ * {@link #add(Object, Object)}, {@link #addAll(Object, Collection)},
+ * {@link #remove(Object, Object)}, {@link #containsCouple(Object, Object)},
+ * etc.) are atomic without locking the whole {@link MultiMap}: only the bin of
+ * the key is locked during a write, and reads do not lock at all.
+ * </p>
+ *
+ * <p>
+ * The iterators of this {@link ConcurrentMultiMap} are weakly consistent
+ * rather than fail-fast: they never throw a
+ * {@link java.util.ConcurrentModificationException} and reflect the state of
+ * the {@link MultiMap} at some point at or since their creation. Keys are
+ * removed as soon as they are not mapped to any value anymore, so a
+ * {@link Collection} obtained through {@link #getAll(Object)} should not be
+ * kept for later updates.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class ConcurrentMultiMap<Key, Value> implements MultiMap<Key, Value> {
+
+	private final ConcurrentMap<Key, Collection<Value>> innerMap = new ConcurrentHashMap<Key, Collection<Value>>();
+
+	public ConcurrentMultiMap(MultiMap<Key, Value> map) {
+		for (Entry<Key, Collection<Value>> entry : map.entrySet()) {
+			addAll(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public ConcurrentMultiMap() {
+	}
+
+	/**
+	 * The {@link Collection}s generated by this method are accessed
+	 * concurrently, so they must be thread-safe. By default, a concurrent
+	 * {@link Set} is used.
+	 *
+	 * @param key
+	 *            the key which will be mapped to the {@link Collection}
+	 * @return a new thread-safe {@link Collection} for the values of the key
+	 */
+	protected Collection<Value> generateInnerCollection(Key key) {
+		return ConcurrentHashMap.newKeySet();
+	}
+
+	@Override
+	public boolean add(Key key, Value value) {
+		boolean[] isChanged = { false };
+		innerMap.compute(key, (k, collection) -> {
+			if (collection == null) {
+				collection = generateInnerCollection(k);
+			} else {
+				// use the already present collection
+			}
+			isChanged[0] = collection.add(value);
+			return collection.isEmpty() ? null : collection;
+		});
+		return isChanged[0];
+	}
+
+	@Override
+	public boolean addAll(Key key, Collection<Value> values) {
+		boolean[] isChanged = { false };
+		innerMap.compute(key, (k, collection) -> {
+			if (collection == null) {
+				collection = generateInnerCollection(k);
+			} else {
+				// use the already present collection
+			}
+			isChanged[0] = collection.addAll(values);
+			return collection.isEmpty() ? null : collection;
+		});
+		return isChanged[0];
+	}
+
+	@Override
+	public boolean remove(Key key, Value value) {
+		boolean[] isChanged = { false };
+		innerMap.computeIfPresent(key, (k, collection) -> {
+			isChanged[0] = collection.remove(value);
+			return collection.isEmpty() ? null : collection;
+		});
+		return isChanged[0];
+	}
+
+	@Override
+	public boolean removeAll(Key key, Collection<Value> values) {
+		boolean[] isChanged = { false };
+		innerMap.computeIfPresent(key, (k, collection) -> {
+			isChanged[0] = collection.removeAll(values);
+			return collection.isEmpty() ? null : collection;
+		});
+		return isChanged[0];
+	}
+
+	@Override
+	public Collection<Value> replaceAll(Key key, Collection<Value> collection) {
+		Collection<Value> actualCollection = generateInnerCollection(key);
+		actualCollection.addAll(collection);
+		if (actualCollection.isEmpty()) {
+			return innerMap.remove(key);
+		} else {
+			return innerMap.put(key, actualCollection);
+		}
+	}
+
+	@Override
+	public boolean containsCouple(Key key, Value value) {
+		Collection<Value> collection = innerMap.get(key);
+		return collection != null && collection.contains(value);
+	}
+
+	@Override
+	public Collection<Value> getAll(Object key) {
+		return innerMap.get(key);
+	}
+
+	@Override
+	public Set<Key> keySet() {
+		return innerMap.keySet();
+	}
+
+	@Override
+	public Collection<Collection<Value>> collections() {
+		return innerMap.values();
+	}
+
+	@Override
+	public Set<Entry<Key, Collection<Value>>> entrySet() {
+		return innerMap.entrySet();
+	}
+
+	@Override
+	public Collection<Value> remove(Object key) {
+		return innerMap.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		innerMap.clear();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return innerMap.containsKey(key);
+	}
+
+	@Override
+	public boolean containsCollection(Collection<Value> collection) {
+		return innerMap.containsValue(collection);
+	}
+
+	@Override
+	public int size() {
+		return innerMap.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return innerMap.isEmpty();
+	}
+
+	@Override
+	public Iterator<Entry<Key, Value>> iterator() {
+		return new Iterator<Entry<Key, Value>>() {
+
+			private final Iterator<Entry<Key, Collection<Value>>> entriesIterator = innerMap
+					.entrySet().iterator();
+			private Iterator<Value> valuesIterator = Collections
+					.<Value> emptySet().iterator();
+			private Key key;
+			private Entry<Key, Value> next;
+			private Entry<Key, Value> last;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null) {
+					if (valuesIterator.hasNext()) {
+						next = new AbstractMap.SimpleImmutableEntry<Key, Value>(
+								key, valuesIterator.next());
+					} else if (entriesIterator.hasNext()) {
+						Entry<Key, Collection<Value>> entry = entriesIterator
+								.next();
+						key = entry.getKey();
+						valuesIterator = entry.getValue().iterator();
+					} else {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public Entry<Key, Value> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				} else {
+					last = next;
+					next = null;
+					return last;
+				}
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				} else {
+					ConcurrentMultiMap.this.remove(last.getKey(),
+							last.getValue());
+					last = null;
+				}
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return innerMap.toString();
+	}
+}
@@ -0,0 +1,747 @@
+package fr.vergne.collection.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import fr.vergne.collection.MultiMap;
+
+/**
+ * <p>
+ * A {@link CopyOnWriteMultiMap} is a thread-safe {@link MultiMap} dedicated to
+ * read-mostly workloads. Like an {@link HashMultiMap}, it allows at most one
+ * instance for each (key, value). Its content is stored in an immutable
+ * version, which is replaced by a new one at each change. Reading a
+ * {@link CopyOnWriteMultiMap} only reads the current version once, then
+ * accesses immutable data without any lock, and the iterators go through the
+ * version they started with.
+ * </p>
+ *
+ * <p>
+ * A version is a persistent hash trie: the keys are dispatched in nodes of 32
+ * branches depending on their hash code, and the values of a key are stored in
+ * an array. A change creates only the nodes on the path of the key and shares
+ * the others with the previous version, so it costs O(log n) instead of a copy
+ * of the whole {@link MultiMap}. Checking or changing the values of a key
+ * costs O(m) for m values. Writers are serialised, so several changes should
+ * be applied in a single call of {@link #mutate(Consumer)}, which modifies the
+ * new nodes in place and publishes them all at once.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class CopyOnWriteMultiMap<Key, Value> extends MultiMapView<Key, Value> {
+
+	private volatile Version version = Version.EMPTY;
+	private final Object writeLock = new Object();
+
+	public CopyOnWriteMultiMap() {
+	}
+
+	public CopyOnWriteMultiMap(MultiMap<Key, Value> map) {
+		mutate(batch -> {
+			for (Entry<Key, Collection<Value>> entry : map.entrySet()) {
+				batch.addAll(entry.getKey(), entry.getValue());
+			}
+		});
+	}
+
+	/**
+	 * @return the {@link Version} to read, only once per operation
+	 */
+	Version version() {
+		return version;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return version().find(key) != null;
+	}
+
+	@Override
+	public boolean containsCouple(Key key, Value value) {
+		Object[] values = version().find(key);
+		if (values == null) {
+			return false;
+		} else {
+			for (Object candidate : values) {
+				if (Objects.equals(candidate, value)) {
+					return true;
+				} else {
+					// continue searching
+				}
+			}
+			return false;
+		}
+	}
+
+	@Override
+	public int size() {
+		return version().size;
+	}
+
+	@Override
+	public Collection<Value> getAll(Object key) {
+		if (version().find(key) == null) {
+			return null;
+		} else {
+			@SuppressWarnings("unchecked")
+			Key castedKey = (Key) key;
+			return new AbstractCollection<Value>() {
+
+				private Object[] values() {
+					Object[] values = version().find(key);
+					return values == null ? new Object[0] : values;
+				}
+
+				@Override
+				public Iterator<Value> iterator() {
+					Object[] values = values();
+					return new Iterator<Value>() {
+
+						private int next = 0;
+
+						@Override
+						public boolean hasNext() {
+							return next < values.length;
+						}
+
+						@SuppressWarnings("unchecked")
+						@Override
+						public Value next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							} else {
+								return (Value) values[next++];
+							}
+						}
+
+						@SuppressWarnings("unchecked")
+						@Override
+						public void remove() {
+							CopyOnWriteMultiMap.this.remove(castedKey,
+									(Value) values[next - 1]);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return values().length;
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public boolean contains(Object value) {
+					return containsCouple(castedKey, (Value) value);
+				}
+
+				@Override
+				public boolean add(Value value) {
+					return CopyOnWriteMultiMap.this.add(castedKey, value);
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public boolean remove(Object value) {
+					return CopyOnWriteMultiMap.this.remove(castedKey,
+							(Value) value);
+				}
+
+				@Override
+				public void clear() {
+					CopyOnWriteMultiMap.this.remove(castedKey);
+				}
+			};
+		}
+	}
+
+	@Override
+	public Set<Key> keySet() {
+		return new AbstractSet<Key>() {
+
+			@Override
+			public Iterator<Key> iterator() {
+				PairIterator pairs = new PairIterator(version());
+				return new Iterator<Key>() {
+
+					private Object last;
+
+					@Override
+					public boolean hasNext() {
+						return pairs.hasNext();
+					}
+
+					@SuppressWarnings("unchecked")
+					@Override
+					public Key next() {
+						pairs.next();
+						last = pairs.key;
+						return (Key) last;
+					}
+
+					@Override
+					public void remove() {
+						CopyOnWriteMultiMap.this.remove(last);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return CopyOnWriteMultiMap.this.size();
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+
+			@Override
+			public boolean remove(Object key) {
+				return CopyOnWriteMultiMap.this.remove(key) != null;
+			}
+		};
+	}
+
+	/**
+	 * Iterate over the couples of a single {@link Version}, so the iteration
+	 * is not impacted by concurrent changes.
+	 */
+	@Override
+	public Iterator<Entry<Key, Value>> iterator() {
+		PairIterator pairs = new PairIterator(version());
+		return new Iterator<Entry<Key, Value>>() {
+
+			private Object key;
+			private Object[] values = new Object[0];
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < values.length || pairs.hasNext();
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public Entry<Key, Value> next() {
+				if (next == values.length) {
+					pairs.next();
+					key = pairs.key;
+					values = pairs.values;
+					next = 0;
+				} else {
+					// continue on the current key
+				}
+				return new AbstractMap.SimpleImmutableEntry<Key, Value>(
+						(Key) key, (Value) values[next++]);
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public void remove() {
+				CopyOnWriteMultiMap.this.remove((Key) key,
+						(Value) values[next - 1]);
+			}
+		};
+	}
+
+	/**
+	 * Apply several changes and publish them at once: readers see either none
+	 * or all of them. The {@link MultiMap} provided to the {@link Consumer}
+	 * is a draft of the next version, which must not be used once the
+	 * {@link Consumer} returns.
+	 *
+	 * @param changes
+	 *            the changes to apply on the draft
+	 */
+	public void mutate(Consumer<MultiMap<Key, Value>> changes) {
+		synchronized (writeLock) {
+			Draft<Key, Value> draft = new Draft<Key, Value>(version);
+			try {
+				changes.accept(draft);
+				version = draft.version;
+			} finally {
+				draft.edit = null;
+			}
+		}
+	}
+
+	private <Result> Result write(
+			Function<MultiMap<Key, Value>, Result> change) {
+		synchronized (writeLock) {
+			Draft<Key, Value> draft = new Draft<Key, Value>(version);
+			Result result = change.apply(draft);
+			version = draft.version;
+			return result;
+		}
+	}
+
+	@Override
+	public boolean add(Key key, Value value) {
+		return write(draft -> draft.add(key, value));
+	}
+
+	@Override
+	public boolean addAll(Key key, Collection<Value> values) {
+		return write(draft -> draft.addAll(key, values));
+	}
+
+	@Override
+	public boolean remove(Key key, Value value) {
+		return write(draft -> draft.remove(key, value));
+	}
+
+	@Override
+	public boolean removeAll(Key key, Collection<Value> values) {
+		return write(draft -> draft.removeAll(key, values));
+	}
+
+	@Override
+	public Collection<Value> remove(Object key) {
+		return write(draft -> draft.remove(key));
+	}
+
+	@Override
+	public void clear() {
+		synchronized (writeLock) {
+			version = Version.EMPTY;
+		}
+	}
+
+	/**
+	 * A {@link Draft} builds a new {@link Version}. The nodes it creates are
+	 * tagged with its edit token, so they can be modified in place until the
+	 * {@link Draft} is closed.
+	 */
+	private static class Draft<Key, Value> extends
+			CopyOnWriteMultiMap<Key, Value> {
+
+		private Version version;
+		private Object edit = new Object();
+
+		public Draft(Version version) {
+			this.version = version;
+		}
+
+		@Override
+		Version version() {
+			checkOpen();
+			return version;
+		}
+
+		private void checkOpen() {
+			if (edit == null) {
+				throw new IllegalStateException("The draft has been published");
+			} else {
+				// still in use
+			}
+		}
+
+		private void put(Object key, Object[] values) {
+			int hash = hash(key);
+			boolean[] isAdded = { false };
+			Node root = version.root == null ? new Node(edit, 0, new Object[0])
+					: version.root;
+			root = root.put(edit, hash, 0, maskNull(key), values, isAdded);
+			version = new Version(root, version.size + (isAdded[0] ? 1 : 0));
+		}
+
+		private void delete(Object key) {
+			Node root = version.root.remove(edit, hash(key), 0, maskNull(key));
+			version = root == null ? Version.EMPTY : new Version(root,
+					version.size - 1);
+		}
+
+		@Override
+		public boolean add(Key key, Value value) {
+			Object[] values = version().find(key);
+			if (values == null) {
+				put(key, new Object[] { value });
+				return true;
+			} else if (indexOf(values, value) >= 0) {
+				return false;
+			} else {
+				Object[] newValues = Arrays.copyOf(values, values.length + 1);
+				newValues[values.length] = value;
+				put(key, newValues);
+				return true;
+			}
+		}
+
+		@Override
+		public boolean remove(Key key, Value value) {
+			Object[] values = version().find(key);
+			int index = values == null ? -1 : indexOf(values, value);
+			if (index < 0) {
+				return false;
+			} else if (values.length == 1) {
+				delete(key);
+				return true;
+			} else {
+				Object[] newValues = new Object[values.length - 1];
+				System.arraycopy(values, 0, newValues, 0, index);
+				System.arraycopy(values, index + 1, newValues, index,
+						newValues.length - index);
+				put(key, newValues);
+				return true;
+			}
+		}
+
+		@Override
+		public Collection<Value> remove(Object key) {
+			Object[] values = version().find(key);
+			if (values == null) {
+				return null;
+			} else {
+				delete(key);
+				return new ArrayList<Value>(Arrays.asList(CopyOnWriteMultiMap
+						.<Value> cast(values)));
+			}
+		}
+
+		@Override
+		public boolean addAll(Key key, Collection<Value> values) {
+			boolean isChanged = false;
+			for (Value value : values) {
+				isChanged |= add(key, value);
+			}
+			return isChanged;
+		}
+
+		@Override
+		public boolean removeAll(Key key, Collection<Value> values) {
+			boolean isChanged = false;
+			for (Value value : values) {
+				isChanged |= remove(key, value);
+			}
+			return isChanged;
+		}
+
+		@Override
+		public void clear() {
+			checkOpen();
+			version = Version.EMPTY;
+		}
+
+		@Override
+		public void mutate(Consumer<MultiMap<Key, Value>> changes) {
+			changes.accept(this);
+		}
+	}
+
+	private static int indexOf(Object[] values, Object value) {
+		for (int i = 0; i < values.length; i++) {
+			if (Objects.equals(values[i], value)) {
+				return i;
+			} else {
+				// continue searching
+			}
+		}
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T[] cast(Object[] array) {
+		return (T[]) array;
+	}
+
+	private static final Object NULL_KEY = new Object();
+
+	private static Object maskNull(Object key) {
+		return key == null ? NULL_KEY : key;
+	}
+
+	private static Object unmaskNull(Object key) {
+		return key == NULL_KEY ? null : key;
+	}
+
+	private static int hash(Object key) {
+		int hash = Objects.hashCode(key);
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * An immutable state of the {@link MultiMap}, once published.
+	 */
+	private static final class Version {
+		static final Version EMPTY = new Version(null, 0);
+
+		final Node root;
+		final int size;
+
+		Version(Node root, int size) {
+			this.root = root;
+			this.size = size;
+		}
+
+		Object[] find(Object key) {
+			return root == null ? null : root.find(hash(key), 0,
+					maskNull(key));
+		}
+	}
+
+	/**
+	 * A {@link Node} stores pairs in an array: either a key followed by its
+	 * values, or <code>null</code> followed by a child {@link Node}. Nodes
+	 * where all the bits of the hash codes have been consumed store colliding
+	 * keys in a plain list of pairs.
+	 */
+	private static final class Node {
+		private static final int BITS = 5;
+		private static final int MAX_SHIFT = 30;
+
+		private final Object edit;
+		private int bitmap;
+		private Object[] array;
+
+		Node(Object edit, int bitmap, Object[] array) {
+			this.edit = edit;
+			this.bitmap = bitmap;
+			this.array = array;
+		}
+
+		private static boolean isCollision(int shift) {
+			return shift > MAX_SHIFT;
+		}
+
+		private static int bit(int hash, int shift) {
+			return 1 << ((hash >>> shift) & 31);
+		}
+
+		private int pairIndex(int bit) {
+			return 2 * Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		private int collisionIndex(Object key) {
+			for (int i = 0; i < array.length; i += 2) {
+				if (array[i].equals(key)) {
+					return i;
+				} else {
+					// continue searching
+				}
+			}
+			return -1;
+		}
+
+		Object[] find(int hash, int shift, Object key) {
+			if (isCollision(shift)) {
+				int index = collisionIndex(key);
+				return index < 0 ? null : (Object[]) array[index + 1];
+			} else {
+				int bit = bit(hash, shift);
+				if ((bitmap & bit) == 0) {
+					return null;
+				} else {
+					int index = pairIndex(bit);
+					Object stored = array[index];
+					if (stored == null) {
+						return ((Node) array[index + 1]).find(hash, shift
+								+ BITS, key);
+					} else if (stored.equals(key)) {
+						return (Object[]) array[index + 1];
+					} else {
+						return null;
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return a copy of this {@link Node} if it does not belong to the
+		 *         given edit, otherwise this {@link Node} itself
+		 */
+		private Node editable(Object edit) {
+			if (edit != null && this.edit == edit) {
+				return this;
+			} else {
+				return new Node(edit, bitmap, array.clone());
+			}
+		}
+
+		private Node set(Object edit, int index, Object object) {
+			Node node = editable(edit);
+			node.array[index] = object;
+			return node;
+		}
+
+		private Node insert(Object edit, int bit, int index, Object key,
+				Object object) {
+			Object[] newArray = new Object[array.length + 2];
+			System.arraycopy(array, 0, newArray, 0, index);
+			newArray[index] = key;
+			newArray[index + 1] = object;
+			System.arraycopy(array, index, newArray, index + 2, array.length
+					- index);
+			Node node = edit != null && this.edit == edit ? this : new Node(
+					edit, bitmap, null);
+			node.bitmap = bitmap | bit;
+			node.array = newArray;
+			return node;
+		}
+
+		private Node delete(Object edit, int bit, int index) {
+			if (array.length == 2) {
+				return null;
+			} else {
+				Object[] newArray = new Object[array.length - 2];
+				System.arraycopy(array, 0, newArray, 0, index);
+				System.arraycopy(array, index + 2, newArray, index,
+						newArray.length - index);
+				Node node = edit != null && this.edit == edit ? this
+						: new Node(edit, bitmap, null);
+				node.bitmap = bitmap & ~bit;
+				node.array = newArray;
+				return node;
+			}
+		}
+
+		Node put(Object edit, int hash, int shift, Object key, Object[] values,
+				boolean[] isAdded) {
+			if (isCollision(shift)) {
+				int index = collisionIndex(key);
+				if (index < 0) {
+					isAdded[0] = true;
+					return insert(edit, 0, array.length, key, values);
+				} else {
+					return set(edit, index + 1, values);
+				}
+			} else {
+				int bit = bit(hash, shift);
+				int index = pairIndex(bit);
+				if ((bitmap & bit) == 0) {
+					isAdded[0] = true;
+					return insert(edit, bit, index, key, values);
+				} else {
+					Object stored = array[index];
+					if (stored == null) {
+						Node child = (Node) array[index + 1];
+						Node newChild = child.put(edit, hash, shift + BITS,
+								key, values, isAdded);
+						return newChild == child ? this : set(edit,
+								index + 1, newChild);
+					} else if (stored.equals(key)) {
+						return set(edit, index + 1, values);
+					} else {
+						isAdded[0] = true;
+						Node child = new Node(edit, 0, new Object[0]);
+						child = child.put(edit, hash(unmaskNull(stored)),
+								shift + BITS, stored,
+								(Object[]) array[index + 1], new boolean[1]);
+						child = child.put(edit, hash, shift + BITS, key,
+								values, new boolean[1]);
+						Node node = set(edit, index, null);
+						node.array[index + 1] = child;
+						return node;
+					}
+				}
+			}
+		}
+
+		Node remove(Object edit, int hash, int shift, Object key) {
+			if (isCollision(shift)) {
+				int index = collisionIndex(key);
+				return index < 0 ? this : delete(edit, 0, index);
+			} else {
+				int bit = bit(hash, shift);
+				if ((bitmap & bit) == 0) {
+					return this;
+				} else {
+					int index = pairIndex(bit);
+					Object stored = array[index];
+					if (stored == null) {
+						Node child = (Node) array[index + 1];
+						Node newChild = child.remove(edit, hash, shift + BITS,
+								key);
+						if (newChild == child) {
+							return this;
+						} else if (newChild == null) {
+							return delete(edit, bit, index);
+						} else {
+							return set(edit, index + 1, newChild);
+						}
+					} else if (stored.equals(key)) {
+						return delete(edit, bit, index);
+					} else {
+						return this;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Iterate over the keys of a {@link Version} and their values.
+	 */
+	private static class PairIterator {
+		private final Deque<Object[]> arrays = new ArrayDeque<Object[]>();
+		private final Deque<Integer> indexes = new ArrayDeque<Integer>();
+		private Object key;
+		private Object[] values;
+		private boolean isReady = false;
+
+		PairIterator(Version version) {
+			if (version.root != null) {
+				arrays.push(version.root.array);
+				indexes.push(0);
+			} else {
+				// nothing to iterate
+			}
+		}
+
+		boolean hasNext() {
+			if (isReady) {
+				return true;
+			} else {
+				// search the next pair
+			}
+			while (!arrays.isEmpty()) {
+				Object[] array = arrays.peek();
+				int index = indexes.pop();
+				if (index >= array.length) {
+					arrays.pop();
+				} else {
+					indexes.push(index + 2);
+					if (array[index] == null) {
+						arrays.push(((Node) array[index + 1]).array);
+						indexes.push(0);
+					} else {
+						key = unmaskNull(array[index]);
+						values = (Object[]) array[index + 1];
+						isReady = true;
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Move to the next pair, {@link #key} and {@link #values} being updated
+		 * to describe it.
+		 */
+		void next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			} else {
+				isReady = false;
+			}
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package fr.vergne.collection.impl;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Map.Entry;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.util.Equivalence;
+
+/**
+ * <p>
+ * A {@link CountedMultiMap} is a {@link MultiMap} which allows to have several
+ * instances for each (key, value), like a {@link ListMultiMap}, but stores
+ * each distinct value of a key only once, with its number of instances.
+ * Consequently, adding or removing an instance costs O(1), whatever the number
+ * of instances already stored, and {@link #count(Object, Object)} provides the
+ * number of instances of a couple in O(1).
+ * </p>
+ *
+ * <p>
+ * The iterations provide each couple as many times as it has been added, the
+ * instances of a given value being provided consecutively, in the order in
+ * which the values were first added. {@link #getCounts(Object)} provides a
+ * compact view where each distinct value of a key is given with its number of
+ * instances.
+ * </p>
+ *
+ * <p>
+ * The {@link Collection}s returned by {@link #getAll(Object)} are
+ * {@link List}s following this iteration order, so they are equal to any
+ * {@link List} providing the same instances in the same order. Their
+ * positional accesses cost O(d), d being the number of distinct values of the
+ * key, and only the positional removals are supported, because inserting an
+ * instance at a given position would break the grouping of the instances.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class CountedMultiMap<Key, Value> extends AbstractMultiMap<Key, Value>
+		implements MultiMap<Key, Value> {
+
+	public CountedMultiMap(MultiMap<Key, Value> map) {
+		for (Entry<Key, Collection<Value>> entry : map.entrySet()) {
+			addAll(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public CountedMultiMap() {
+	}
+
+	/**
+	 *
+	 * @param keyEquivalence
+	 *            the {@link Equivalence} telling which keys are the same
+	 */
+	public CountedMultiMap(Equivalence<? super Key> keyEquivalence) {
+		super(keyEquivalence);
+	}
+
+	/**
+	 * The counting of the instances relies on this {@link Collection}, so it
+	 * cannot be changed.
+	 */
+	@Override
+	protected final Collection<Value> generateInnerCollection(Key key) {
+		return new Counts<Value>();
+	}
+
+	/**
+	 *
+	 * @param key
+	 *            the key of the couple
+	 * @param value
+	 *            the value of the couple
+	 * @return the number of instances of the couple
+	 */
+	public int count(Key key, Value value) {
+		Collection<Value> collection = getInnerCollection(key);
+		if (collection == null) {
+			return containsCouple(key, value) ? 1 : 0;
+		} else {
+			int[] count = ((Counts<Value>) collection).counts.get(value);
+			return count == null ? 0 : count[0];
+		}
+	}
+
+	/**
+	 *
+	 * @param key
+	 *            the key to search for
+	 * @return a read-only view of the distinct values of the key with their
+	 *         number of instances, <code>null</code> if the key has no value
+	 */
+	public Map<Value, Integer> getCounts(Key key) {
+		Collection<Value> collection = getInnerCollection(key);
+		if (collection != null) {
+			Map<Value, int[]> counts = ((Counts<Value>) collection).counts;
+			return new AbstractMap<Value, Integer>() {
+
+				@Override
+				public Set<Entry<Value, Integer>> entrySet() {
+					return new AbstractSet<Entry<Value, Integer>>() {
+
+						@Override
+						public Iterator<Entry<Value, Integer>> iterator() {
+							Iterator<Entry<Value, int[]>> iterator = counts
+									.entrySet().iterator();
+							return new Iterator<Entry<Value, Integer>>() {
+
+								@Override
+								public boolean hasNext() {
+									return iterator.hasNext();
+								}
+
+								@Override
+								public Entry<Value, Integer> next() {
+									Entry<Value, int[]> entry = iterator
+											.next();
+									return new AbstractMap.SimpleImmutableEntry<Value, Integer>(
+											entry.getKey(),
+											entry.getValue()[0]);
+								}
+							};
+						}
+
+						@Override
+						public int size() {
+							return counts.size();
+						}
+					};
+				}
+
+				@Override
+				public Integer get(Object value) {
+					int[] count = counts.get(value);
+					return count == null ? null : count[0];
+				}
+
+				@Override
+				public boolean containsKey(Object value) {
+					return counts.containsKey(value);
+				}
+			};
+		} else {
+			Collection<Value> values = getAll(key);
+			return values == null ? null : Collections.singletonMap(values
+					.iterator().next(), 1);
+		}
+	}
+
+	/**
+	 * The values of a key, each distinct value being stored once with its
+	 * number of instances. It is a {@link List} of the instances in iteration
+	 * order, so it can be compared to other {@link List}s.
+	 */
+	private static class Counts<Value> extends AbstractList<Value> {
+
+		private final Map<Value, int[]> counts = new LinkedHashMap<Value, int[]>();
+		private int size = 0;
+
+		@Override
+		public boolean add(Value value) {
+			counts.computeIfAbsent(value, v -> new int[1])[0]++;
+			size++;
+			return true;
+		}
+
+		@Override
+		public boolean remove(Object value) {
+			int[] count = counts.get(value);
+			if (count == null) {
+				return false;
+			} else {
+				if (--count[0] == 0) {
+					counts.remove(value);
+				} else {
+					// other instances remain
+				}
+				size--;
+				return true;
+			}
+		}
+
+		@Override
+		public Value get(int index) {
+			return entryAt(index).getKey();
+		}
+
+		@Override
+		public Value remove(int index) {
+			Value value = entryAt(index).getKey();
+			remove(value);
+			return value;
+		}
+
+		private Entry<Value, int[]> entryAt(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index
+						+ ", Size: " + size);
+			} else {
+				int remaining = index;
+				for (Entry<Value, int[]> entry : counts.entrySet()) {
+					if (remaining < entry.getValue()[0]) {
+						return entry;
+					} else {
+						remaining -= entry.getValue()[0];
+					}
+				}
+				throw new IllegalStateException("Size " + size
+						+ " does not match the counts " + counts);
+			}
+		}
+
+		@Override
+		public boolean contains(Object value) {
+			return counts.containsKey(value);
+		}
+
+		/**
+		 * Same as {@link AbstractList#equals(Object)}, but based on
+		 * {@link #iterator()} rather than the positional accesses.
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			} else if (!(obj instanceof List)) {
+				return false;
+			} else {
+				List<?> other = (List<?>) obj;
+				if (other.size() != size) {
+					return false;
+				} else {
+					Iterator<?> iterator = other.iterator();
+					for (Value value : this) {
+						if (!iterator.hasNext()
+								|| !Objects.equals(value, iterator.next())) {
+							return false;
+						} else {
+							// continue comparing
+						}
+					}
+					return !iterator.hasNext();
+				}
+			}
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			counts.clear();
+			size = 0;
+		}
+
+		@Override
+		public Iterator<Value> iterator() {
+			Iterator<Entry<Value, int[]>> iterator = counts.entrySet()
+					.iterator();
+			return new Iterator<Value>() {
+
+				private Entry<Value, int[]> entry;
+				private int remaining = 0;
+				private boolean isRemovable = false;
+
+				@Override
+				public boolean hasNext() {
+					return remaining > 0 || iterator.hasNext();
+				}
+
+				@Override
+				public Value next() {
+					if (remaining > 0) {
+						// continue on the current value
+					} else if (iterator.hasNext()) {
+						entry = iterator.next();
+						remaining = entry.getValue()[0];
+					} else {
+						throw new NoSuchElementException();
+					}
+					remaining--;
+					isRemovable = true;
+					return entry.getKey();
+				}
+
+				@Override
+				public void remove() {
+					if (!isRemovable) {
+						throw new IllegalStateException();
+					} else {
+						isRemovable = false;
+						size--;
+						if (--entry.getValue()[0] == 0) {
+							iterator.remove();
+						} else {
+							// other instances remain
+						}
+					}
+				}
+			};
+		}
+	}
+}
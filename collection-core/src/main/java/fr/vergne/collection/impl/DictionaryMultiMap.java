@@ -0,0 +1,547 @@
+package fr.vergne.collection.impl;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.Map.Entry;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.util.Equivalence;
+
+/**
+ * <p>
+ * A {@link DictionaryMultiMap} is a {@link MultiMap} which, like a
+ * {@link ListMultiMap}, allows several instances for each (key, value) and
+ * keeps the values of each key in their order of insertion. However, the
+ * values are not stored directly: each distinct value is interned once in a
+ * {@link Dictionary}, which gives it an <code>int</code> identifier, and only
+ * the identifiers are stored for each key. Consequently, when the same values
+ * are repeated over many keys, the memory scales with the number of distinct
+ * values rather than the number of couples, each couple costing 4 bytes.
+ * </p>
+ *
+ * <p>
+ * The {@link Collection}s returned by {@link #getAll(Object)} are live
+ * {@link List}s decoding the identifiers on the fly. Searching a value
+ * translates it once into its identifier, then compares only
+ * <code>int</code>s. A {@link Dictionary} can be shared by several
+ * {@link DictionaryMultiMap}s, which then intern their values together. The
+ * identifiers which are not used anymore are recycled.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class DictionaryMultiMap<Key, Value> extends MultiMapView<Key, Value> {
+
+	private final Dictionary<Value> dictionary;
+	private final OpenHashMap<Key, Ids> innerMap = new OpenHashMap<Key, Ids>(
+			Equivalence.natural());
+	private long couples = 0;
+
+	/**
+	 *
+	 * @param dictionary
+	 *            the {@link Dictionary} interning the values, possibly shared
+	 *            with other {@link DictionaryMultiMap}s
+	 */
+	public DictionaryMultiMap(Dictionary<Value> dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	public DictionaryMultiMap() {
+		this(new Dictionary<Value>());
+	}
+
+	public DictionaryMultiMap(MultiMap<Key, Value> map) {
+		this();
+		for (Entry<Key, Collection<Value>> entry : map.entrySet()) {
+			addAll(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public Dictionary<Value> getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 *
+	 * @return the number of (key, value) couples of this
+	 *         {@link DictionaryMultiMap}
+	 */
+	public long couplesCount() {
+		return couples;
+	}
+
+	/**
+	 * Shrink the arrays of identifiers to the number of values of their key.
+	 */
+	public void trimToSize() {
+		for (Ids ids : innerMap.values()) {
+			ids.trim();
+		}
+	}
+
+	@Override
+	public boolean add(Key key, Value value) {
+		Ids ids = innerMap.get(key);
+		if (ids == null) {
+			ids = new Ids();
+			innerMap.put(key, ids);
+		} else {
+			// add to the existing ones
+		}
+		ids.add(ids.size, dictionary.intern(value));
+		couples++;
+		return true;
+	}
+
+	@Override
+	public boolean remove(Key key, Value value) {
+		Ids ids = innerMap.get(key);
+		int id = dictionary.idOf(value);
+		if (ids == null || id < 0) {
+			return false;
+		} else {
+			int index = ids.indexOf(id);
+			if (index < 0) {
+				return false;
+			} else {
+				removeAt(key, ids, index);
+				return true;
+			}
+		}
+	}
+
+	private void removeAt(Object key, Ids ids, int index) {
+		dictionary.release(ids.removeAt(index));
+		couples--;
+		if (ids.size == 0) {
+			innerMap.remove(key);
+		} else {
+			// key still used
+		}
+	}
+
+	@Override
+	public Collection<Value> remove(Object key) {
+		Ids ids = innerMap.remove(key);
+		if (ids == null) {
+			return null;
+		} else {
+			List<Value> values = new ArrayList<Value>(ids.size);
+			for (int i = 0; i < ids.size; i++) {
+				values.add(dictionary.decode(ids.array[i]));
+			}
+			release(ids);
+			return values;
+		}
+	}
+
+	private void release(Ids ids) {
+		for (int i = 0; i < ids.size; i++) {
+			dictionary.release(ids.array[i]);
+		}
+		couples -= ids.size;
+	}
+
+	@Override
+	public void clear() {
+		for (Ids ids : innerMap.values()) {
+			release(ids);
+		}
+		innerMap.clear();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return innerMap.containsKey(key);
+	}
+
+	@Override
+	public boolean containsCouple(Key key, Value value) {
+		Ids ids = innerMap.get(key);
+		int id = dictionary.idOf(value);
+		return ids != null && id >= 0 && ids.indexOf(id) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return innerMap.size();
+	}
+
+	@Override
+	public Iterator<Entry<Key, Value>> iterator() {
+		Iterator<Entry<Key, Ids>> entries = innerMap.entrySet().iterator();
+		return new Iterator<Entry<Key, Value>>() {
+
+			private Key key;
+			private Ids ids = Ids.EMPTY;
+			private int index = 0;
+			private boolean isRemovable = false;
+
+			@Override
+			public boolean hasNext() {
+				return index < ids.size || entries.hasNext();
+			}
+
+			@Override
+			public Entry<Key, Value> next() {
+				if (index < ids.size) {
+					// continue on the current key
+				} else {
+					Entry<Key, Ids> entry = entries.next();
+					key = entry.getKey();
+					ids = entry.getValue();
+					index = 0;
+				}
+				isRemovable = true;
+				return new AbstractMap.SimpleImmutableEntry<Key, Value>(key,
+						dictionary.decode(ids.array[index++]));
+			}
+
+			@Override
+			public void remove() {
+				if (!isRemovable) {
+					throw new IllegalStateException();
+				} else {
+					dictionary.release(ids.removeAt(--index));
+					couples--;
+					if (ids.size == 0) {
+						entries.remove();
+					} else {
+						// key still used
+					}
+					isRemovable = false;
+				}
+			}
+		};
+	}
+
+	@Override
+	public Collection<Value> getAll(Object key) {
+		if (innerMap.containsKey(key)) {
+			@SuppressWarnings("unchecked")
+			Key castedKey = (Key) key;
+			return new KeyValues(castedKey);
+		} else {
+			return null;
+		}
+	}
+
+	@Override
+	public Set<Key> keySet() {
+		Set<Key> keys = innerMap.keySet();
+		return new AbstractSet<Key>() {
+
+			@Override
+			public Iterator<Key> iterator() {
+				Iterator<Entry<Key, Ids>> iterator = innerMap.entrySet()
+						.iterator();
+				return new Iterator<Key>() {
+
+					private Ids last;
+
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public Key next() {
+						Entry<Key, Ids> entry = iterator.next();
+						last = entry.getValue();
+						return entry.getKey();
+					}
+
+					@Override
+					public void remove() {
+						iterator.remove();
+						release(last);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return keys.size();
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+
+			@Override
+			public boolean remove(Object key) {
+				return DictionaryMultiMap.this.remove(key) != null;
+			}
+		};
+	}
+
+	/**
+	 * The live {@link List} of the values of a key, which searches the
+	 * identifiers of the key each time, so it remains valid when the key is
+	 * removed and added again.
+	 */
+	private class KeyValues extends AbstractList<Value> implements
+			RandomAccess {
+
+		private final Key key;
+
+		public KeyValues(Key key) {
+			this.key = key;
+		}
+
+		private Ids ids() {
+			Ids ids = innerMap.get(key);
+			return ids == null ? Ids.EMPTY : ids;
+		}
+
+		@Override
+		public Value get(int index) {
+			Ids ids = ids();
+			if (index < 0 || index >= ids.size) {
+				throw new IndexOutOfBoundsException("Index: " + index
+						+ ", Size: " + ids.size);
+			} else {
+				return dictionary.decode(ids.array[index]);
+			}
+		}
+
+		@Override
+		public int size() {
+			return ids().size;
+		}
+
+		@Override
+		public Value set(int index, Value value) {
+			Ids ids = ids();
+			if (index < 0 || index >= ids.size) {
+				throw new IndexOutOfBoundsException("Index: " + index
+						+ ", Size: " + ids.size);
+			} else {
+				int previous = ids.array[index];
+				ids.array[index] = dictionary.intern(value);
+				Value decoded = dictionary.decode(previous);
+				dictionary.release(previous);
+				return decoded;
+			}
+		}
+
+		@Override
+		public void add(int index, Value value) {
+			Ids ids = innerMap.get(key);
+			if (ids == null) {
+				if (index != 0) {
+					throw new IndexOutOfBoundsException("Index: " + index
+							+ ", Size: 0");
+				} else {
+					DictionaryMultiMap.this.add(key, value);
+				}
+			} else if (index < 0 || index > ids.size) {
+				throw new IndexOutOfBoundsException("Index: " + index
+						+ ", Size: " + ids.size);
+			} else {
+				ids.add(index, dictionary.intern(value));
+				couples++;
+			}
+			modCount++;
+		}
+
+		@Override
+		public Value remove(int index) {
+			Ids ids = ids();
+			if (index < 0 || index >= ids.size) {
+				throw new IndexOutOfBoundsException("Index: " + index
+						+ ", Size: " + ids.size);
+			} else {
+				Value value = dictionary.decode(ids.array[index]);
+				removeAt(key, ids, index);
+				modCount++;
+				return value;
+			}
+		}
+
+		@Override
+		public int indexOf(Object value) {
+			int id = dictionary.idOf(value);
+			return id < 0 ? -1 : ids().indexOf(id);
+		}
+
+		@Override
+		public boolean contains(Object value) {
+			return indexOf(value) >= 0;
+		}
+
+		@Override
+		public void clear() {
+			DictionaryMultiMap.this.remove(key);
+			modCount++;
+		}
+	}
+
+	/**
+	 * The identifiers of the values of a key.
+	 */
+	private static class Ids {
+
+		private static final Ids EMPTY = new Ids();
+
+		private int[] array = new int[2];
+		private int size = 0;
+
+		void add(int index, int id) {
+			if (size == array.length) {
+				array = Arrays.copyOf(array, 2 * size);
+			} else {
+				// enough space
+			}
+			System.arraycopy(array, index, array, index + 1, size - index);
+			array[index] = id;
+			size++;
+		}
+
+		int removeAt(int index) {
+			int id = array[index];
+			size--;
+			System.arraycopy(array, index + 1, array, index, size - index);
+			return id;
+		}
+
+		int indexOf(int id) {
+			for (int i = 0; i < size; i++) {
+				if (array[i] == id) {
+					return i;
+				} else {
+					// continue searching
+				}
+			}
+			return -1;
+		}
+
+		void trim() {
+			if (size < array.length) {
+				array = Arrays.copyOf(array, size);
+			} else {
+				// already trimmed
+			}
+		}
+	}
+
+	/**
+	 * A {@link Dictionary} gives an <code>int</code> identifier to each
+	 * distinct value, equal values sharing the same identifier. It counts the
+	 * references to each identifier, so the identifier of a value which is not
+	 * referenced anymore is forgotten and reused for another value. Like the
+	 * {@link DictionaryMultiMap}s using it, a {@link Dictionary} is not
+	 * thread-safe.
+	 *
+	 * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+	 *
+	 * @param <Value>
+	 */
+	public static class Dictionary<Value> {
+
+		private final Map<Value, Integer> ids = new HashMap<Value, Integer>();
+		private final List<Value> values = new ArrayList<Value>();
+		private int[] references = new int[16];
+		private int[] freeIds = new int[16];
+		private int freeCount = 0;
+
+		/**
+		 * Add a reference to a value, giving it an identifier if it does not
+		 * have one yet.
+		 *
+		 * @param value
+		 *            the value to intern
+		 * @return the identifier of the value
+		 */
+		public int intern(Value value) {
+			Integer id = ids.get(value);
+			if (id == null) {
+				if (freeCount > 0) {
+					id = freeIds[--freeCount];
+					values.set(id, value);
+				} else {
+					id = values.size();
+					values.add(value);
+					if (id == references.length) {
+						references = Arrays.copyOf(references, 2 * id);
+					} else {
+						// enough space
+					}
+				}
+				ids.put(value, id);
+			} else {
+				// already interned
+			}
+			references[id]++;
+			return id;
+		}
+
+		/**
+		 * Remove a reference to an identifier, which is forgotten if it is
+		 * not referenced anymore.
+		 *
+		 * @param id
+		 *            the identifier to release
+		 */
+		public void release(int id) {
+			if (--references[id] == 0) {
+				ids.remove(values.get(id));
+				values.set(id, null);
+				if (freeCount == freeIds.length) {
+					freeIds = Arrays.copyOf(freeIds, 2 * freeCount);
+				} else {
+					// enough space
+				}
+				freeIds[freeCount++] = id;
+			} else {
+				// still referenced
+			}
+		}
+
+		/**
+		 *
+		 * @param value
+		 *            the value to search for
+		 * @return the identifier of the value, or a negative number if it is
+		 *         not interned
+		 */
+		public int idOf(Object value) {
+			Integer id = ids.get(value);
+			return id == null ? -1 : id;
+		}
+
+		/**
+		 *
+		 * @param id
+		 *            an identifier provided by {@link #intern(Object)}
+		 * @return the value of the identifier
+		 */
+		public Value decode(int id) {
+			return values.get(id);
+		}
+
+		/**
+		 *
+		 * @return the number of distinct values currently interned
+		 */
+		public int size() {
+			return ids.size();
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package fr.vergne.collection.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.Map.Entry;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.NavigableMultiMap;
+import fr.vergne.collection.util.Equivalence;
+
+/**
+ * A {@link ForwardingMultiMap} is a skeleton for the decorators which answer
+ * the queries through a decorated {@link MultiMap} while maintaining their own
+ * data about its couples. Its views are live views over the ones of the
+ * decorated {@link MultiMap}: the additions made through them go through
+ * {@link #add(Object, Object)}, and the removals made through their iterators
+ * are notified to {@link #onRemoved(Object, Object)} and
+ * {@link #onRemoved(Object, Collection)}, so the data of the decorator remains
+ * consistent.
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ */
+abstract class ForwardingMultiMap<Key, Value> extends MultiMapView<Key, Value> {
+
+	/**
+	 * Tell how a {@link MultiMap} identifies its keys, so a decorator can
+	 * store data about them consistently. The {@link MultiMap}s which do not
+	 * tell it, like the ones of other libraries, are assumed to rely on
+	 * {@link Object#hashCode()} and {@link Object#equals(Object)}.
+	 *
+	 * @param map
+	 *            the {@link MultiMap} to check
+	 * @return the {@link Equivalence} identifying the keys of the
+	 *         {@link MultiMap}, <code>null</code> if it compares them with a
+	 *         {@link Comparator}
+	 */
+	static <Key> Equivalence<? super Key> keyEquivalenceOf(
+			MultiMap<Key, ?> map) {
+		if (map instanceof AbstractMultiMap) {
+			return ((AbstractMultiMap<Key, ?>) map).getKeyEquivalence();
+		} else if (map instanceof FrozenMultiMap) {
+			return ((FrozenMultiMap<Key, ?>) map).getKeyEquivalence();
+		} else if (map instanceof ForwardingMultiMap) {
+			return keyEquivalenceOf(((ForwardingMultiMap<Key, ?>) map)
+					.delegate());
+		} else if (map instanceof NavigableMultiMap
+				&& ((NavigableMultiMap<Key, ?>) map).comparator() != null) {
+			return null;
+		} else {
+			return Equivalence.natural();
+		}
+	}
+
+	/**
+	 *
+	 * @param map
+	 *            the {@link MultiMap} to follow
+	 * @return a new empty {@link Map} identifying its keys like the
+	 *         {@link MultiMap}
+	 */
+	static <Key, Data> Map<Key, Data> newKeyMap(MultiMap<Key, ?> map) {
+		Equivalence<? super Key> equivalence = keyEquivalenceOf(map);
+		if (equivalence == Equivalence.natural()) {
+			return new HashMap<Key, Data>();
+		} else if (equivalence != null) {
+			return new OpenHashMap<Key, Data>(equivalence);
+		} else {
+			return new TreeMap<Key, Data>(comparatorOf(map));
+		}
+	}
+
+	private static <Key> Comparator<? super Key> comparatorOf(
+			MultiMap<Key, ?> map) {
+		if (map instanceof ForwardingMultiMap) {
+			return comparatorOf(((ForwardingMultiMap<Key, ?>) map).delegate());
+		} else {
+			return ((NavigableMultiMap<Key, ?>) map).comparator();
+		}
+	}
+
+	/**
+	 *
+	 * @return the decorated {@link MultiMap}
+	 */
+	protected abstract MultiMap<Key, Value> delegate();
+
+	/**
+	 * Called after a couple has been removed from the decorated
+	 * {@link MultiMap} through an iterator.
+	 *
+	 * @param key
+	 *            the key of the removed couple
+	 * @param value
+	 *            the value of the removed couple
+	 */
+	protected abstract void onRemoved(Key key, Value value);
+
+	/**
+	 * Called after a key has been removed from the decorated {@link MultiMap}
+	 * through an iterator. By default, {@link #onRemoved(Object, Object)} is
+	 * called for each of its values.
+	 *
+	 * @param key
+	 *            the removed key
+	 * @param values
+	 *            the values the key had
+	 */
+	protected void onRemoved(Key key, Collection<Value> values) {
+		for (Value value : values) {
+			onRemoved(key, value);
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return delegate().containsKey(key);
+	}
+
+	@Override
+	public boolean containsCouple(Key key, Value value) {
+		return delegate().containsCouple(key, value);
+	}
+
+	@Override
+	public int size() {
+		return delegate().size();
+	}
+
+	@Override
+	public Iterator<Entry<Key, Value>> iterator() {
+		Iterator<Entry<Key, Value>> iterator = delegate().iterator();
+		return new Iterator<Entry<Key, Value>>() {
+
+			private Entry<Key, Value> last;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Entry<Key, Value> next() {
+				last = iterator.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				iterator.remove();
+				onRemoved(last.getKey(), last.getValue());
+			}
+		};
+	}
+
+	@Override
+	public Collection<Value> getAll(Object key) {
+		Collection<Value> values = delegate().getAll(key);
+		if (values == null) {
+			return null;
+		} else {
+			@SuppressWarnings("unchecked")
+			Key castedKey = (Key) key;
+			return new AbstractCollection<Value>() {
+
+				@Override
+				public Iterator<Value> iterator() {
+					Iterator<Value> iterator = values.iterator();
+					return new Iterator<Value>() {
+
+						private Value last;
+
+						@Override
+						public boolean hasNext() {
+							return iterator.hasNext();
+						}
+
+						@Override
+						public Value next() {
+							last = iterator.next();
+							return last;
+						}
+
+						@Override
+						public void remove() {
+							iterator.remove();
+							onRemoved(castedKey, last);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return values.size();
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public boolean contains(Object value) {
+					return containsCouple(castedKey, (Value) value);
+				}
+
+				@Override
+				public boolean add(Value value) {
+					return ForwardingMultiMap.this.add(castedKey, value);
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public boolean remove(Object value) {
+					return ForwardingMultiMap.this.remove(castedKey,
+							(Value) value);
+				}
+
+				@Override
+				public void clear() {
+					ForwardingMultiMap.this.remove(castedKey);
+				}
+
+				@Override
+				public boolean equals(Object obj) {
+					return obj == this || values.equals(obj);
+				}
+
+				@Override
+				public int hashCode() {
+					return values.hashCode();
+				}
+			};
+		}
+	}
+
+	@Override
+	public Set<Key> keySet() {
+		Set<Key> keys = delegate().keySet();
+		return new AbstractSet<Key>() {
+
+			@Override
+			public Iterator<Key> iterator() {
+				Iterator<Key> iterator = keys.iterator();
+				return new Iterator<Key>() {
+
+					private Key last;
+
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public Key next() {
+						last = iterator.next();
+						return last;
+					}
+
+					@Override
+					public void remove() {
+						Collection<Value> values = new ArrayList<Value>(
+								delegate().getAll(last));
+						iterator.remove();
+						onRemoved(last, values);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return keys.size();
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+
+			@Override
+			public boolean remove(Object key) {
+				return ForwardingMultiMap.this.remove(key) != null;
+			}
+		};
+	}
+}
@@ -0,0 +1,474 @@
+package fr.vergne.collection.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.util.Equivalence;
+
+/**
+ * <p>
+ * A {@link FrozenMultiMap} is an immutable snapshot of a {@link MultiMap},
+ * suited for {@link MultiMap}s which are built once and then only read. It
+ * uses a compressed-sparse-row layout: the keys are stored in a single array,
+ * indexed by an open-addressing hash table, and all the values are stored in
+ * another single array, each key owning a range of it delimited by an array of
+ * offsets. Consequently, there is no {@link Collection} per key and the
+ * iterations go through contiguous arrays.
+ * </p>
+ *
+ * <p>
+ * The {@link Collection}s returned by {@link #getAll(Object)} are read-only
+ * views over the range of the key, without copy. Within a range, the values
+ * are sorted by hash code, so {@link #containsCouple(Object, Object)} uses a
+ * binary search. Consequently, the order of the values of the original
+ * {@link MultiMap} is preserved only among values with the same hash code. If
+ * all the {@link Collection}s of the original {@link MultiMap} are
+ * {@link Set}s, these views are {@link Set}s too, and they are equal to any
+ * {@link Set} having the same values. Otherwise, they are neither {@link Set}s
+ * nor {@link List}s, so they are only equal to the views of a
+ * {@link FrozenMultiMap} having the same values the same number of times,
+ * whatever their order. Any attempt to modify a {@link FrozenMultiMap} throws
+ * an {@link UnsupportedOperationException}.
+ * </p>
+ *
+ * <p>
+ * The keys are identified through an {@link Equivalence}, which is
+ * {@link Equivalence#natural()} unless another one is provided, like the one
+ * of the {@link AbstractMultiMap} being frozen through
+ * {@link AbstractMultiMap#freeze()}.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class FrozenMultiMap<Key, Value> extends MultiMapView<Key, Value> {
+
+	private static final Comparator<Object> HASH_ORDER = Comparator
+			.comparingInt(Objects::hashCode);
+	/**
+	 * Some JVMs cannot allocate arrays up to {@link Integer#MAX_VALUE}.
+	 */
+	private static final int MAX_COUPLES = Integer.MAX_VALUE - 8;
+
+	private final Equivalence<? super Key> keyEquivalence;
+	private final Object[] keys;
+	/**
+	 * Index + 1 of the key in {@link #keys}, 0 for free slots.
+	 */
+	private final int[] table;
+	/**
+	 * The values of the key at index i are in [offsets[i], offsets[i+1]).
+	 */
+	private final int[] offsets;
+	private final Object[] values;
+	private final boolean isSetValued;
+
+	public FrozenMultiMap(MultiMap<Key, Value> map) {
+		this(map, Equivalence.natural());
+	}
+
+	/**
+	 * 
+	 * @param map
+	 *            the {@link MultiMap} to copy
+	 * @param keyEquivalence
+	 *            the {@link Equivalence} telling which keys are the same
+	 * @throws IllegalArgumentException
+	 *             if the {@link MultiMap} has too many couples to be stored in
+	 *             a single array
+	 */
+	public FrozenMultiMap(MultiMap<Key, Value> map,
+			Equivalence<? super Key> keyEquivalence) {
+		this.keyEquivalence = keyEquivalence;
+		int size = map.size();
+		long total = 0;
+		boolean isSetValued = true;
+		for (Collection<Value> collection : map.collections()) {
+			total += collection.size();
+			isSetValued &= collection instanceof Set;
+		}
+		if (total > MAX_COUPLES) {
+			throw new IllegalArgumentException("Too many couples to freeze: "
+					+ total);
+		} else {
+			// they fit in an array
+		}
+		this.isSetValued = isSetValued;
+
+		keys = new Object[size];
+		offsets = new int[size + 1];
+		values = new Object[(int) total];
+		int index = 0;
+		int offset = 0;
+		for (Entry<Key, Collection<Value>> entry : map.entrySet()) {
+			keys[index] = entry.getKey();
+			offsets[index] = offset;
+			for (Value value : entry.getValue()) {
+				values[offset++] = value;
+			}
+			Arrays.sort(values, offsets[index], offset, HASH_ORDER);
+			index++;
+		}
+		offsets[size] = offset;
+
+		int capacity = 2;
+		while (capacity < size * 2) {
+			capacity <<= 1;
+		}
+		table = new int[capacity];
+		int mask = capacity - 1;
+		for (index = 0; index < size; index++) {
+			int slot = hash(keys[index]) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = index + 1;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private int hash(Object key) {
+		int hash = keyEquivalence.hash((Key) key);
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * 
+	 * @return the {@link Equivalence} telling which keys are the same
+	 */
+	public Equivalence<? super Key> getKeyEquivalence() {
+		return keyEquivalence;
+	}
+
+	/**
+	 * @return the index of the key, or a negative number if it is absent
+	 */
+	@SuppressWarnings("unchecked")
+	private int indexOf(Object key) {
+		int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		while (table[slot] != 0) {
+			int index = table[slot] - 1;
+			if (keyEquivalence.equivalent((Key) keys[index], (Key) key)) {
+				return index;
+			} else {
+				slot = (slot + 1) & mask;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean add(Key key, Value value) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean addAll(Key key, Collection<Value> values) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean remove(Key key, Value value) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean removeAll(Key key, Collection<Value> values) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Collection<Value> remove(Object key) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Collection<Value> replaceAll(Key key, Collection<Value> collection) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	public boolean containsCouple(Key key, Value value) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return false;
+		} else {
+			int hash = Objects.hashCode(value);
+			int low = offsets[index];
+			int high = offsets[index + 1] - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int middleHash = Objects.hashCode(values[middle]);
+				if (middleHash < hash) {
+					low = middle + 1;
+				} else if (middleHash > hash) {
+					high = middle - 1;
+				} else {
+					return isInHashRun(index, middle, hash, value);
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Search the value among the values of the key having the same hash code
+	 * as the one found at the given position.
+	 */
+	private boolean isInHashRun(int index, int position, int hash,
+			Object value) {
+		for (int i = position; i >= offsets[index]
+				&& Objects.hashCode(values[i]) == hash; i--) {
+			if (Objects.equals(values[i], value)) {
+				return true;
+			} else {
+				// continue searching
+			}
+		}
+		for (int i = position + 1; i < offsets[index + 1]
+				&& Objects.hashCode(values[i]) == hash; i++) {
+			if (Objects.equals(values[i], value)) {
+				return true;
+			} else {
+				// continue searching
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Collection<Value> getAll(Object key) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		} else if (isSetValued) {
+			return new RangeSet(index);
+		} else {
+			return new Range(index);
+		}
+	}
+
+	@Override
+	public Set<Key> keySet() {
+		return new AbstractSet<Key>() {
+
+			@Override
+			public Iterator<Key> iterator() {
+				return new ArrayIterator<Key>(keys, 0, keys.length);
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+
+			@Override
+			public int size() {
+				return keys.length;
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * @return the number of (key, value) couples of this
+	 *         {@link FrozenMultiMap}
+	 */
+	public long couplesCount() {
+		return values.length;
+	}
+
+	@Override
+	public Iterator<Entry<Key, Value>> iterator() {
+		return new Iterator<Entry<Key, Value>>() {
+
+			private int index = 0;
+			private int position = 0;
+
+			@Override
+			public boolean hasNext() {
+				return position < values.length;
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public Entry<Key, Value> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				} else {
+					while (offsets[index + 1] <= position) {
+						index++;
+					}
+					return new AbstractMap.SimpleImmutableEntry<Key, Value>(
+							(Key) keys[index], (Value) values[position++]);
+				}
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void forEach(BiConsumer<? super Key, ? super Value> action) {
+		for (int index = 0; index < keys.length; index++) {
+			Key key = (Key) keys[index];
+			for (int position = offsets[index]; position < offsets[index + 1]; position++) {
+				action.accept(key, (Value) values[position]);
+			}
+		}
+	}
+
+	private class Range extends AbstractCollection<Value> {
+
+		private final int index;
+
+		public Range(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public Iterator<Value> iterator() {
+			return new ArrayIterator<Value>(values, offsets[index],
+					offsets[index + 1]);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean contains(Object value) {
+			return containsCouple((Key) keys[index], (Value) value);
+		}
+
+		@Override
+		public int size() {
+			return offsets[index + 1] - offsets[index];
+		}
+
+		/**
+		 * A {@link Range} is only equal to another {@link Range} with the same
+		 * values, a {@link RangeSet} being only equal to {@link Set}s.
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			return obj == this || obj instanceof FrozenMultiMap.Range
+					&& !(obj instanceof Set)
+					&& hasSameValues((Collection<?>) obj);
+		}
+
+		/**
+		 * Count the occurrences of the values of the other {@link Collection}
+		 * and consume them with the values of this {@link Range}, so each
+		 * value must occur the same number of times in both.
+		 */
+		protected boolean hasSameValues(Collection<?> collection) {
+			if (collection.size() != size()) {
+				return false;
+			} else {
+				Map<Object, Integer> counts = new HashMap<Object, Integer>();
+				for (Object value : collection) {
+					counts.merge(value, 1, Integer::sum);
+				}
+				for (int position = offsets[index]; position < offsets[index + 1]; position++) {
+					Integer count = counts.get(values[position]);
+					if (count == null) {
+						return false;
+					} else if (count == 1) {
+						counts.remove(values[position]);
+					} else {
+						counts.put(values[position], count - 1);
+					}
+				}
+				return true;
+			}
+		}
+
+		/**
+		 * The sum of the hash codes of the values, which does not depend on
+		 * their order and is the one of {@link Set#hashCode()}.
+		 */
+		@Override
+		public int hashCode() {
+			int hash = 0;
+			for (int position = offsets[index]; position < offsets[index + 1]; position++) {
+				hash += Objects.hashCode(values[position]);
+			}
+			return hash;
+		}
+	}
+
+	private class RangeSet extends Range implements Set<Value> {
+
+		public RangeSet(int index) {
+			super(index);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj == this || obj instanceof Set
+					&& hasSameValues((Collection<?>) obj);
+		}
+
+		@Override
+		public int hashCode() {
+			return super.hashCode();
+		}
+	}
+
+	private static class ArrayIterator<T> implements Iterator<T> {
+
+		private final Object[] array;
+		private final int end;
+		private int position;
+
+		public ArrayIterator(Object[] array, int start, int end) {
+			this.array = array;
+			this.position = start;
+			this.end = end;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return position < end;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			} else {
+				return (T) array[position++];
+			}
+		}
+	}
+}
@@ -1,16 +1,33 @@
 package fr.vergne.collection.impl;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Map.Entry;
 
 import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.util.Equivalence;
 
 /**
+ * <p>
  * A {@link HashMultiMap} is a {@link MultiMap} which allows at most one
  * instance for each (key, value). If the same value is assigned several times
  * to the same key, it is the same than providing it only once, and removing it
  * once is enough to not have it anymore in the map.
+ * </p>
+ * 
+ * <p>
+ * The values of a key are stored in an array while they are few, which is
+ * more compact and faster to search than a {@link HashSet} for a handful of
+ * values. When the number of values exceeds the threshold set with
+ * {@link #setArrayThreshold(int)}, they are moved to a {@link HashSet}, and
+ * they come back to an array when a removal leaves less than half the
+ * threshold.
+ * </p>
  * 
  * @author Matthieu Vergne <vergne@fbk.eu>
  * 
@@ -21,6 +38,10 @@ import fr.vergne.collection.MultiMap;
 public class HashMultiMap<Key, Value> extends AbstractMultiMap<Key, Value>
 		implements MultiMap<Key, Value> {
 
+	public static final int DEFAULT_ARRAY_THRESHOLD = 8;
+
+	private int arrayThreshold = DEFAULT_ARRAY_THRESHOLD;
+
 	public HashMultiMap(MultiMap<Key, Value> map) {
 		for (Entry<Key, Collection<Value>> entry : map.entrySet()) {
 			addAll(entry.getKey(), entry.getValue());
@@ -30,9 +51,241 @@ public class HashMultiMap<Key, Value> extends AbstractMultiMap<Key, Value>
 	public HashMultiMap() {
 	}
 
+	/**
+	 * 
+	 * @param keyEquivalence
+	 *            the {@link Equivalence} telling which keys are the same
+	 */
+	public HashMultiMap(Equivalence<? super Key> keyEquivalence) {
+		super(keyEquivalence);
+	}
+
+	/**
+	 * 
+	 * @param arrayThreshold
+	 *            the maximal number of values of a key stored in an array
+	 *            rather than a {@link HashSet}, 0 to always use a
+	 *            {@link HashSet}
+	 */
+	public void setArrayThreshold(int arrayThreshold) {
+		if (arrayThreshold < 0) {
+			throw new IllegalArgumentException("Negative threshold: "
+					+ arrayThreshold);
+		} else {
+			this.arrayThreshold = arrayThreshold;
+		}
+	}
+
+	public int getArrayThreshold() {
+		return arrayThreshold;
+	}
+
 	@Override
 	protected Collection<Value> generateInnerCollection(Key key) {
-		return new HashSet<Value>();
+		return new AdaptiveSet<Value>(this, 0);
+	}
+
+	/**
+	 * The {@link Collection} is generated through
+	 * {@link #generateInnerCollection(Object)}, so the subclasses overriding
+	 * it remain in control of the kind of {@link Collection}. The size hint is
+	 * applied only to the {@link AdaptiveSet}s generated by this class.
+	 */
+	@Override
+	protected Collection<Value> generateInnerCollection(Key key,
+			int expectedSize) {
+		Collection<Value> collection = generateInnerCollection(key);
+		if (collection instanceof AdaptiveSet) {
+			((AdaptiveSet<Value>) collection).reserve(expectedSize);
+		} else {
+			// generated by a subclass, which decides of its size
+		}
+		return collection;
+	}
+
+	/**
+	 * The {@link AdaptiveSet}s moved from another {@link HashMultiMap} follow
+	 * the threshold of this one.
+	 */
+	@Override
+	protected void adoptInnerCollection(Collection<Value> collection) {
+		if (collection instanceof AdaptiveSet) {
+			((AdaptiveSet<Value>) collection).owner = this;
+		} else {
+			// not generated by a HashMultiMap
+		}
+	}
+
+	/**
+	 * A {@link java.util.Set} storing its values in an array while they are
+	 * few, and in a {@link HashSet} otherwise. The removals made through an
+	 * {@link Iterator} do not move the values back to an array, to not break
+	 * the iteration. The threshold is the one of the {@link HashMultiMap}
+	 * owning it, which changes when it is moved to another one.
+	 */
+	private static class AdaptiveSet<Value> extends AbstractSet<Value> {
+
+		private HashMultiMap<?, ?> owner;
+		private Object[] array;
+		private int size = 0;
+		private HashSet<Value> set;
+
+		public AdaptiveSet(HashMultiMap<?, ?> owner, int expectedSize) {
+			this.owner = owner;
+			reserve(expectedSize);
+		}
+
+		/**
+		 * Prepare this empty {@link AdaptiveSet} to receive a given number of
+		 * values.
+		 */
+		private void reserve(int expectedSize) {
+			if (expectedSize > owner.arrayThreshold) {
+				set = new HashSet<Value>((int) (expectedSize / 0.75f) + 1);
+				array = null;
+			} else if (array == null || array.length < expectedSize) {
+				set = null;
+				array = new Object[Math.max(2, expectedSize)];
+			} else {
+				// already big enough
+			}
+		}
+
+		private int indexOf(Object value) {
+			for (int i = 0; i < size; i++) {
+				if (Objects.equals(array[i], value)) {
+					return i;
+				} else {
+					// continue searching
+				}
+			}
+			return -1;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void promote() {
+			set = new HashSet<Value>((int) (2 * size / 0.75f) + 1);
+			for (int i = 0; i < size; i++) {
+				set.add((Value) array[i]);
+			}
+			array = null;
+			size = 0;
+		}
+
+		private void demoteIfSmall() {
+			int arrayThreshold = owner.arrayThreshold;
+			if (set.size() <= arrayThreshold / 2) {
+				array = Arrays.copyOf(set.toArray(),
+						Math.max(2, arrayThreshold));
+				size = set.size();
+				set = null;
+			} else {
+				// remain a hash set
+			}
+		}
+
+		private void removeAt(int index) {
+			size--;
+			System.arraycopy(array, index + 1, array, index, size - index);
+			array[size] = null;
+		}
+
+		@Override
+		public boolean add(Value value) {
+			if (set != null) {
+				return set.add(value);
+			} else if (indexOf(value) >= 0) {
+				return false;
+			} else if (size >= owner.arrayThreshold) {
+				promote();
+				return set.add(value);
+			} else {
+				if (size == array.length) {
+					array = Arrays.copyOf(array,
+							Math.min(2 * size, owner.arrayThreshold));
+				} else {
+					// enough space
+				}
+				array[size++] = value;
+				return true;
+			}
+		}
+
+		@Override
+		public boolean remove(Object value) {
+			if (set != null) {
+				if (set.remove(value)) {
+					demoteIfSmall();
+					return true;
+				} else {
+					return false;
+				}
+			} else {
+				int index = indexOf(value);
+				if (index < 0) {
+					return false;
+				} else {
+					removeAt(index);
+					return true;
+				}
+			}
+		}
+
+		@Override
+		public boolean contains(Object value) {
+			return set != null ? set.contains(value) : indexOf(value) >= 0;
+		}
+
+		@Override
+		public int size() {
+			return set != null ? set.size() : size;
+		}
+
+		@Override
+		public void clear() {
+			set = null;
+			array = new Object[2];
+			size = 0;
+		}
+
+		@Override
+		public Iterator<Value> iterator() {
+			if (set != null) {
+				return set.iterator();
+			} else {
+				return new Iterator<Value>() {
+
+					private int index = 0;
+					private boolean isRemovable = false;
+
+					@Override
+					public boolean hasNext() {
+						return index < size;
+					}
+
+					@SuppressWarnings("unchecked")
+					@Override
+					public Value next() {
+						if (index < size) {
+							isRemovable = true;
+							return (Value) array[index++];
+						} else {
+							throw new NoSuchElementException();
+						}
+					}
+
+					@Override
+					public void remove() {
+						if (!isRemovable) {
+							throw new IllegalStateException();
+						} else {
+							removeAt(--index);
+							isRemovable = false;
+						}
+					}
+				};
+			}
+		}
 	}
 
 }
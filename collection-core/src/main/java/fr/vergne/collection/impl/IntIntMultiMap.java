@@ -0,0 +1,450 @@
+package fr.vergne.collection.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import fr.vergne.collection.MultiMap;
+
+/**
+ * <p>
+ * An {@link IntIntMultiMap} is a {@link MultiMap}-like structure specialized
+ * for <code>int</code> keys and values. Like an {@link HashMultiMap}, it
+ * allows at most one instance for each (key, value). Neither the keys nor the
+ * values are boxed: the keys are stored in an open-addressing table and the
+ * values of each key are stored in a sorted <code>int</code> array, so a
+ * couple costs a few bytes instead of several objects.
+ * </p>
+ *
+ * <p>
+ * Adding a single value shifts the greater values of its key, so it costs
+ * O(n) for a key having n values. To fill keys having many values, prefer
+ * {@link #addAll(int, int...)}, which sorts the new values once and merges them
+ * with the current ones.
+ * </p>
+ *
+ * <p>
+ * Because {@link MultiMap} is generic, this class cannot implement it without
+ * boxing. Use {@link #asMultiMap()} to obtain a {@link MultiMap} view backed by
+ * this {@link IntIntMultiMap}.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class IntIntMultiMap extends
+		AbstractPrimitiveMultiMap<int[], int[]> {
+
+	/**
+	 * An {@link IntIntConsumer} is the primitive equivalent of a
+	 * {@link java.util.function.BiConsumer} of {@link Integer}s.
+	 */
+	@FunctionalInterface
+	public static interface IntIntConsumer {
+		public void accept(int key, int value);
+	}
+
+	private static final int[] REMOVED = new int[0];
+
+	public IntIntMultiMap(int expectedKeys) {
+		super(REMOVED, expectedKeys);
+	}
+
+	public IntIntMultiMap() {
+		this(0);
+	}
+
+	@Override
+	protected int[] newKeys(int capacity) {
+		return new int[capacity];
+	}
+
+	@Override
+	protected int[][] newValuesTable(int capacity) {
+		return new int[capacity][];
+	}
+
+	@Override
+	protected int[] newValues(int length) {
+		return new int[length];
+	}
+
+	@Override
+	protected int lengthOf(int[] array) {
+		return array.length;
+	}
+
+	@Override
+	protected int hashAt(int[] keys, int slot) {
+		return hash(keys[slot]);
+	}
+
+	private static int hash(int key) {
+		int hash = key * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * @return the slot of the key, or a negative number if it is absent
+	 */
+	private int slotOf(int key) {
+		int mask = mask();
+		int slot = hash(key) & mask;
+		while (!isFree(slot)) {
+			if (isUsed(slot) && keys[slot] == key) {
+				return slot;
+			} else {
+				slot = (slot + 1) & mask;
+			}
+		}
+		return -1;
+	}
+
+	private int insertSlotOf(int key) {
+		int slot = slotOf(key);
+		if (slot >= 0) {
+			return slot;
+		} else {
+			slot = claimSlot(hash(key));
+			keys[slot] = key;
+			return slot;
+		}
+	}
+
+	/**
+	 * Map a key to the provided value.
+	 *
+	 * @return <code>true</code> if the mapping has been changed,
+	 *         <code>false</code> if the couple was already present
+	 */
+	public boolean add(int key, int value) {
+		int slot = insertSlotOf(key);
+		int index = Arrays.binarySearch(values[slot], 0, counts[slot], value);
+		if (index >= 0) {
+			return false;
+		} else {
+			index = -index - 1;
+			openValue(slot, index)[index] = value;
+			return true;
+		}
+	}
+
+	/**
+	 * Map a key to all the provided values. They are sorted once and merged
+	 * with the current values of the key, which is faster than adding them one
+	 * by one.
+	 *
+	 * @return <code>true</code> if the mapping has been changed,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean addAll(int key, int... values) {
+		if (values.length == 0) {
+			return false;
+		} else {
+			int slot = insertSlotOf(key);
+			int count = counts[slot];
+			int[] added = values.clone();
+			Arrays.sort(added);
+			int length = 0;
+			for (int index = 0; index < added.length; index++) {
+				if (index > 0 && added[index] == added[index - 1]
+						|| Arrays.binarySearch(this.values[slot], 0, count,
+								added[index]) >= 0) {
+					// already present
+				} else {
+					added[length++] = added[index];
+				}
+			}
+			if (length == 0) {
+				return false;
+			} else {
+				int[] array = appendValues(slot, length);
+				int current = count - 1;
+				int next = length - 1;
+				for (int index = count + length - 1; next >= 0; index--) {
+					if (current >= 0 && array[current] > added[next]) {
+						array[index] = array[current--];
+					} else {
+						array[index] = added[next--];
+					}
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Unmap a specific value from a key. The key is removed with its last
+	 * value.
+	 *
+	 * @return <code>true</code> if the mapping has been changed,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean remove(int key, int value) {
+		int slot = slotOf(key);
+		if (slot < 0) {
+			return false;
+		} else {
+			int index = Arrays.binarySearch(values[slot], 0, counts[slot],
+					value);
+			if (index < 0) {
+				return false;
+			} else {
+				closeValue(slot, index);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Unmap all the values mapped to a given key.
+	 *
+	 * @return <code>true</code> if the key was mapped, <code>false</code>
+	 *         otherwise
+	 */
+	public boolean remove(int key) {
+		int slot = slotOf(key);
+		if (slot < 0) {
+			return false;
+		} else {
+			removeSlot(slot);
+			return true;
+		}
+	}
+
+	public boolean containsKey(int key) {
+		return slotOf(key) >= 0;
+	}
+
+	public boolean containsCouple(int key, int value) {
+		int slot = slotOf(key);
+		return slot >= 0
+				&& Arrays.binarySearch(values[slot], 0, counts[slot], value) >= 0;
+	}
+
+	/**
+	 * @return a sorted copy of the values mapped to the key, an empty array if
+	 *         the key is not mapped
+	 */
+	public int[] getAll(int key) {
+		int slot = slotOf(key);
+		if (slot < 0) {
+			return new int[0];
+		} else {
+			return Arrays.copyOf(values[slot], counts[slot]);
+		}
+	}
+
+	/**
+	 * @return the number of values mapped to the key
+	 */
+	public int count(int key) {
+		int slot = slotOf(key);
+		return slot < 0 ? 0 : counts[slot];
+	}
+
+	/**
+	 * Call the {@link IntIntConsumer} on each (key, value) couple, without any
+	 * allocation.
+	 */
+	public void forEach(IntIntConsumer consumer) {
+		int slot = nextUsedSlot(0);
+		while (slot < counts.length) {
+			int[] array = values[slot];
+			int key = keys[slot];
+			for (int index = 0, count = counts[slot]; index < count; index++) {
+				consumer.accept(key, array[index]);
+			}
+			slot = nextUsedSlot(slot + 1);
+		}
+	}
+
+	/**
+	 * This method provides a {@link MultiMap} view of this
+	 * {@link IntIntMultiMap}, for compatibility with the code using
+	 * {@link MultiMap}s. Each access through this view boxes the keys and
+	 * values, so the primitive methods should be preferred when possible.
+	 *
+	 * @return a {@link MultiMap} backed by this {@link IntIntMultiMap}
+	 */
+	public MultiMap<Integer, Integer> asMultiMap() {
+		return new MultiMapView<Integer, Integer>() {
+
+			@Override
+			public boolean add(Integer key, Integer value) {
+				return IntIntMultiMap.this.add(key, value);
+			}
+
+			@Override
+			public boolean remove(Integer key, Integer value) {
+				return IntIntMultiMap.this.remove(key, value);
+			}
+
+			@Override
+			public boolean containsCouple(Integer key, Integer value) {
+				return IntIntMultiMap.this.containsCouple(key, value);
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return key instanceof Integer
+						&& IntIntMultiMap.this.containsKey((Integer) key);
+			}
+
+			@Override
+			public Collection<Integer> getAll(Object key) {
+				return containsKey(key) ? new KeyValues((Integer) key) : null;
+			}
+
+			@Override
+			public Set<Integer> keySet() {
+				return new KeySet();
+			}
+
+			@Override
+			public void clear() {
+				IntIntMultiMap.this.clear();
+			}
+
+			@Override
+			public int size() {
+				return IntIntMultiMap.this.size();
+			}
+		};
+	}
+
+	private class KeySet extends AbstractSet<Integer> {
+
+		@Override
+		public Iterator<Integer> iterator() {
+			return new Iterator<Integer>() {
+
+				private int nextSlot = nextUsedSlot(0);
+				private int lastSlot = -1;
+
+				@Override
+				public boolean hasNext() {
+					return nextSlot < counts.length;
+				}
+
+				@Override
+				public Integer next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					} else {
+						lastSlot = nextSlot;
+						nextSlot = nextUsedSlot(nextSlot + 1);
+						return keys[lastSlot];
+					}
+				}
+
+				@Override
+				public void remove() {
+					if (lastSlot < 0) {
+						throw new IllegalStateException();
+					} else {
+						removeSlot(lastSlot);
+						lastSlot = -1;
+					}
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object key) {
+			return key instanceof Integer && containsKey((Integer) key);
+		}
+
+		@Override
+		public boolean remove(Object key) {
+			return key instanceof Integer
+					&& IntIntMultiMap.this.remove((int) (Integer) key);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			IntIntMultiMap.this.clear();
+		}
+	}
+
+	private class KeyValues extends AbstractCollection<Integer> {
+
+		private final int key;
+
+		public KeyValues(int key) {
+			this.key = key;
+		}
+
+		@Override
+		public Iterator<Integer> iterator() {
+			return new Iterator<Integer>() {
+
+				private int index = 0;
+				private boolean isRemovable = false;
+
+				@Override
+				public boolean hasNext() {
+					return index < count(key);
+				}
+
+				@Override
+				public Integer next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					} else {
+						isRemovable = true;
+						return values[slotOf(key)][index++];
+					}
+				}
+
+				@Override
+				public void remove() {
+					if (!isRemovable) {
+						throw new IllegalStateException();
+					} else {
+						index--;
+						IntIntMultiMap.this.remove(key,
+								values[slotOf(key)][index]);
+						isRemovable = false;
+					}
+				}
+			};
+		}
+
+		@Override
+		public boolean add(Integer value) {
+			return IntIntMultiMap.this.add(key, value);
+		}
+
+		@Override
+		public boolean contains(Object value) {
+			return value instanceof Integer
+					&& containsCouple(key, (Integer) value);
+		}
+
+		@Override
+		public boolean remove(Object value) {
+			return value instanceof Integer
+					&& IntIntMultiMap.this.remove(key, (Integer) value);
+		}
+
+		@Override
+		public int size() {
+			return count(key);
+		}
+
+		@Override
+		public void clear() {
+			IntIntMultiMap.this.remove(key);
+		}
+	}
+}
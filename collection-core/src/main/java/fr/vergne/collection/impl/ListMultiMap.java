@@ -5,6 +5,7 @@ import java.util.LinkedList;
 import java.util.Map.Entry;
 
 import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.util.Equivalence;
 
 /**
  * A {@link ListMultiMap} is a {@link MultiMap} which allows to have several
@@ -30,6 +31,15 @@ public class ListMultiMap<Key, Value> extends AbstractMultiMap<Key, Value>
 	public ListMultiMap() {
 	}
 
+	/**
+	 * 
+	 * @param keyEquivalence
+	 *            the {@link Equivalence} telling which keys are the same
+	 */
+	public ListMultiMap(Equivalence<? super Key> keyEquivalence) {
+		super(keyEquivalence);
+	}
+
 	@Override
 	protected Collection<Value> generateInnerCollection(Key key) {
 		return new LinkedList<Value>();
@@ -0,0 +1,831 @@
+package fr.vergne.collection.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.util.Serializer;
+
+/**
+ * <p>
+ * A {@link MultiMapCodec} writes {@link MultiMap}s in a compact binary format
+ * and reads them back. The format is made of:
+ * </p>
+ * <ol>
+ * <li>a header, with a magic number and the version of the format,</li>
+ * <li>the dictionary of the keys, each key being serialized once,</li>
+ * <li>the dictionary of the values, each distinct value being serialized
+ * once,</li>
+ * <li>the offset of the list of each key, so a list can be reached without
+ * reading the others,</li>
+ * <li>the list of each key, made of the identifiers of its values in the
+ * dictionary,</li>
+ * <li>the position of each key and each value in its dictionary,</li>
+ * <li>the index of the keys, an open-addressing hash table giving for each
+ * slot a key and the hash of its serialized form,</li>
+ * <li>a trailer, with the positions of the sections above and their
+ * sizes.</li>
+ * </ol>
+ * <p>
+ * All the numbers are written as varints, except the magic number, the
+ * version, the offsets, the positions, the index and the trailer which have a
+ * fixed size.
+ * </p>
+ *
+ * <p>
+ * {@link #write(MultiMap, WritableByteChannel)} streams the {@link MultiMap}
+ * to the channel: only the dictionary of the values is built in memory, the
+ * couples being read again from the {@link MultiMap} for each section. The
+ * {@link MultiMap} must not be modified while it is written.
+ * {@link #read(ReadableByteChannel, MultiMap)} streams the couples back into a
+ * given {@link MultiMap}, while {@link #open(Path)} maps the file in memory and
+ * returns a read-only {@link MultiMap} which decodes the keys and values only
+ * when they are requested. The keys are searched by probing the index in the
+ * file, so opening a file does not depend on its size, and only a bounded
+ * number of decoded keys and values are kept in memory. However, a
+ * {@link ByteBuffer} cannot address more than 2 GB, so bigger files can only
+ * be read with {@link #read(ReadableByteChannel, MultiMap)}. The keys and the
+ * values are compared through their serialized forms, so the
+ * {@link Serializer}s must produce the same bytes for equal objects.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class MultiMapCodec<Key, Value> {
+
+	private static final int MAGIC = 0x4D4D4344;
+	private static final byte VERSION = 2;
+	private static final int HEADER_SIZE = 5;
+	private static final int TRAILER_SIZE = 5 * 8 + 3 * 4;
+	private static final int MAX_INDEX_CAPACITY = 1 << 30;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Serializer<Key> keySerializer;
+	private final Serializer<Value> valueSerializer;
+
+	public MultiMapCodec(Serializer<Key> keySerializer,
+			Serializer<Value> valueSerializer) {
+		this.keySerializer = keySerializer;
+		this.valueSerializer = valueSerializer;
+	}
+
+	/*
+	 * WRITING
+	 */
+
+	/**
+	 * Write a {@link MultiMap} to a channel. The channel is not closed.
+	 *
+	 * @param map
+	 *            the {@link MultiMap} to write
+	 * @param channel
+	 *            the channel to write to
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void write(MultiMap<Key, Value> map, WritableByteChannel channel)
+			throws IOException {
+		Output output = new Output(channel);
+		output.buffer(HEADER_SIZE).putInt(MAGIC).put(VERSION);
+
+		int keysCount = map.size();
+		long[] keyPositions = new long[keysCount];
+		int[] keyHashes = new int[keysCount];
+		output.putVarint(keysCount);
+		int index = 0;
+		for (Key key : map.keySet()) {
+			byte[] bytes = keySerializer.serialize(key);
+			keyPositions[index] = output.position();
+			keyHashes[index] = hash(bytes);
+			output.putBytes(bytes);
+			index++;
+		}
+
+		Map<Value, Integer> ids = new HashMap<Value, Integer>();
+		List<Value> dictionary = new ArrayList<Value>();
+		for (Collection<Value> values : collections(map)) {
+			for (Value value : values) {
+				if (ids.putIfAbsent(value, dictionary.size()) == null) {
+					dictionary.add(value);
+				} else {
+					// already known
+				}
+			}
+		}
+		long[] valuePositions = new long[dictionary.size()];
+		output.putVarint(dictionary.size());
+		for (int id = 0; id < valuePositions.length; id++) {
+			valuePositions[id] = output.position();
+			output.putBytes(valueSerializer.serialize(dictionary.get(id)));
+		}
+
+		long offsetsPosition = output.position();
+		long offset = 0;
+		for (Collection<Value> values : collections(map)) {
+			output.buffer(8).putLong(offset);
+			offset += varintSize(values.size());
+			for (Value value : values) {
+				offset += varintSize(ids.get(value));
+			}
+		}
+
+		long listsPosition = output.position();
+		for (Collection<Value> values : collections(map)) {
+			output.putVarint(values.size());
+			for (Value value : values) {
+				output.putVarint(ids.get(value));
+			}
+		}
+
+		long keyPositionsPosition = output.position();
+		for (long position : keyPositions) {
+			output.buffer(8).putLong(position);
+		}
+		long valuePositionsPosition = output.position();
+		for (long position : valuePositions) {
+			output.buffer(8).putLong(position);
+		}
+
+		int[] slots = createIndex(keyHashes);
+		long indexPosition = output.position();
+		for (int slot : slots) {
+			output.buffer(8).putInt(slot).putInt(
+					slot == 0 ? 0 : keyHashes[slot - 1]);
+		}
+
+		output.buffer(TRAILER_SIZE).putLong(keyPositionsPosition)
+				.putLong(valuePositionsPosition).putLong(offsetsPosition)
+				.putLong(listsPosition).putLong(indexPosition)
+				.putInt(keysCount).putInt(valuePositions.length)
+				.putInt(slots.length);
+		output.flush();
+	}
+
+	/**
+	 * Write a {@link MultiMap} to a file, which is replaced if it exists.
+	 */
+	public void write(MultiMap<Key, Value> map, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(map, channel);
+		}
+	}
+
+	/**
+	 * The values are retrieved in the order of {@link MultiMap#keySet()}, so
+	 * all the sections are ordered in the same way.
+	 */
+	private Iterable<Collection<Value>> collections(MultiMap<Key, Value> map) {
+		return () -> {
+			Iterator<Key> iterator = map.keySet().iterator();
+			return new Iterator<Collection<Value>>() {
+
+				@Override
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+
+				@Override
+				public Collection<Value> next() {
+					return map.getAll(iterator.next());
+				}
+			};
+		};
+	}
+
+	/**
+	 * Build an open-addressing hash table with linear probing, each slot
+	 * containing the index of a key plus one, or zero if it is free. The table
+	 * is kept at most half full, so the probes remain short.
+	 */
+	private static int[] createIndex(int[] hashes) {
+		if (hashes.length >= MAX_INDEX_CAPACITY) {
+			throw new IllegalArgumentException("Too many keys to index: "
+					+ hashes.length);
+		} else {
+			int capacity = 1;
+			while (capacity < 2L * hashes.length
+					&& capacity < MAX_INDEX_CAPACITY) {
+				capacity <<= 1;
+			}
+			int[] slots = new int[capacity];
+			for (int index = 0; index < hashes.length; index++) {
+				int slot = hashes[index] & (capacity - 1);
+				while (slots[slot] != 0) {
+					slot = (slot + 1) & (capacity - 1);
+				}
+				slots[slot] = index + 1;
+			}
+			return slots;
+		}
+	}
+
+	/**
+	 * The hash of a serialized key, which only depends on its bytes, so it
+	 * remains valid from one JVM to another.
+	 */
+	private static int hash(byte[] bytes) {
+		int hash = Arrays.hashCode(bytes);
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int varintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static class Output {
+		private final WritableByteChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private long flushed = 0;
+
+		public Output(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 *
+		 * @return the number of bytes written so far, including the buffered
+		 *         ones
+		 */
+		public long position() {
+			return flushed + buffer.position();
+		}
+
+		public ByteBuffer buffer(int size) throws IOException {
+			if (buffer.remaining() < size) {
+				flush();
+			} else {
+				// enough room
+			}
+			return buffer;
+		}
+
+		public void putVarint(int value) throws IOException {
+			ByteBuffer buffer = buffer(5);
+			while ((value & ~0x7F) != 0) {
+				buffer.put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte) value);
+		}
+
+		public void putBytes(byte[] bytes) throws IOException {
+			putVarint(bytes.length);
+			if (bytes.length <= buffer.capacity()) {
+				buffer(bytes.length).put(bytes);
+			} else {
+				flush();
+				ByteBuffer wrapper = ByteBuffer.wrap(bytes);
+				while (wrapper.hasRemaining()) {
+					channel.write(wrapper);
+				}
+				flushed += bytes.length;
+			}
+		}
+
+		public void flush() throws IOException {
+			buffer.flip();
+			flushed += buffer.remaining();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/*
+	 * STREAMING READ
+	 */
+
+	/**
+	 * Read the couples written by
+	 * {@link #write(MultiMap, WritableByteChannel)} and add them to a
+	 * {@link MultiMap}. The sections following the lists are only used by
+	 * {@link #open(ByteBuffer)}, so they are not read. The channel is not
+	 * closed.
+	 *
+	 * @param channel
+	 *            the channel to read from
+	 * @param map
+	 *            the {@link MultiMap} to fill
+	 * @throws IOException
+	 *             if the channel cannot be read or does not provide the
+	 *             expected format
+	 */
+	public void read(ReadableByteChannel channel, MultiMap<Key, Value> map)
+			throws IOException {
+		Input input = new Input(channel);
+		checkHeader(input.require(HEADER_SIZE));
+
+		int keysCount = input.getVarint();
+		List<Key> keys = new ArrayList<Key>(keysCount);
+		for (int i = 0; i < keysCount; i++) {
+			keys.add(keySerializer.deserialize(input.getBytes()));
+		}
+		int valuesCount = input.getVarint();
+		List<Value> dictionary = new ArrayList<Value>(valuesCount);
+		for (int i = 0; i < valuesCount; i++) {
+			dictionary.add(valueSerializer.deserialize(input.getBytes()));
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			input.require(8).getLong();
+		}
+		for (Key key : keys) {
+			int size = input.getVarint();
+			List<Value> values = new ArrayList<Value>(size);
+			for (int i = 0; i < size; i++) {
+				values.add(dictionary.get(input.getVarint()));
+			}
+			map.addAll(key, values);
+		}
+	}
+
+	private static void checkHeader(ByteBuffer buffer) throws IOException {
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("Not a MultiMap snapshot");
+		} else {
+			byte version = buffer.get();
+			if (version != VERSION) {
+				throw new IOException("Unsupported version: " + version);
+			} else {
+				// supported format
+			}
+		}
+	}
+
+	private static class Input {
+		private final ReadableByteChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		public Input(ReadableByteChannel channel) {
+			this.channel = channel;
+			buffer.flip();
+		}
+
+		public ByteBuffer require(int size) throws IOException {
+			if (buffer.remaining() < size) {
+				buffer.compact();
+				while (buffer.position() < size) {
+					if (channel.read(buffer) < 0) {
+						throw new IOException("Unexpected end of snapshot");
+					} else {
+						// continue reading
+					}
+				}
+				buffer.flip();
+			} else {
+				// enough data
+			}
+			return buffer;
+		}
+
+		public int getVarint() throws IOException {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = require(1).get();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				} else {
+					// continue on the next byte
+				}
+			}
+		}
+
+		public byte[] getBytes() throws IOException {
+			byte[] bytes = new byte[getVarint()];
+			int offset = 0;
+			while (offset < bytes.length) {
+				ByteBuffer buffer = require(1);
+				int length = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.get(bytes, offset, length);
+				offset += length;
+			}
+			return bytes;
+		}
+	}
+
+	/*
+	 * LAZY READ
+	 */
+
+	/**
+	 * Map a file written by {@link #write(MultiMap, Path)} in memory. The
+	 * file remains mapped as long as the returned {@link MultiMap} is used.
+	 * Files bigger than 2 GB cannot be mapped in a single {@link ByteBuffer},
+	 * so they must be read with {@link #read(ReadableByteChannel, MultiMap)}.
+	 *
+	 * @param file
+	 *            the file to read
+	 * @return a read-only {@link MultiMap} backed by the file
+	 * @throws IOException
+	 *             if the file cannot be read, is too big to be mapped or does
+	 *             not provide the expected format
+	 */
+	public MultiMap<Key, Value> open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot too big to be mapped (" + size
+						+ " bytes), read it as a stream instead");
+			} else {
+				return open(channel.map(MapMode.READ_ONLY, 0, size));
+			}
+		}
+	}
+
+	/**
+	 * Read a {@link MultiMap} from a buffer containing what was written by
+	 * {@link #write(MultiMap, WritableByteChannel)}. Only the header and the
+	 * trailer are read here, each key and value being decoded the first time
+	 * it is requested.
+	 *
+	 * @param buffer
+	 *            the buffer to read, from its current position
+	 * @return a read-only {@link MultiMap} backed by the buffer
+	 * @throws IOException
+	 *             if the buffer does not provide the expected format
+	 */
+	public MultiMap<Key, Value> open(ByteBuffer buffer) throws IOException {
+		return new Snapshot(buffer.slice());
+	}
+
+	/**
+	 * Read a varint at the position of the cursor and move the cursor after
+	 * it.
+	 */
+	private static int getVarint(ByteBuffer buffer, int[] cursor) {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = buffer.get(cursor[0]++);
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			} else {
+				// continue on the next byte
+			}
+		}
+	}
+
+	private static byte[] getBytes(ByteBuffer buffer, int position) {
+		int[] cursor = { position };
+		byte[] bytes = new byte[getVarint(buffer, cursor)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(cursor[0] + i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * A direct-mapped cache of the decoded keys or values of a
+	 * {@link Snapshot}, indexed by their identifiers. Its capacity is bounded,
+	 * so the memory used does not depend on the size of the file: an object
+	 * is evicted when another one with the same slot is decoded.
+	 */
+	private static class DecodedCache {
+
+		private static final int MAX_CAPACITY = 1 << 12;
+
+		/**
+		 * Identifier + 1 of the object of each slot, 0 for free slots.
+		 */
+		private final int[] ids;
+		private final Object[] objects;
+
+		public DecodedCache(int count) {
+			int capacity = 1;
+			while (capacity < count && capacity < MAX_CAPACITY) {
+				capacity <<= 1;
+			}
+			ids = new int[capacity];
+			objects = new Object[capacity];
+		}
+
+		/**
+		 * @return the decoded object, or <code>null</code> if it is not cached
+		 */
+		public Object get(int id) {
+			int slot = id & (ids.length - 1);
+			return ids[slot] == id + 1 ? objects[slot] : null;
+		}
+
+		public void put(int id, Object object) {
+			int slot = id & (ids.length - 1);
+			ids[slot] = id + 1;
+			objects[slot] = object;
+		}
+	}
+
+	private class Snapshot extends MultiMapView<Key, Value> {
+
+		private final ByteBuffer buffer;
+		private final int keysCount;
+		private final int keyPositionsPosition;
+		private final int valuePositionsPosition;
+		private final int offsetsPosition;
+		private final int listsPosition;
+		private final int indexPosition;
+		private final int indexMask;
+		private final DecodedCache keys;
+		private final DecodedCache values;
+
+		public Snapshot(ByteBuffer buffer) throws IOException {
+			this.buffer = buffer;
+			if (buffer.limit() < HEADER_SIZE + TRAILER_SIZE) {
+				throw new IOException("Not a MultiMap snapshot");
+			} else {
+				checkHeader(buffer.duplicate());
+			}
+			ByteBuffer trailer = buffer.duplicate();
+			trailer.position(buffer.limit() - TRAILER_SIZE);
+			keyPositionsPosition = checkPosition(trailer.getLong());
+			valuePositionsPosition = checkPosition(trailer.getLong());
+			offsetsPosition = checkPosition(trailer.getLong());
+			listsPosition = checkPosition(trailer.getLong());
+			indexPosition = checkPosition(trailer.getLong());
+			keysCount = trailer.getInt();
+			int valuesCount = trailer.getInt();
+			indexMask = trailer.getInt() - 1;
+			keys = new DecodedCache(keysCount);
+			values = new DecodedCache(valuesCount);
+		}
+
+		/**
+		 * The sections are written one after the other, so the positions
+		 * stored in the file are all lower than the ones of the trailer: if
+		 * these ones fit in the buffer, the others do too.
+		 */
+		private int checkPosition(long position) throws IOException {
+			if (position < 0 || position > buffer.limit() - TRAILER_SIZE) {
+				throw new IOException("Position out of the snapshot: "
+						+ position + " not in [0, "
+						+ (buffer.limit() - TRAILER_SIZE) + "]");
+			} else {
+				return (int) position;
+			}
+		}
+
+		private int keyPosition(int index) {
+			return (int) buffer.getLong(keyPositionsPosition + 8 * index);
+		}
+
+		private int valuePosition(int id) {
+			return (int) buffer.getLong(valuePositionsPosition + 8 * id);
+		}
+
+		@SuppressWarnings("unchecked")
+		private Key key(int index) {
+			Object key = keys.get(index);
+			if (key == null) {
+				key = keySerializer.deserialize(getBytes(buffer,
+						keyPosition(index)));
+				keys.put(index, key);
+			} else {
+				// already decoded
+			}
+			return (Key) key;
+		}
+
+		@SuppressWarnings("unchecked")
+		private Value value(int id) {
+			Object value = values.get(id);
+			if (value == null) {
+				value = valueSerializer.deserialize(getBytes(buffer,
+						valuePosition(id)));
+				values.put(id, value);
+			} else {
+				// already decoded
+			}
+			return (Value) value;
+		}
+
+		/**
+		 * Probe the index of the keys, the serialized keys being compared only
+		 * when their hashes are equal.
+		 */
+		@SuppressWarnings("unchecked")
+		private int indexOf(Object key) {
+			byte[] bytes;
+			try {
+				bytes = keySerializer.serialize((Key) key);
+			} catch (ClassCastException cause) {
+				return -1;
+			}
+			int hash = hash(bytes);
+			for (int slot = hash & indexMask;; slot = (slot + 1) & indexMask) {
+				int entry = indexPosition + 8 * slot;
+				int id = buffer.getInt(entry);
+				if (id == 0) {
+					return -1;
+				} else if (buffer.getInt(entry + 4) == hash
+						&& isSerialized(keyPosition(id - 1), bytes)) {
+					return id - 1;
+				} else {
+					// continue probing
+				}
+			}
+		}
+
+		/**
+		 * Compare the bytes written at a position of the dictionaries with the
+		 * given ones, without deserializing them.
+		 */
+		private boolean isSerialized(int position, byte[] bytes) {
+			int[] cursor = { position };
+			if (getVarint(buffer, cursor) != bytes.length) {
+				return false;
+			} else {
+				for (int i = 0; i < bytes.length; i++) {
+					if (buffer.get(cursor[0] + i) != bytes[i]) {
+						return false;
+					} else {
+						// continue comparing
+					}
+				}
+				return true;
+			}
+		}
+
+		private int listPosition(int index) {
+			return listsPosition
+					+ (int) buffer.getLong(offsetsPosition + 8 * index);
+		}
+
+		@Override
+		public boolean add(Key key, Value value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean remove(Key key, Value value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Collection<Value> remove(Object key) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void clear() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return indexOf(key) >= 0;
+		}
+
+		@Override
+		public boolean containsCouple(Key key, Value value) {
+			int index = indexOf(key);
+			return index >= 0 && containsValue(listPosition(index), value);
+		}
+
+		/**
+		 * The value is serialized once, then compared with the serialized
+		 * values of the list, so none of them is deserialized.
+		 */
+		@SuppressWarnings("unchecked")
+		private boolean containsValue(int listPosition, Object value) {
+			byte[] bytes;
+			try {
+				bytes = valueSerializer.serialize((Value) value);
+			} catch (ClassCastException cause) {
+				return false;
+			}
+			int[] cursor = { listPosition };
+			int size = getVarint(buffer, cursor);
+			for (int i = 0; i < size; i++) {
+				int id = getVarint(buffer, cursor);
+				if (isSerialized(valuePosition(id), bytes)) {
+					return true;
+				} else {
+					// continue searching
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public int size() {
+			return keysCount;
+		}
+
+		@Override
+		public Collection<Value> getAll(Object key) {
+			int index = indexOf(key);
+			if (index < 0) {
+				return null;
+			} else {
+				int position = listPosition(index);
+				int[] cursor = { position };
+				int size = getVarint(buffer, cursor);
+				int firstId = cursor[0];
+				return new AbstractCollection<Value>() {
+
+					@Override
+					public Iterator<Value> iterator() {
+						int[] iteratorCursor = { firstId };
+						return new Iterator<Value>() {
+
+							private int remaining = size;
+
+							@Override
+							public boolean hasNext() {
+								return remaining > 0;
+							}
+
+							@Override
+							public Value next() {
+								if (remaining == 0) {
+									throw new NoSuchElementException();
+								} else {
+									remaining--;
+									return value(getVarint(buffer,
+											iteratorCursor));
+								}
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return size;
+					}
+
+					@Override
+					public boolean contains(Object value) {
+						return containsValue(position, value);
+					}
+				};
+			}
+		}
+
+		@Override
+		public Set<Key> keySet() {
+			return new AbstractSet<Key>() {
+
+				@Override
+				public Iterator<Key> iterator() {
+					return new Iterator<Key>() {
+
+						private int next = 0;
+
+						@Override
+						public boolean hasNext() {
+							return next < keysCount;
+						}
+
+						@Override
+						public Key next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							} else {
+								return key(next++);
+							}
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return keysCount;
+				}
+
+				@Override
+				public boolean contains(Object key) {
+					return containsKey(key);
+				}
+			};
+		}
+	}
+}
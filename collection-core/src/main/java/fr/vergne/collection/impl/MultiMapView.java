@@ -0,0 +1,223 @@
+package fr.vergne.collection.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Map.Entry;
+
+import fr.vergne.collection.MultiMap;
+
+/**
+ * A {@link MultiMapView} is a skeleton for the {@link MultiMap}s which do not
+ * store their values in {@link Collection}s, like adapters over dedicated
+ * structures. Only the key-level operations need to be implemented, the
+ * {@link Collection}-level ones being computed on demand from them:
+ * {@link #getAll(Object)} is expected to return a live view of the values of
+ * the key, or <code>null</code> if the key is not mapped.
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+@Deprecated
+public abstract class MultiMapView<Key, Value> implements MultiMap<Key, Value> {
+
+	@Override
+	public boolean addAll(Key key, Collection<Value> values) {
+		boolean isChanged = false;
+		for (Value value : values) {
+			isChanged |= add(key, value);
+		}
+		return isChanged;
+	}
+
+	@Override
+	public boolean removeAll(Key key, Collection<Value> values) {
+		boolean isChanged = false;
+		for (Value value : values) {
+			isChanged |= remove(key, value);
+		}
+		return isChanged;
+	}
+
+	@Override
+	public Collection<Value> replaceAll(Key key, Collection<Value> collection) {
+		Collection<Value> previous = remove(key);
+		addAll(key, collection);
+		return previous;
+	}
+
+	/**
+	 * The default implementation copies the values of the key before to
+	 * remove them, so the returned {@link Collection} remains valid.
+	 */
+	@Override
+	public Collection<Value> remove(Object key) {
+		Collection<Value> values = getAll(key);
+		if (values == null) {
+			return null;
+		} else {
+			Collection<Value> previous = new ArrayList<Value>(values);
+			values.clear();
+			return previous;
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return getAll(key) != null;
+	}
+
+	@Override
+	public boolean containsCollection(Collection<Value> collection) {
+		for (Collection<Value> values : collections()) {
+			if (values.size() == collection.size()
+					&& values.containsAll(collection)
+					&& collection.containsAll(values)) {
+				return true;
+			} else {
+				// continue searching
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return keySet().size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public Collection<Collection<Value>> collections() {
+		return new AbstractCollection<Collection<Value>>() {
+
+			@Override
+			public Iterator<Collection<Value>> iterator() {
+				Iterator<Key> keys = keySet().iterator();
+				return new Iterator<Collection<Value>>() {
+
+					@Override
+					public boolean hasNext() {
+						return keys.hasNext();
+					}
+
+					@Override
+					public Collection<Value> next() {
+						return getAll(keys.next());
+					}
+
+					@Override
+					public void remove() {
+						keys.remove();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return MultiMapView.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Set<Entry<Key, Collection<Value>>> entrySet() {
+		return new AbstractSet<Entry<Key, Collection<Value>>>() {
+
+			@Override
+			public Iterator<Entry<Key, Collection<Value>>> iterator() {
+				Iterator<Key> keys = keySet().iterator();
+				return new Iterator<Entry<Key, Collection<Value>>>() {
+
+					@Override
+					public boolean hasNext() {
+						return keys.hasNext();
+					}
+
+					@Override
+					public Entry<Key, Collection<Value>> next() {
+						Key key = keys.next();
+						return new AbstractMap.SimpleImmutableEntry<Key, Collection<Value>>(
+								key, getAll(key));
+					}
+
+					@Override
+					public void remove() {
+						keys.remove();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return MultiMapView.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Iterator<Entry<Key, Value>> iterator() {
+		return new Iterator<Entry<Key, Value>>() {
+
+			private final Iterator<Key> keysIterator = keySet().iterator();
+			private Iterator<Value> valuesIterator = Collections
+					.<Value> emptySet().iterator();
+			private Key key;
+
+			@Override
+			public boolean hasNext() {
+				while (!valuesIterator.hasNext()) {
+					if (keysIterator.hasNext()) {
+						key = keysIterator.next();
+						valuesIterator = getAll(key).iterator();
+					} else {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public Entry<Key, Value> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				} else {
+					return new AbstractMap.SimpleImmutableEntry<Key, Value>(
+							key, valuesIterator.next());
+				}
+			}
+
+			@Override
+			public void remove() {
+				valuesIterator.remove();
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("{");
+		for (Key key : keySet()) {
+			if (builder.length() > 1) {
+				builder.append(", ");
+			} else {
+				// first key
+			}
+			builder.append(key).append("=").append(getAll(key));
+		}
+		return builder.append("}").toString();
+	}
+}
@@ -0,0 +1,459 @@
+package fr.vergne.collection.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import fr.vergne.collection.MultiMap;
+
+/**
+ * <p>
+ * An {@link ObservableMultiMap} is a decorator which notifies listeners of
+ * each change of the decorated {@link MultiMap}, allowing to maintain derived
+ * structures (counts, inverse indexes, caches, etc.) incrementally. Each
+ * {@link Event} describes a single change: a couple added or removed, the
+ * values of a key replaced, or the {@link MultiMap} cleared. Only the actual
+ * changes are notified, so adding an existing couple to a set-based
+ * {@link MultiMap} does not produce any {@link Event}.
+ * </p>
+ *
+ * <p>
+ * The {@link Event}s are delivered by batches: an operation changing several
+ * couples, like {@link #addAll(Object, Collection)} or
+ * {@link #remove(Object)}, delivers all its {@link Event}s at once, and
+ * {@link #batch(Runnable)} allows to group several operations in a single
+ * delivery. By default, the listeners are notified in the thread which
+ * changes the {@link MultiMap}, before the operation returns. If an
+ * {@link Executor} is provided, the batches are delivered through it instead,
+ * one at a time and in the order of the changes, so slow listeners do not
+ * slow down the changes.
+ * </p>
+ *
+ * <p>
+ * A batch is always delivered to all the listeners, even if some of them
+ * throw an exception. Once all of them have been notified, the first
+ * exception is rethrown with the next ones as suppressed exceptions: to the
+ * thread changing the {@link MultiMap} for a synchronous delivery, or to the
+ * {@link Executor} otherwise, which reports it like for any failing task. In
+ * the latter case, the next batches are still delivered.
+ * </p>
+ *
+ * <p>
+ * The decorated {@link MultiMap} should not be modified directly, otherwise
+ * the listeners would miss some changes. Changes made through the views of
+ * this {@link ObservableMultiMap} are properly notified.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class ObservableMultiMap<Key, Value> extends ForwardingMultiMap<Key, Value> {
+
+	private final MultiMap<Key, Value> map;
+	private final Executor executor;
+	private final Collection<Consumer<? super List<Event<Key, Value>>>> listeners = new CopyOnWriteArrayList<Consumer<? super List<Event<Key, Value>>>>();
+	private final Queue<List<Event<Key, Value>>> queue = new ConcurrentLinkedQueue<List<Event<Key, Value>>>();
+	private final AtomicBoolean isDispatching = new AtomicBoolean(false);
+	private List<Event<Key, Value>> pending = new ArrayList<Event<Key, Value>>();
+	private int batchDepth = 0;
+
+	/**
+	 *
+	 * @param map
+	 *            the {@link MultiMap} to decorate
+	 * @param executor
+	 *            the {@link Executor} delivering the {@link Event}s,
+	 *            <code>null</code> to deliver them synchronously
+	 */
+	public ObservableMultiMap(MultiMap<Key, Value> map, Executor executor) {
+		this.map = map;
+		this.executor = executor;
+	}
+
+	/**
+	 * Create an {@link ObservableMultiMap} which delivers its {@link Event}s
+	 * synchronously.
+	 *
+	 * @param map
+	 *            the {@link MultiMap} to decorate
+	 */
+	public ObservableMultiMap(MultiMap<Key, Value> map) {
+		this(map, null);
+	}
+
+	/**
+	 *
+	 * @param listener
+	 *            the listener to notify with each batch of {@link Event}s
+	 */
+	public void addListener(Consumer<? super List<Event<Key, Value>>> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 *
+	 * @param listener
+	 *            the listener to stop notifying
+	 */
+	public void removeListener(
+			Consumer<? super List<Event<Key, Value>>> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Execute several changes and deliver all their {@link Event}s in a
+	 * single batch, once they are all done. Batches can be nested, in which
+	 * case the {@link Event}s are delivered at the end of the outermost one.
+	 *
+	 * @param changes
+	 *            the changes to apply to this {@link ObservableMultiMap}
+	 */
+	public void batch(Runnable changes) {
+		batchDepth++;
+		try {
+			changes.run();
+		} finally {
+			batchDepth--;
+			if (batchDepth == 0 && !pending.isEmpty()) {
+				List<Event<Key, Value>> events = Collections
+						.unmodifiableList(pending);
+				pending = new ArrayList<Event<Key, Value>>();
+				publish(events);
+			} else {
+				// wait for the end of the outermost batch
+			}
+		}
+	}
+
+	/*
+	 * NOTIFICATION
+	 */
+
+	private boolean isObserved() {
+		return !listeners.isEmpty();
+	}
+
+	private void notify(Event<Key, Value> event) {
+		if (batchDepth > 0) {
+			pending.add(event);
+		} else {
+			publish(Collections.singletonList(event));
+		}
+	}
+
+	private void added(Key key, Value value) {
+		if (isObserved()) {
+			notify(new Event<Key, Value>(Event.Type.ADDED, key, value, null,
+					null));
+		} else {
+			// nobody to notify
+		}
+	}
+
+	private void removed(Key key, Value value) {
+		if (isObserved()) {
+			notify(new Event<Key, Value>(Event.Type.REMOVED, key, value, null,
+					null));
+		} else {
+			// nobody to notify
+		}
+	}
+
+	private void publish(List<Event<Key, Value>> events) {
+		if (executor == null) {
+			deliver(events);
+		} else {
+			queue.add(events);
+			scheduleDispatch();
+		}
+	}
+
+	private void deliver(List<Event<Key, Value>> events) {
+		RuntimeException failure = null;
+		for (Consumer<? super List<Event<Key, Value>>> listener : listeners) {
+			try {
+				listener.accept(events);
+			} catch (RuntimeException cause) {
+				if (failure == null) {
+					failure = cause;
+				} else {
+					failure.addSuppressed(cause);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		} else {
+			// all listeners notified
+		}
+	}
+
+	/**
+	 * A single dispatch runs at a time, so the batches are delivered in order.
+	 * The check after releasing the flag catches the batches queued while the
+	 * dispatch was finishing. If the {@link Executor} rejects the dispatch,
+	 * the flag is released and the batches remain queued for the next one. If
+	 * a listener fails, the flag is released too and the remaining batches are
+	 * delivered by another dispatch.
+	 */
+	private void scheduleDispatch() {
+		if (isDispatching.compareAndSet(false, true)) {
+			try {
+				executor.execute(() -> {
+					try {
+						List<Event<Key, Value>> events;
+						while ((events = queue.poll()) != null) {
+							deliver(events);
+						}
+					} finally {
+						isDispatching.set(false);
+						if (!queue.isEmpty()) {
+							scheduleDispatch();
+						} else {
+							// all delivered
+						}
+					}
+				});
+			} catch (RuntimeException cause) {
+				isDispatching.set(false);
+				throw cause;
+			}
+		} else {
+			// the running dispatch will deliver it
+		}
+	}
+
+	/*
+	 * MULTIMAP
+	 */
+
+	@Override
+	protected MultiMap<Key, Value> delegate() {
+		return map;
+	}
+
+	@Override
+	protected void onRemoved(Key key, Value value) {
+		removed(key, value);
+	}
+
+	@Override
+	protected void onRemoved(Key key, Collection<Value> values) {
+		batch(() -> {
+			for (Value value : values) {
+				removed(key, value);
+			}
+		});
+	}
+
+	@Override
+	public boolean add(Key key, Value value) {
+		if (map.add(key, value)) {
+			added(key, value);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public boolean addAll(Key key, Collection<Value> values) {
+		boolean[] isChanged = { false };
+		batch(() -> isChanged[0] = super.addAll(key, values));
+		return isChanged[0];
+	}
+
+	@Override
+	public boolean remove(Key key, Value value) {
+		if (map.remove(key, value)) {
+			removed(key, value);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public boolean removeAll(Key key, Collection<Value> values) {
+		boolean[] isChanged = { false };
+		batch(() -> isChanged[0] = super.removeAll(key, values));
+		return isChanged[0];
+	}
+
+	@Override
+	public Collection<Value> remove(Object key) {
+		Collection<Value> values = map.remove(key);
+		if (values != null && isObserved()) {
+			@SuppressWarnings("unchecked")
+			Key castedKey = (Key) key;
+			batch(() -> {
+				for (Value value : values) {
+					removed(castedKey, value);
+				}
+			});
+		} else {
+			// nothing to notify
+		}
+		return values;
+	}
+
+	@Override
+	public Collection<Value> replaceAll(Key key, Collection<Value> collection) {
+		Collection<Value> previous = map.replaceAll(key, collection);
+		if (isObserved()) {
+			Collection<Value> current = map.getAll(key);
+			Collection<Value> previousSnapshot = snapshot(previous);
+			Collection<Value> currentSnapshot = snapshot(current);
+			if (isSameContent(previousSnapshot, currentSnapshot, current)) {
+				// nothing changed
+			} else {
+				notify(new Event<Key, Value>(Event.Type.REPLACED, key, null,
+						previousSnapshot, currentSnapshot));
+			}
+		} else {
+			// nobody to notify
+		}
+		return previous;
+	}
+
+	/**
+	 * The values are compared like in the {@link Collection}s of the decorated
+	 * {@link MultiMap}: regardless of their order if they are {@link Set}s,
+	 * in order otherwise.
+	 */
+	private static <Value> boolean isSameContent(Collection<Value> previous,
+			Collection<Value> current, Collection<Value> currentValues) {
+		if (currentValues instanceof Set) {
+			return new HashSet<Value>(previous).equals(new HashSet<Value>(
+					current));
+		} else {
+			return new ArrayList<Value>(previous).equals(new ArrayList<Value>(
+					current));
+		}
+	}
+
+	private static <Value> Collection<Value> snapshot(Collection<Value> values) {
+		return values == null ? Collections.<Value> emptyList() : Collections
+				.unmodifiableCollection(new ArrayList<Value>(values));
+	}
+
+	@Override
+	public void clear() {
+		if (map.isEmpty()) {
+			// nothing to clear
+		} else {
+			map.clear();
+			if (isObserved()) {
+				notify(new Event<Key, Value>(Event.Type.CLEARED, null, null,
+						null, null));
+			} else {
+				// nobody to notify
+			}
+		}
+	}
+
+	/**
+	 * An {@link Event} describes a single change of an
+	 * {@link ObservableMultiMap}. Depending on its {@link Type}, only some of
+	 * its fields are relevant:
+	 * <ul>
+	 * <li>{@link Type#ADDED} and {@link Type#REMOVED} provide the key and the
+	 * value of the couple</li>
+	 * <li>{@link Type#REPLACED} provides the key with its previous and new
+	 * values</li>
+	 * <li>{@link Type#CLEARED} provides nothing, all the couples being removed
+	 * </li>
+	 * </ul>
+	 *
+	 * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+	 *
+	 * @param <Key>
+	 * @param <Value>
+	 */
+	public static class Event<Key, Value> {
+
+		public static enum Type {
+			ADDED, REMOVED, REPLACED, CLEARED
+		}
+
+		private final Type type;
+		private final Key key;
+		private final Value value;
+		private final Collection<Value> previousValues;
+		private final Collection<Value> newValues;
+
+		private Event(Type type, Key key, Value value,
+				Collection<Value> previousValues, Collection<Value> newValues) {
+			this.type = type;
+			this.key = key;
+			this.value = value;
+			this.previousValues = previousValues;
+			this.newValues = newValues;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		/**
+		 *
+		 * @return the key changed, <code>null</code> for {@link Type#CLEARED}
+		 */
+		public Key getKey() {
+			return key;
+		}
+
+		/**
+		 *
+		 * @return the value added or removed, <code>null</code> for the other
+		 *         {@link Type}s
+		 */
+		public Value getValue() {
+			return value;
+		}
+
+		/**
+		 *
+		 * @return the values of the key before {@link Type#REPLACED},
+		 *         <code>null</code> for the other {@link Type}s
+		 */
+		public Collection<Value> getPreviousValues() {
+			return previousValues;
+		}
+
+		/**
+		 *
+		 * @return the values of the key after {@link Type#REPLACED},
+		 *         <code>null</code> for the other {@link Type}s
+		 */
+		public Collection<Value> getNewValues() {
+			return newValues;
+		}
+
+		@Override
+		public String toString() {
+			switch (type) {
+			case ADDED:
+			case REMOVED:
+				return type + "(" + key + ", " + value + ")";
+			case REPLACED:
+				return type + "(" + key + ", " + previousValues + " -> "
+						+ newValues + ")";
+			default:
+				return type.toString();
+			}
+		}
+	}
+}
@@ -0,0 +1,618 @@
+package fr.vergne.collection.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import fr.vergne.collection.util.Equivalence;
+
+/**
+ * <p>
+ * An {@link OpenHashMap} is a {@link Map} using open addressing with linear
+ * probing: the keys, values and hashes are stored in parallel arrays, without
+ * any node per entry. The keys are compared through an {@link Equivalence},
+ * and the hash of each key is stored with it, so the hash of a stored key is
+ * never computed again, and the {@link Equivalence} is checked only for keys
+ * having the same hash.
+ * </p>
+ *
+ * <p>
+ * The removals shift back the next entries instead of leaving tombstones, so
+ * the lookups never go through removed entries. The iterators go through the
+ * table backward, which allows them to remove entries: the rare entries moved
+ * from the part not visited yet to the visited part are remembered to be
+ * provided at the end.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <K>
+ * @param <V>
+ */
+class OpenHashMap<K, V> extends AbstractMap<K, V> {
+
+	private static final Object NULL_KEY = new Object();
+	private static final int MIN_CAPACITY = 8;
+
+	private final Equivalence<? super K> equivalence;
+	/**
+	 * <code>null</code> for a free position, {@link #NULL_KEY} for the
+	 * <code>null</code> key.
+	 */
+	private Object[] keys;
+	private Object[] values;
+	private int[] hashes;
+	private int size = 0;
+	private int modCount = 0;
+
+	public OpenHashMap(Equivalence<? super K> equivalence, int expectedSize) {
+		this.equivalence = equivalence;
+		allocate(capacityFor(expectedSize));
+	}
+
+	public OpenHashMap(Equivalence<? super K> equivalence) {
+		this(equivalence, 0);
+	}
+
+	public Equivalence<? super K> getEquivalence() {
+		return equivalence;
+	}
+
+	/**
+	 *
+	 * @param key
+	 *            the key to hash
+	 * @return the hash of the key, as computed by the {@link Equivalence}
+	 */
+	@SuppressWarnings("unchecked")
+	public int hashOf(Object key) {
+		return equivalence.hash((K) key);
+	}
+
+	private static int capacityFor(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize + expectedSize / 3 + 1) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private void allocate(int capacity) {
+		keys = new Object[capacity];
+		values = new Object[capacity];
+		hashes = new int[capacity];
+	}
+
+	private static int spread(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private static Object mask(Object key) {
+		return key == null ? NULL_KEY : key;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K> K unmask(Object key) {
+		return key == NULL_KEY ? null : (K) key;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int indexOf(Object key) {
+		int hash = equivalence.hash((K) key);
+		int mask = keys.length - 1;
+		int index = spread(hash) & mask;
+		Object stored;
+		while ((stored = keys[index]) != null) {
+			if (hashes[index] == hash) {
+				K candidate = unmask(stored);
+				if (candidate == key
+						|| equivalence.equivalent(candidate, (K) key)) {
+					return index;
+				} else {
+					// continue searching
+				}
+			} else {
+				// continue searching
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void resize(int capacity) {
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		int[] oldHashes = hashes;
+		allocate(capacity);
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == null) {
+				// free position
+			} else {
+				int index = spread(oldHashes[i]) & mask;
+				while (keys[index] != null) {
+					index = (index + 1) & mask;
+				}
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+				hashes[index] = oldHashes[i];
+			}
+		}
+	}
+
+	/**
+	 * Remove the entry at the given position and shift back the next entries
+	 * which can be closer to their ideal position.
+	 */
+	private void delete(int index, TableIterator<?> iterator) {
+		int mask = keys.length - 1;
+		int free = index;
+		int current = index;
+		while (true) {
+			current = (current + 1) & mask;
+			Object key = keys[current];
+			if (key == null) {
+				break;
+			} else {
+				int home = spread(hashes[current]) & mask;
+				if (current > free ? home <= free || home > current
+						: home <= free && home > current) {
+					keys[free] = key;
+					values[free] = values[current];
+					hashes[free] = hashes[current];
+					if (iterator != null) {
+						iterator.moved(current, free);
+					} else {
+						// nobody to inform
+					}
+					free = current;
+				} else {
+					// already at the best position
+				}
+			}
+		}
+		keys[free] = null;
+		values[free] = null;
+		size--;
+		modCount++;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key) {
+		int index = indexOf(key);
+		return index < 0 ? null : (V) values[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V getOrDefault(Object key, V defaultValue) {
+		int index = indexOf(key);
+		return index < 0 ? defaultValue : (V) values[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V put(K key, V value) {
+		int hash = equivalence.hash(key);
+		int mask = keys.length - 1;
+		int index = spread(hash) & mask;
+		Object stored;
+		while ((stored = keys[index]) != null) {
+			if (hashes[index] == hash) {
+				K candidate = unmask(stored);
+				if (candidate == key || equivalence.equivalent(candidate, key)) {
+					V previous = (V) values[index];
+					values[index] = value;
+					return previous;
+				} else {
+					// continue searching
+				}
+			} else {
+				// continue searching
+			}
+			index = (index + 1) & mask;
+		}
+		keys[index] = mask(key);
+		values[index] = value;
+		hashes[index] = hash;
+		size++;
+		modCount++;
+		if (size + size / 3 >= keys.length) {
+			resize(keys.length << 1);
+		} else {
+			// enough space
+		}
+		return null;
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> map) {
+		int capacity = capacityFor(size + map.size());
+		if (capacity > keys.length) {
+			resize(capacity);
+		} else {
+			// enough space
+		}
+		super.putAll(map);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V remove(Object key) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		} else {
+			V previous = (V) values[index];
+			delete(index, null);
+			return previous;
+		}
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		int index = indexOf(key);
+		if (index >= 0 && Objects.equals(values[index], value)) {
+			delete(index, null);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(keys, null);
+			Arrays.fill(values, null);
+			size = 0;
+			modCount++;
+		} else {
+			// already empty
+		}
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return new AbstractSet<K>() {
+
+			@Override
+			public Iterator<K> iterator() {
+				return new TableIterator<K>(index -> unmask(keys[index]));
+			}
+
+			@Override
+			public Spliterator<K> spliterator() {
+				return new TableSpliterator<K>(index -> unmask(keys[index]),
+						0, keys.length);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+
+			@Override
+			public boolean remove(Object key) {
+				int index = indexOf(key);
+				if (index < 0) {
+					return false;
+				} else {
+					delete(index, null);
+					return true;
+				}
+			}
+
+			@Override
+			public void clear() {
+				OpenHashMap.this.clear();
+			}
+		};
+	}
+
+	@Override
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public Iterator<V> iterator() {
+				return new TableIterator<V>(index -> (V) values[index]);
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public Spliterator<V> spliterator() {
+				return new TableSpliterator<V>(index -> (V) values[index], 0,
+						keys.length);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public void clear() {
+				OpenHashMap.this.clear();
+			}
+		};
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return new AbstractSet<Entry<K, V>>() {
+
+			@Override
+			public Iterator<Entry<K, V>> iterator() {
+				return new TableIterator<Entry<K, V>>(TableEntry::new);
+			}
+
+			@Override
+			public Spliterator<Entry<K, V>> spliterator() {
+				return new TableSpliterator<Entry<K, V>>(TableEntry::new, 0,
+						keys.length);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public boolean contains(Object object) {
+				if (object instanceof Entry) {
+					Entry<?, ?> entry = (Entry<?, ?>) object;
+					int index = indexOf(entry.getKey());
+					return index >= 0
+							&& Objects.equals(values[index], entry.getValue());
+				} else {
+					return false;
+				}
+			}
+
+			@Override
+			public boolean remove(Object object) {
+				if (object instanceof Entry) {
+					Entry<?, ?> entry = (Entry<?, ?>) object;
+					return OpenHashMap.this.remove(entry.getKey(),
+							entry.getValue());
+				} else {
+					return false;
+				}
+			}
+
+			@Override
+			public void clear() {
+				OpenHashMap.this.clear();
+			}
+		};
+	}
+
+	/**
+	 * An {@link Entry} reading and writing directly in the table, as long as
+	 * its key remains at the same position.
+	 */
+	private class TableEntry implements Entry<K, V> {
+
+		private final int index;
+		private final Object key;
+
+		public TableEntry(int index) {
+			this.index = index;
+			this.key = keys[index];
+		}
+
+		@Override
+		public K getKey() {
+			return unmask(key);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public V getValue() {
+			return keys[index] == key ? (V) values[index] : get(getKey());
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public V setValue(V value) {
+			if (keys[index] == key) {
+				V previous = (V) values[index];
+				values[index] = value;
+				return previous;
+			} else {
+				return put(getKey(), value);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof Entry) {
+				Entry<?, ?> entry = (Entry<?, ?>) obj;
+				return Objects.equals(getKey(), entry.getKey())
+						&& Objects.equals(getValue(), entry.getValue());
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+
+	/**
+	 * The positions at and after {@link #index} are already visited. An
+	 * entry moved by a removal from a position not visited yet to a visited
+	 * one is remembered in {@link #wrapped}, to be provided once the whole
+	 * table has been visited.
+	 */
+	private class TableIterator<T> implements Iterator<T> {
+
+		private final IntFunction<T> reader;
+		private int index = keys.length;
+		private int last = -1;
+		private List<Object> wrapped;
+		private int wrappedIndex = 0;
+		private boolean isRemovable = false;
+		private int expectedModCount = modCount;
+
+		public TableIterator(IntFunction<T> reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (index > 0 && keys[index - 1] == null) {
+				index--;
+			}
+			return index > 0 || wrapped != null
+					&& wrappedIndex < wrapped.size();
+		}
+
+		@Override
+		public T next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			} else if (!hasNext()) {
+				throw new NoSuchElementException();
+			} else if (index > 0) {
+				index--;
+				last = index;
+			} else {
+				last = indexOf(unmask(wrapped.get(wrappedIndex++)));
+			}
+			isRemovable = true;
+			return reader.apply(last);
+		}
+
+		@Override
+		public void remove() {
+			if (!isRemovable) {
+				throw new IllegalStateException();
+			} else if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			} else {
+				delete(last, this);
+				expectedModCount = modCount;
+				isRemovable = false;
+			}
+		}
+
+		private void moved(int from, int to) {
+			if (from < index && to >= index) {
+				if (wrapped == null) {
+					wrapped = new ArrayList<Object>();
+				} else {
+					// already created
+				}
+				wrapped.add(keys[to]);
+			} else {
+				// remains on the same side
+			}
+		}
+	}
+
+	private class TableSpliterator<T> implements Spliterator<T> {
+
+		private final IntFunction<T> reader;
+		private int origin;
+		private final int fence;
+
+		public TableSpliterator(IntFunction<T> reader, int origin, int fence) {
+			this.reader = reader;
+			this.origin = origin;
+			this.fence = fence;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			while (origin < fence) {
+				int index = origin++;
+				if (keys[index] != null) {
+					action.accept(reader.apply(index));
+					return true;
+				} else {
+					// continue searching
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super T> action) {
+			for (; origin < fence; origin++) {
+				if (keys[origin] != null) {
+					action.accept(reader.apply(origin));
+				} else {
+					// free position
+				}
+			}
+		}
+
+		@Override
+		public Spliterator<T> trySplit() {
+			int middle = (origin + fence) >>> 1;
+			if (middle <= origin) {
+				return null;
+			} else {
+				Spliterator<T> prefix = new TableSpliterator<T>(reader,
+						origin, middle);
+				origin = middle;
+				return prefix;
+			}
+		}
+
+		@Override
+		public long estimateSize() {
+			return (long) size * (fence - origin) / keys.length;
+		}
+
+		@Override
+		public int characteristics() {
+			return Spliterator.DISTINCT;
+		}
+	}
+}
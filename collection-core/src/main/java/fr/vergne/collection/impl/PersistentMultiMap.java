@@ -0,0 +1,1168 @@
+package fr.vergne.collection.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.util.Serializer;
+
+/**
+ * <p>
+ * A {@link PersistentMultiMap} is a {@link MultiMap} stored on the disk rather
+ * than in the heap. Like an {@link HashMultiMap}, it allows at most one
+ * instance for each (key, value). It uses two files in a given directory:
+ * </p>
+ * <ul>
+ * <li>an append-only log, where each change is written as a new record
+ * pointing to the previous record of the same key,</li>
+ * <li>an index, which is an open-addressing hash table mapping each key to
+ * its last record. It is accessed through
+ * {@link FileChannel#map(MapMode, long, long)}, so it lives off-heap and
+ * nothing needs to be loaded when the {@link PersistentMultiMap} is reopened.
+ * </li>
+ * </ul>
+ *
+ * <p>
+ * Keys and values are converted to bytes through {@link Serializer}s, and they
+ * are compared through these bytes: the {@link Serializer}s must produce the
+ * same bytes for equal objects. The values of a key are read from the log each
+ * time they are requested, so the {@link Collection}s returned by
+ * {@link #getAll(Object)} are live views which deserialize the values on
+ * demand.
+ * </p>
+ *
+ * <p>
+ * Removals only append records, so the log accumulates dead records. When they
+ * represent more than half of the log, a compaction is started in a background
+ * thread: the live couples are rewritten in new files which then replace the
+ * current ones. The rewrite does not block the other threads: the keys changed
+ * meanwhile are rewritten again once the new files are in place. It can also
+ * be requested with {@link #compact()} or {@link #compactInBackground()}. The
+ * methods of a {@link PersistentMultiMap}
+ * are synchronized, so it can be used by several threads. The iterators are
+ * fail-fast: they throw a {@link ConcurrentModificationException} if the index
+ * is reorganised (compaction, growth, clearing) while iterating.
+ * </p>
+ *
+ * <p>
+ * Changes are written to the files immediately, but the operating system may
+ * delay their actual writing: use {@link #flush()} or {@link #close()} to
+ * force them.
+ * </p>
+ *
+ * <p>
+ * The index is truncated and replaced while it is still mapped in memory,
+ * which requires the POSIX file semantics: this class is not supported on
+ * Windows, where such files can be neither truncated nor renamed over.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class PersistentMultiMap<Key, Value> extends MultiMapView<Key, Value>
+		implements Closeable {
+
+	private static final long LOG_MAGIC = 0x4D4D4C4F47000002L;
+	private static final int LOG_HEADER_SIZE = 16;
+	private static final int INDEX_MAGIC = 0x4D4D4958;
+	private static final int VERSION = 2;
+	private static final int MIN_CAPACITY = 16;
+	private static final long MIN_RECORDS_FOR_COMPACTION = 1024;
+
+	private static final int MAGIC_POSITION = 0;
+	private static final int VERSION_POSITION = 4;
+	private static final int CAPACITY_POSITION = 8;
+	private static final int KEYS_POSITION = 12;
+	private static final int USED_POSITION = 16;
+	private static final int RECORDS_POSITION = 24;
+	private static final int DEAD_POSITION = 32;
+	private static final int LOG_LENGTH_POSITION = 40;
+	private static final int STAMP_POSITION = 48;
+	private static final int HEADER_SIZE = 56;
+
+	/**
+	 * A slot stores the position of the key record + 1 (0 for free slots), the
+	 * position of the last record of the key, the number of values, the hash
+	 * of the key and the fingerprint of the values added since the key is
+	 * empty.
+	 */
+	private static final int SLOT_SIZE = 32;
+
+	private static final byte KEY = 0;
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	/**
+	 * A record stores its type, the position of the previous record of the
+	 * key, the hash and length of its bytes, then its bytes.
+	 */
+	private static final int RECORD_HEADER_SIZE = 17;
+
+	private final Path logPath;
+	private final Path indexPath;
+	private final Serializer<Key> keySerializer;
+	private final Serializer<Value> valueSerializer;
+	private final ExecutorService compactor;
+	private FileChannel log;
+	private FileChannel indexChannel;
+	private MappedByteBuffer index;
+	private final ByteBuffer recordHeader = ByteBuffer
+			.allocate(RECORD_HEADER_SIZE);
+	private boolean isCompactionScheduled = false;
+	private int generation = 0;
+	/**
+	 * Incremented each time the files are replaced or cleared, so a background
+	 * compaction knows when its snapshot is obsolete.
+	 */
+	private volatile int epoch = 0;
+	/**
+	 * The key records of the keys changed during a background compaction,
+	 * <code>null</code> if no background compaction is running.
+	 */
+	private Set<Long> touchedKeys = null;
+	/**
+	 * The failure of a background compaction, not yet thrown by
+	 * {@link #flush()} or {@link #close()}.
+	 */
+	private Exception compactionFailure = null;
+
+	/**
+	 * Open the {@link PersistentMultiMap} stored in a directory, or create it
+	 * if the directory does not contain any.
+	 *
+	 * @param directory
+	 *            the directory where the files are stored
+	 * @param keySerializer
+	 *            the {@link Serializer} of the keys
+	 * @param valueSerializer
+	 *            the {@link Serializer} of the values
+	 * @throws IOException
+	 *             if the files cannot be opened
+	 */
+	public PersistentMultiMap(Path directory, Serializer<Key> keySerializer,
+			Serializer<Value> valueSerializer) throws IOException {
+		Files.createDirectories(directory);
+		this.logPath = directory.resolve("multimap.log");
+		this.indexPath = directory.resolve("multimap.idx");
+		this.keySerializer = keySerializer;
+		this.valueSerializer = valueSerializer;
+		this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "MultiMap compaction");
+			thread.setDaemon(true);
+			return thread;
+		});
+		open();
+	}
+
+	private Path compactionPath(Path path) {
+		return path.resolveSibling(path.getFileName() + ".compact");
+	}
+
+	private Path growthPath(Path path) {
+		return path.resolveSibling(path.getFileName() + ".grow");
+	}
+
+	private void open() throws IOException {
+		log = FileChannel.open(logPath, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (log.size() == 0) {
+			Files.deleteIfExists(compactionPath(logPath));
+			Files.deleteIfExists(compactionPath(indexPath));
+			Files.deleteIfExists(growthPath(indexPath));
+			Files.deleteIfExists(indexPath);
+			long stamp = new Random().nextLong();
+			writeLogHeader(log, stamp);
+			indexChannel = FileChannel.open(indexPath,
+					StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			index = createIndex(indexChannel, MIN_CAPACITY, stamp);
+		} else {
+			ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+			readFully(log, header, 0);
+			if (header.getLong(0) != LOG_MAGIC) {
+				throw new IOException(logPath + " is not a MultiMap log");
+			} else {
+				long stamp = header.getLong(8);
+				Path compactedIndex = compactionPath(indexPath);
+				if (Files.exists(compactedIndex)
+						&& readStamp(compactedIndex) == stamp) {
+					// compaction interrupted after the log replacement
+					Files.move(compactedIndex, indexPath,
+							StandardCopyOption.REPLACE_EXISTING);
+				} else {
+					Files.deleteIfExists(compactedIndex);
+				}
+				Files.deleteIfExists(compactionPath(logPath));
+				Files.deleteIfExists(growthPath(indexPath));
+				indexChannel = FileChannel.open(indexPath,
+						StandardOpenOption.READ, StandardOpenOption.WRITE);
+				index = indexChannel.map(MapMode.READ_WRITE, 0,
+						indexChannel.size());
+				if (index.getInt(MAGIC_POSITION) != INDEX_MAGIC
+						|| index.getInt(VERSION_POSITION) != VERSION) {
+					throw new IOException(indexPath
+							+ " is not a MultiMap index");
+				} else if (index.getLong(STAMP_POSITION) != stamp) {
+					throw new IOException(indexPath + " does not index "
+							+ logPath);
+				} else {
+					// ignore any incomplete record
+					log.truncate(index.getLong(LOG_LENGTH_POSITION));
+				}
+			}
+		}
+	}
+
+	private static long readStamp(Path indexPath) throws IOException {
+		try (FileChannel channel = FileChannel.open(indexPath,
+				StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(channel, header, 0);
+			return header.getLong(STAMP_POSITION);
+		} catch (IOException cause) {
+			return 0;
+		}
+	}
+
+	private static void writeLogHeader(FileChannel log, long stamp)
+			throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+		header.putLong(LOG_MAGIC).putLong(stamp).flip();
+		writeFully(log, header, 0);
+	}
+
+	private static MappedByteBuffer createIndex(FileChannel channel,
+			int capacity, long stamp) throws IOException {
+		channel.truncate(0);
+		MappedByteBuffer index = channel.map(MapMode.READ_WRITE, 0,
+				HEADER_SIZE + (long) capacity * SLOT_SIZE);
+		index.putInt(MAGIC_POSITION, INDEX_MAGIC);
+		index.putInt(VERSION_POSITION, VERSION);
+		index.putInt(CAPACITY_POSITION, capacity);
+		index.putLong(LOG_LENGTH_POSITION, LOG_HEADER_SIZE);
+		index.putLong(STAMP_POSITION, stamp);
+		return index;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new IOException("Unexpected end of file");
+			} else {
+				// continue reading
+			}
+		}
+		buffer.flip();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	/*
+	 * LOG RECORDS
+	 */
+
+	private static class Record {
+		final byte type;
+		final long previous;
+		final byte[] bytes;
+
+		Record(byte type, long previous, byte[] bytes) {
+			this.type = type;
+			this.previous = previous;
+			this.bytes = bytes;
+		}
+	}
+
+	private Record read(FileChannel log, long position) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		readFully(log, header, position);
+		byte type = header.get();
+		long previous = header.getLong();
+		header.getInt(); // skip the hash
+		byte[] bytes = new byte[header.getInt()];
+		readFully(log, ByteBuffer.wrap(bytes), position + RECORD_HEADER_SIZE);
+		return new Record(type, previous, bytes);
+	}
+
+	private Record read(long position) {
+		try {
+			return read(log, position);
+		} catch (IOException cause) {
+			throw new UncheckedIOException(cause);
+		}
+	}
+
+	private static long append(FileChannel log, MappedByteBuffer index,
+			byte type, long previous, byte[] bytes) throws IOException {
+		long position = index.getLong(LOG_LENGTH_POSITION);
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE
+				+ bytes.length);
+		buffer.put(type).putLong(previous).putInt(hash(bytes))
+				.putInt(bytes.length).put(bytes).flip();
+		writeFully(log, buffer, position);
+		index.putLong(LOG_LENGTH_POSITION, position + buffer.limit());
+		index.putLong(RECORDS_POSITION, index.getLong(RECORDS_POSITION) + 1);
+		return position;
+	}
+
+	private long append(byte type, long previous, byte[] bytes) {
+		try {
+			return append(log, index, type, previous, bytes);
+		} catch (IOException cause) {
+			throw new UncheckedIOException(cause);
+		}
+	}
+
+	/*
+	 * INDEX SLOTS
+	 */
+
+	private static int hash(byte[] bytes) {
+		int hash = Arrays.hashCode(bytes);
+		return hash ^ (hash >>> 16);
+	}
+
+	private int capacity() {
+		return index.getInt(CAPACITY_POSITION);
+	}
+
+	private static int position(int slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	private static long keyRecordOf(ByteBuffer index, int slot) {
+		return index.getLong(position(slot)) - 1;
+	}
+
+	private static long headOf(ByteBuffer index, int slot) {
+		return index.getLong(position(slot) + 8);
+	}
+
+	private static int countOf(ByteBuffer index, int slot) {
+		return index.getInt(position(slot) + 16);
+	}
+
+	private long keyRecordOf(int slot) {
+		return keyRecordOf(index, slot);
+	}
+
+	private long headOf(int slot) {
+		return headOf(index, slot);
+	}
+
+	private int countOf(int slot) {
+		return countOf(index, slot);
+	}
+
+	private long fingerprintOf(int slot) {
+		return index.getLong(position(slot) + 24);
+	}
+
+	/**
+	 * @return the bits set by a value in the fingerprint of its key, so a
+	 *         value whose bits are not all set is known to be absent
+	 */
+	private static long fingerprint(int valueHash) {
+		return (1L << valueHash) | (1L << (valueHash >>> 6));
+	}
+
+	private static void writeSlot(MappedByteBuffer index, int slot,
+			long keyRecord, long head, int count, int hash, long fingerprint) {
+		int position = position(slot);
+		index.putLong(position, keyRecord + 1);
+		index.putLong(position + 8, head);
+		index.putInt(position + 16, count);
+		index.putInt(position + 20, hash);
+		index.putLong(position + 24, fingerprint);
+	}
+
+	private void updateSlot(int slot, long head, int count) {
+		int previousCount = countOf(slot);
+		index.putLong(position(slot) + 8, head);
+		index.putInt(position(slot) + 16, count);
+		if (count == 0) {
+			index.putLong(position(slot) + 24, 0);
+		} else {
+			// the fingerprint is only extended by the additions
+		}
+		if (touchedKeys != null) {
+			touchedKeys.add(keyRecordOf(slot));
+		} else {
+			// no compaction to notify
+		}
+		if (previousCount == 0 && count > 0) {
+			index.putInt(KEYS_POSITION, index.getInt(KEYS_POSITION) + 1);
+		} else if (previousCount > 0 && count == 0) {
+			index.putInt(KEYS_POSITION, index.getInt(KEYS_POSITION) - 1);
+		} else {
+			// same number of keys
+		}
+	}
+
+	/**
+	 * @return the slot of the key, or -(slot + 1) for the free slot where it
+	 *         should be inserted
+	 */
+	private int findSlot(byte[] keyBytes, int hash) {
+		int mask = capacity() - 1;
+		int slot = hash & mask;
+		while (keyRecordOf(slot) >= 0) {
+			if (index.getInt(position(slot) + 20) == hash
+					&& Arrays.equals(read(keyRecordOf(slot)).bytes, keyBytes)) {
+				return slot;
+			} else {
+				slot = (slot + 1) & mask;
+			}
+		}
+		return -(slot + 1);
+	}
+
+	private int findLiveSlot(Object key) {
+		byte[] keyBytes = serializeKey(key);
+		if (keyBytes == null) {
+			return -1;
+		} else {
+			int slot = findSlot(keyBytes, hash(keyBytes));
+			return slot >= 0 && countOf(slot) > 0 ? slot : -1;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private byte[] serializeKey(Object key) {
+		try {
+			return keySerializer.serialize((Key) key);
+		} catch (ClassCastException cause) {
+			return null;
+		}
+	}
+
+	private void grow() {
+		try {
+			int capacity = capacity() * 2;
+			Path path = growthPath(indexPath);
+			FileChannel channel = FileChannel.open(path,
+					StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			MappedByteBuffer grown = createIndex(channel, capacity,
+					index.getLong(STAMP_POSITION));
+			int mask = capacity - 1;
+			for (int slot = 0; slot < capacity(); slot++) {
+				if (keyRecordOf(slot) >= 0) {
+					int hash = index.getInt(position(slot) + 20);
+					int newSlot = hash & mask;
+					while (grown.getLong(position(newSlot)) != 0) {
+						newSlot = (newSlot + 1) & mask;
+					}
+					writeSlot(grown, newSlot, keyRecordOf(slot),
+							headOf(slot), countOf(slot), hash,
+							fingerprintOf(slot));
+				} else {
+					// free slot
+				}
+			}
+			for (int position : new int[] { KEYS_POSITION, USED_POSITION }) {
+				grown.putInt(position, index.getInt(position));
+			}
+			for (int position : new int[] { RECORDS_POSITION, DEAD_POSITION,
+					LOG_LENGTH_POSITION }) {
+				grown.putLong(position, index.getLong(position));
+			}
+			grown.force();
+			channel.close();
+			indexChannel.close();
+			Files.move(path, indexPath, StandardCopyOption.REPLACE_EXISTING);
+			indexChannel = FileChannel.open(indexPath,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			index = indexChannel.map(MapMode.READ_WRITE, 0,
+					indexChannel.size());
+			generation++;
+		} catch (IOException cause) {
+			throw new UncheckedIOException(cause);
+		}
+	}
+
+	/**
+	 * @return the live values of the slot, from the oldest to the newest
+	 */
+	private List<byte[]> liveValues(int slot) {
+		try {
+			return liveValues(log, keyRecordOf(slot), headOf(slot));
+		} catch (IOException cause) {
+			throw new UncheckedIOException(cause);
+		}
+	}
+
+	private List<byte[]> liveValues(FileChannel log, long keyRecord, long head)
+			throws IOException {
+		List<byte[]> values = new ArrayList<byte[]>();
+		Set<ByteBuffer> seen = new HashSet<ByteBuffer>();
+		for (long position = head; position != keyRecord;) {
+			Record record = read(log, position);
+			if (seen.add(ByteBuffer.wrap(record.bytes)) && record.type == ADD) {
+				values.add(record.bytes);
+			} else {
+				// removed or overridden by a more recent record
+			}
+			position = record.previous;
+		}
+		Collections.reverse(values);
+		return values;
+	}
+
+	/**
+	 * The fingerprint of the key tells in O(1) that most absent values are
+	 * absent. Otherwise, the records of the key are walked from the newest,
+	 * reading only their headers until one has the same hash and length.
+	 */
+	private boolean isLive(int slot, byte[] valueBytes) {
+		int valueHash = hash(valueBytes);
+		long bits = fingerprint(valueHash);
+		if ((fingerprintOf(slot) & bits) != bits) {
+			return false;
+		} else {
+			try {
+				long keyRecord = keyRecordOf(slot);
+				for (long position = headOf(slot); position != keyRecord;) {
+					recordHeader.clear();
+					readFully(log, recordHeader, position);
+					if (recordHeader.getInt(9) == valueHash
+							&& recordHeader.getInt(13) == valueBytes.length
+							&& Arrays.equals(read(position).bytes, valueBytes)) {
+						return recordHeader.get(0) == ADD;
+					} else {
+						position = recordHeader.getLong(1);
+					}
+				}
+				return false;
+			} catch (IOException cause) {
+				throw new UncheckedIOException(cause);
+			}
+		}
+	}
+
+	/*
+	 * MULTIMAP
+	 */
+
+	@Override
+	public synchronized boolean add(Key key, Value value) {
+		byte[] keyBytes = keySerializer.serialize(key);
+		byte[] valueBytes = valueSerializer.serialize(value);
+		int hash = hash(keyBytes);
+		int slot = findSlot(keyBytes, hash);
+		if (slot < 0) {
+			slot = insertSlot(keyBytes, hash, slot);
+		} else if (isLive(slot, valueBytes)) {
+			return false;
+		} else {
+			// new value for an existing key
+		}
+		addValue(slot, valueBytes);
+		return true;
+	}
+
+	/**
+	 * @return the slot of the new key, which should be inserted in the free
+	 *         slot provided as -(slot + 1)
+	 */
+	private int insertSlot(byte[] keyBytes, int hash, int freeSlot) {
+		int slot = freeSlot;
+		if ((index.getInt(USED_POSITION) + 1) * 2 > capacity()) {
+			grow();
+			slot = findSlot(keyBytes, hash);
+		} else {
+			// enough room
+		}
+		slot = -slot - 1;
+		long keyRecord = append(KEY, -1, keyBytes);
+		writeSlot(index, slot, keyRecord, keyRecord, 0, hash, 0);
+		index.putInt(USED_POSITION, index.getInt(USED_POSITION) + 1);
+		return slot;
+	}
+
+	private void addValue(int slot, byte[] valueBytes) {
+		long head = append(ADD, headOf(slot), valueBytes);
+		updateSlot(slot, head, countOf(slot) + 1);
+		index.putLong(position(slot) + 24, fingerprintOf(slot)
+				| fingerprint(hash(valueBytes)));
+	}
+
+	@Override
+	public synchronized boolean remove(Key key, Value value) {
+		int slot = findLiveSlot(key);
+		if (slot < 0) {
+			return false;
+		} else {
+			byte[] valueBytes = valueSerializer.serialize(value);
+			if (!isLive(slot, valueBytes)) {
+				return false;
+			} else {
+				int count = countOf(slot) - 1;
+				if (count == 0) {
+					addDeadRecords(2);
+					updateSlot(slot, keyRecordOf(slot), 0);
+				} else {
+					long head = append(REMOVE, headOf(slot), valueBytes);
+					addDeadRecords(2);
+					updateSlot(slot, head, count);
+				}
+				return true;
+			}
+		}
+	}
+
+	@Override
+	public synchronized Collection<Value> remove(Object key) {
+		int slot = findLiveSlot(key);
+		if (slot < 0) {
+			return null;
+		} else {
+			Collection<Value> values = deserialize(liveValues(slot));
+			removeSlot(slot);
+			return values;
+		}
+	}
+
+	private void removeSlot(int slot) {
+		addDeadRecords(countOf(slot));
+		updateSlot(slot, keyRecordOf(slot), 0);
+	}
+
+	private void addDeadRecords(long count) {
+		long dead = index.getLong(DEAD_POSITION) + count;
+		index.putLong(DEAD_POSITION, dead);
+		long records = index.getLong(RECORDS_POSITION);
+		if (!isCompactionScheduled && records >= MIN_RECORDS_FOR_COMPACTION
+				&& dead * 2 > records) {
+			isCompactionScheduled = true;
+			compactInBackground();
+		} else {
+			// no need to compact
+		}
+	}
+
+	private Collection<Value> deserialize(List<byte[]> values) {
+		Collection<Value> result = new ArrayList<Value>(values.size());
+		for (byte[] bytes : values) {
+			result.add(valueSerializer.deserialize(bytes));
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized void clear() {
+		try {
+			long stamp = index.getLong(STAMP_POSITION);
+			log.truncate(LOG_HEADER_SIZE);
+			index = createIndex(indexChannel, MIN_CAPACITY, stamp);
+			generation++;
+			epoch++;
+		} catch (IOException cause) {
+			throw new UncheckedIOException(cause);
+		}
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return findLiveSlot(key) >= 0;
+	}
+
+	@Override
+	public synchronized boolean containsCouple(Key key, Value value) {
+		int slot = findLiveSlot(key);
+		return slot >= 0 && isLive(slot, valueSerializer.serialize(value));
+	}
+
+	@Override
+	public synchronized int size() {
+		return index.getInt(KEYS_POSITION);
+	}
+
+	@Override
+	public synchronized Collection<Value> getAll(Object key) {
+		if (findLiveSlot(key) < 0) {
+			return null;
+		} else {
+			@SuppressWarnings("unchecked")
+			Key castedKey = (Key) key;
+			return new AbstractCollection<Value>() {
+
+				@Override
+				public Iterator<Value> iterator() {
+					Iterator<Value> iterator;
+					synchronized (PersistentMultiMap.this) {
+						int slot = findLiveSlot(castedKey);
+						iterator = slot < 0 ? Collections.<Value> emptySet()
+								.iterator() : deserialize(liveValues(slot))
+								.iterator();
+					}
+					return new Iterator<Value>() {
+
+						private Value last;
+
+						@Override
+						public boolean hasNext() {
+							return iterator.hasNext();
+						}
+
+						@Override
+						public Value next() {
+							last = iterator.next();
+							return last;
+						}
+
+						@Override
+						public void remove() {
+							PersistentMultiMap.this.remove(castedKey, last);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					synchronized (PersistentMultiMap.this) {
+						int slot = findLiveSlot(castedKey);
+						return slot < 0 ? 0 : countOf(slot);
+					}
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public boolean contains(Object value) {
+					return containsCouple(castedKey, (Value) value);
+				}
+
+				@Override
+				public boolean add(Value value) {
+					return PersistentMultiMap.this.add(castedKey, value);
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public boolean remove(Object value) {
+					return PersistentMultiMap.this.remove(castedKey,
+							(Value) value);
+				}
+
+				@Override
+				public void clear() {
+					PersistentMultiMap.this.remove(castedKey);
+				}
+			};
+		}
+	}
+
+	@Override
+	public Set<Key> keySet() {
+		return new AbstractSet<Key>() {
+
+			@Override
+			public Iterator<Key> iterator() {
+				return new Iterator<Key>() {
+
+					private final int expectedGeneration = generation;
+					private int nextSlot = seek(0);
+					private int lastSlot = -1;
+
+					private int seek(int slot) {
+						synchronized (PersistentMultiMap.this) {
+							checkGeneration();
+							while (slot < capacity()
+									&& (keyRecordOf(slot) < 0 || countOf(slot) == 0)) {
+								slot++;
+							}
+							return slot;
+						}
+					}
+
+					private void checkGeneration() {
+						if (generation != expectedGeneration) {
+							throw new ConcurrentModificationException();
+						} else {
+							// still the same index
+						}
+					}
+
+					@Override
+					public boolean hasNext() {
+						synchronized (PersistentMultiMap.this) {
+							return nextSlot < capacity();
+						}
+					}
+
+					@Override
+					public Key next() {
+						synchronized (PersistentMultiMap.this) {
+							checkGeneration();
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							} else {
+								lastSlot = nextSlot;
+								nextSlot = seek(nextSlot + 1);
+								return keySerializer.deserialize(read(keyRecordOf(lastSlot)).bytes);
+							}
+						}
+					}
+
+					@Override
+					public void remove() {
+						synchronized (PersistentMultiMap.this) {
+							checkGeneration();
+							if (lastSlot < 0 || countOf(lastSlot) == 0) {
+								throw new IllegalStateException();
+							} else {
+								removeSlot(lastSlot);
+								lastSlot = -1;
+							}
+						}
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return PersistentMultiMap.this.size();
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+
+			@Override
+			public boolean remove(Object key) {
+				return PersistentMultiMap.this.remove(key) != null;
+			}
+		};
+	}
+
+	/*
+	 * MAINTENANCE
+	 */
+
+	/**
+	 * The state of the index when a compaction starts. The log is append-only,
+	 * so the records it refers to remain readable while this
+	 * {@link PersistentMultiMap} keeps changing, until it is cleared.
+	 */
+	private static class CompactionSnapshot {
+		final int epoch;
+		final ByteBuffer index;
+		final FileChannel log;
+
+		CompactionSnapshot(int epoch, ByteBuffer index, FileChannel log) {
+			this.epoch = epoch;
+			this.index = index;
+			this.log = log;
+		}
+	}
+
+	/**
+	 * Rewrite the live couples in new files, which replace the current ones.
+	 * This reclaims the space of the removed couples and gathers the values of
+	 * each key. If a background compaction is running, it is completed first.
+	 *
+	 * @throws IOException
+	 *             if the new files cannot be written
+	 */
+	public synchronized void compact() throws IOException {
+		try {
+			while (touchedKeys != null) {
+				wait();
+			}
+		} catch (InterruptedException cause) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting for the background compaction");
+		}
+		writeCompacted(new CompactionSnapshot(epoch, index, log));
+		install(Collections.<Long> emptySet());
+	}
+
+	/**
+	 * Run a compaction in a background thread. The live couples are rewritten
+	 * from a copy of the index, without blocking the other threads using this
+	 * {@link PersistentMultiMap}. They only wait while the new files replace
+	 * the current ones, at which point the keys changed meanwhile are
+	 * rewritten again. If this {@link PersistentMultiMap} is cleared meanwhile,
+	 * the compaction is abandoned. If it fails, the compaction files are
+	 * deleted and the failure is thrown by the {@link Future} as well as by the
+	 * next call to {@link #flush()} or {@link #close()}, so the failures of the
+	 * automatic compactions are not lost.
+	 *
+	 * @return the {@link Future} of the compaction
+	 */
+	public Future<Void> compactInBackground() {
+		return compactor.submit(() -> {
+			CompactionSnapshot snapshot;
+			synchronized (PersistentMultiMap.this) {
+				isCompactionScheduled = false;
+				snapshot = takeSnapshot();
+			}
+			try {
+				boolean isWritten;
+				try {
+					isWritten = writeCompacted(snapshot);
+				} finally {
+					snapshot.log.close();
+				}
+				synchronized (PersistentMultiMap.this) {
+					if (isWritten && snapshot.epoch == epoch) {
+						Set<Long> touched = touchedKeys;
+						touchedKeys = null;
+						install(touched);
+					} else {
+						discardCompaction();
+					}
+				}
+			} catch (IOException | RuntimeException cause) {
+				synchronized (PersistentMultiMap.this) {
+					try {
+						discardCompaction();
+					} catch (IOException discardCause) {
+						cause.addSuppressed(discardCause);
+					}
+					if (snapshot.epoch != epoch) {
+						// cleared meanwhile, so the failure is expected
+					} else if (compactionFailure == null) {
+						compactionFailure = cause;
+					} else {
+						compactionFailure.addSuppressed(cause);
+					}
+				}
+				throw cause;
+			} finally {
+				synchronized (PersistentMultiMap.this) {
+					touchedKeys = null;
+					notifyAll();
+				}
+			}
+			return null;
+		});
+	}
+
+	private CompactionSnapshot takeSnapshot() throws IOException {
+		ByteBuffer source = index.duplicate();
+		source.clear();
+		ByteBuffer copy = ByteBuffer.allocate(source.capacity());
+		copy.put(source);
+		FileChannel snapshotLog = FileChannel.open(logPath,
+				StandardOpenOption.READ);
+		touchedKeys = new HashSet<Long>();
+		return new CompactionSnapshot(epoch, copy, snapshotLog);
+	}
+
+	private void discardCompaction() throws IOException {
+		Files.deleteIfExists(compactionPath(logPath));
+		Files.deleteIfExists(compactionPath(indexPath));
+	}
+
+	/**
+	 * Write the live couples of the snapshot in the compaction files.
+	 *
+	 * @return <code>true</code> if the files have been written,
+	 *         <code>false</code> if this {@link PersistentMultiMap} has been
+	 *         cleared meanwhile
+	 */
+	private boolean writeCompacted(CompactionSnapshot snapshot)
+			throws IOException {
+		Path newLogPath = compactionPath(logPath);
+		Path newIndexPath = compactionPath(indexPath);
+		long stamp = new Random().nextLong();
+		int keys = snapshot.index.getInt(KEYS_POSITION);
+		int capacity = MIN_CAPACITY;
+		while (capacity < keys * 2) {
+			capacity <<= 1;
+		}
+		try (FileChannel newLog = FileChannel.open(newLogPath,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+				FileChannel newIndexChannel = FileChannel.open(newIndexPath,
+						StandardOpenOption.CREATE, StandardOpenOption.READ,
+						StandardOpenOption.WRITE)) {
+			writeLogHeader(newLog, stamp);
+			MappedByteBuffer newIndex = createIndex(newIndexChannel, capacity,
+					stamp);
+			int mask = capacity - 1;
+			int oldCapacity = snapshot.index.getInt(CAPACITY_POSITION);
+			for (int slot = 0; slot < oldCapacity; slot++) {
+				long oldKeyRecord = keyRecordOf(snapshot.index, slot);
+				if (snapshot.epoch != epoch) {
+					return false;
+				} else if (oldKeyRecord >= 0
+						&& countOf(snapshot.index, slot) > 0) {
+					byte[] keyBytes = read(snapshot.log, oldKeyRecord).bytes;
+					int hash = hash(keyBytes);
+					long keyRecord = append(newLog, newIndex, KEY, -1, keyBytes);
+					long head = keyRecord;
+					long fingerprint = 0;
+					List<byte[]> values = liveValues(snapshot.log,
+							oldKeyRecord, headOf(snapshot.index, slot));
+					for (byte[] valueBytes : values) {
+						head = append(newLog, newIndex, ADD, head, valueBytes);
+						fingerprint |= fingerprint(hash(valueBytes));
+					}
+					int newSlot = hash & mask;
+					while (newIndex.getLong(position(newSlot)) != 0) {
+						newSlot = (newSlot + 1) & mask;
+					}
+					writeSlot(newIndex, newSlot, keyRecord, head,
+							values.size(), hash, fingerprint);
+				} else {
+					// nothing to keep
+				}
+			}
+			newIndex.putInt(KEYS_POSITION, keys);
+			newIndex.putInt(USED_POSITION, keys);
+			newLog.force(true);
+			newIndex.force();
+			return true;
+		}
+	}
+
+	/**
+	 * Replace the current files by the compacted ones, then rewrite the keys
+	 * changed since the snapshot with their current values.
+	 */
+	private void install(Set<Long> touched) throws IOException {
+		List<Entry<byte[], List<byte[]>>> changes = new ArrayList<Entry<byte[], List<byte[]>>>(
+				touched.size());
+		for (long keyRecord : touched) {
+			byte[] keyBytes = read(keyRecord).bytes;
+			int slot = findSlot(keyBytes, hash(keyBytes));
+			List<byte[]> values = countOf(slot) > 0 ? liveValues(slot)
+					: Collections.<byte[]> emptyList();
+			changes.add(new AbstractMap.SimpleEntry<byte[], List<byte[]>>(
+					keyBytes, values));
+		}
+
+		log.close();
+		indexChannel.close();
+		Files.move(compactionPath(logPath), logPath,
+				StandardCopyOption.REPLACE_EXISTING);
+		Files.move(compactionPath(indexPath), indexPath,
+				StandardCopyOption.REPLACE_EXISTING);
+		open();
+		generation++;
+		epoch++;
+
+		for (Entry<byte[], List<byte[]>> change : changes) {
+			rewriteKey(change.getKey(), change.getValue());
+		}
+		if (changes.isEmpty()) {
+			// the compacted files are already forced
+		} else {
+			force();
+		}
+	}
+
+	/**
+	 * Replace the values of a key by the given ones, from the oldest to the
+	 * newest.
+	 */
+	private void rewriteKey(byte[] keyBytes, List<byte[]> values) {
+		int hash = hash(keyBytes);
+		int slot = findSlot(keyBytes, hash);
+		if (slot >= 0 && countOf(slot) > 0) {
+			removeSlot(slot);
+		} else if (slot < 0 && !values.isEmpty()) {
+			slot = insertSlot(keyBytes, hash, slot);
+		} else {
+			// nothing to remove
+		}
+		for (byte[] valueBytes : values) {
+			addValue(slot, valueBytes);
+		}
+	}
+
+	/**
+	 * Force the changes to be written on the disk.
+	 *
+	 * @throws IOException
+	 *             if the files cannot be written, or if a background
+	 *             compaction has failed since the last call
+	 */
+	public synchronized void flush() throws IOException {
+		force();
+		throwCompactionFailure();
+	}
+
+	private void force() throws IOException {
+		log.force(true);
+		index.force();
+	}
+
+	private void throwCompactionFailure() throws IOException {
+		Exception failure = compactionFailure;
+		compactionFailure = null;
+		if (failure == null) {
+			// nothing to report
+		} else {
+			throw new IOException("The background compaction failed", failure);
+		}
+	}
+
+	/**
+	 * Wait for the end of the running compaction, if any, and close the files.
+	 * This {@link PersistentMultiMap} cannot be used anymore.
+	 *
+	 * @throws IOException
+	 *             if the files cannot be written, or if a background
+	 *             compaction has failed since the last call to
+	 *             {@link #flush()}
+	 */
+	@Override
+	public void close() throws IOException {
+		compactor.shutdown();
+		try {
+			compactor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException cause) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			force();
+			log.close();
+			indexChannel.close();
+			throwCompactionFailure();
+		}
+	}
+}
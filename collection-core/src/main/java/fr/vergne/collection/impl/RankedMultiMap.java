@@ -0,0 +1,210 @@
+package fr.vergne.collection.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import fr.vergne.collection.MultiMap;
+
+/**
+ * <p>
+ * A {@link RankedMultiMap} is a decorator which ranks the keys of the
+ * decorated {@link MultiMap} by their number of values. The keys having the
+ * same number of values are grouped in a bucket, and the buckets are sorted
+ * by number of values. Since each change of a couple changes the number of
+ * values of its key by one, the key moves to a neighbour bucket in O(1).
+ * Consequently, {@link #topKeysBySize(int)} provides the k keys having the
+ * most values in O(k), and {@link #valueCount()} provides the number of
+ * couples in O(1), without going through the {@link MultiMap}.
+ * </p>
+ *
+ * <p>
+ * The decorated {@link MultiMap} should not be modified directly, otherwise
+ * the ranking would be wrong. Changes made through the views of this
+ * {@link RankedMultiMap} are properly recorded. The keys are identified like
+ * in the decorated {@link MultiMap}, even if it uses a {@link Comparator} or
+ * a custom {@link fr.vergne.collection.util.Equivalence}.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class RankedMultiMap<Key, Value> extends ForwardingMultiMap<Key, Value> {
+
+	/**
+	 * A {@link Slot} is the item of a key in the {@link BucketList}, ranked by
+	 * the number of values of the key.
+	 */
+	private static class Slot<Key> extends BucketList.Node<Slot<Key>> {
+		final Key key;
+
+		Slot(Key key) {
+			this.key = key;
+		}
+	}
+
+	private final MultiMap<Key, Value> map;
+	private final Map<Key, Slot<Key>> slots;
+	private final BucketList<Slot<Key>> buckets = new BucketList<Slot<Key>>();
+	private long couples = 0;
+
+	/**
+	 *
+	 * @param map
+	 *            the {@link MultiMap} to decorate, which may already contain
+	 *            couples
+	 */
+	public RankedMultiMap(MultiMap<Key, Value> map) {
+		this.map = map;
+		this.slots = newKeyMap(map);
+		List<Entry<Key, Collection<Value>>> entries = new ArrayList<Entry<Key, Collection<Value>>>(
+				map.entrySet());
+		entries.sort(Comparator.comparingInt(entry -> entry.getValue().size()));
+		for (Entry<Key, Collection<Value>> entry : entries) {
+			int size = entry.getValue().size();
+			Slot<Key> slot = new Slot<Key>(entry.getKey());
+			buckets.addLast(slot, size);
+			slots.put(slot.key, slot);
+			couples += size;
+		}
+	}
+
+	/**
+	 *
+	 * @param k
+	 *            the maximal number of keys to provide
+	 * @return the k keys having the most values, sorted by decreasing number
+	 *         of values, or all the keys if there is less than k of them
+	 */
+	public List<Key> topKeysBySize(int k) {
+		List<Key> keys = new ArrayList<Key>(Math.min(k, slots.size()));
+		for (BucketList.Bucket<Slot<Key>> bucket = buckets.last(); bucket != null
+				&& keys.size() < k; bucket = bucket.previous) {
+			for (Slot<Key> slot = bucket.first; slot != null
+					&& keys.size() < k; slot = slot.next) {
+				keys.add(slot.key);
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 *
+	 * @return the number of (key, value) couples of this
+	 *         {@link RankedMultiMap}
+	 */
+	public long valueCount() {
+		return couples;
+	}
+
+	/*
+	 * BOOKKEEPING
+	 */
+
+	private void increment(Key key) {
+		Slot<Key> slot = slots.get(key);
+		if (slot == null) {
+			slot = new Slot<Key>(key);
+			slots.put(key, slot);
+			buckets.addFirst(slot, 1);
+		} else {
+			buckets.promote(slot);
+		}
+		couples++;
+	}
+
+	private void decrement(Object key) {
+		Slot<Key> slot = slots.get(key);
+		if (slot == null) {
+			// not ranked, the decorated map has been modified directly
+		} else {
+			if (slot.bucket.rank == 1) {
+				buckets.remove(slot);
+				slots.remove(key);
+			} else {
+				buckets.demote(slot);
+			}
+			couples--;
+		}
+	}
+
+	private void forget(Object key) {
+		Slot<Key> slot = slots.remove(key);
+		if (slot == null) {
+			// nothing to forget
+		} else {
+			couples -= slot.bucket.rank;
+			buckets.remove(slot);
+		}
+	}
+
+	/*
+	 * MULTIMAP
+	 */
+
+	@Override
+	protected MultiMap<Key, Value> delegate() {
+		return map;
+	}
+
+	@Override
+	protected void onRemoved(Key key, Value value) {
+		decrement(key);
+	}
+
+	@Override
+	protected void onRemoved(Key key, Collection<Value> values) {
+		forget(key);
+	}
+
+	@Override
+	public boolean add(Key key, Value value) {
+		if (map.add(key, value)) {
+			increment(key);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public boolean remove(Key key, Value value) {
+		if (map.remove(key, value)) {
+			decrement(key);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public Collection<Value> remove(Object key) {
+		Collection<Value> values = map.remove(key);
+		forget(key);
+		return values;
+	}
+
+	@Override
+	public void clear() {
+		map.clear();
+		slots.clear();
+		buckets.clear();
+		couples = 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return slots.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return slots.size();
+	}
+}
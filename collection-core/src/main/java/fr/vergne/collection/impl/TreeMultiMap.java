@@ -0,0 +1,341 @@
+package fr.vergne.collection.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.Map.Entry;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.NavigableMultiMap;
+
+/**
+ * <p>
+ * A {@link TreeMultiMap} is a {@link NavigableMultiMap} backed by a
+ * {@link TreeMap}, so the searches of keys and the creation of ranges cost
+ * O(log n), and the iteration of a range costs O(k) for k couples. Like a
+ * {@link ListMultiMap}, it allows to have several instances for each (key,
+ * value), which are stored in an {@link ArrayList} per key. This can be
+ * changed by overriding {@link #generateInnerCollection(Object)}.
+ * </p>
+ *
+ * <p>
+ * The ranges provided by {@link #subMap(Object, boolean, Object, boolean)},
+ * {@link #headMap(Object, boolean)}, {@link #tailMap(Object, boolean)} and
+ * {@link #descendingMap()} are views backed by this {@link TreeMultiMap}:
+ * nothing is copied. Adding a couple out of the range of a view throws an
+ * {@link IllegalArgumentException}. A key is removed as soon as it has no
+ * value anymore.
+ * </p>
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <Key>
+ * @param <Value>
+ * @deprecated The code now has its dedicated project at: https://github.com/matthieu-vergne/multi-map
+ */
+public class TreeMultiMap<Key, Value> extends MultiMapView<Key, Value>
+		implements NavigableMultiMap<Key, Value> {
+
+	private final TreeMultiMap<Key, Value> root;
+	private final NavigableMap<Key, Collection<Value>> innerMap;
+
+	public TreeMultiMap(Comparator<? super Key> comparator) {
+		this.root = this;
+		this.innerMap = new TreeMap<Key, Collection<Value>>(comparator);
+	}
+
+	public TreeMultiMap() {
+		this((Comparator<? super Key>) null);
+	}
+
+	public TreeMultiMap(MultiMap<Key, Value> map) {
+		this();
+		for (Entry<Key, Collection<Value>> entry : map.entrySet()) {
+			addAll(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private TreeMultiMap(TreeMultiMap<Key, Value> root,
+			NavigableMap<Key, Collection<Value>> innerMap) {
+		this.root = root;
+		this.innerMap = innerMap;
+	}
+
+	/**
+	 *
+	 * @param key
+	 *            the key which will be mapped to the {@link Collection}
+	 * @return a new {@link Collection} for the values of the key
+	 */
+	protected Collection<Value> generateInnerCollection(Key key) {
+		return new ArrayList<Value>();
+	}
+
+	@Override
+	public boolean add(Key key, Value value) {
+		Collection<Value> collection = innerMap.get(key);
+		if (collection == null) {
+			collection = root.generateInnerCollection(key);
+			boolean isChanged = collection.add(value);
+			if (!collection.isEmpty()) {
+				innerMap.put(key, collection);
+			} else {
+				// nothing to store
+			}
+			return isChanged;
+		} else {
+			return collection.add(value);
+		}
+	}
+
+	@Override
+	public boolean addAll(Key key, Collection<Value> values) {
+		Collection<Value> collection = innerMap.get(key);
+		if (collection == null) {
+			collection = root.generateInnerCollection(key);
+			boolean isChanged = collection.addAll(values);
+			if (!collection.isEmpty()) {
+				innerMap.put(key, collection);
+			} else {
+				// nothing to store
+			}
+			return isChanged;
+		} else {
+			return collection.addAll(values);
+		}
+	}
+
+	@Override
+	public boolean remove(Key key, Value value) {
+		Collection<Value> collection = innerMap.get(key);
+		if (collection == null) {
+			return false;
+		} else {
+			boolean isChanged = collection.remove(value);
+			prune(key, collection);
+			return isChanged;
+		}
+	}
+
+	@Override
+	public boolean removeAll(Key key, Collection<Value> values) {
+		Collection<Value> collection = innerMap.get(key);
+		if (collection == null) {
+			return false;
+		} else {
+			boolean isChanged = collection.removeAll(values);
+			prune(key, collection);
+			return isChanged;
+		}
+	}
+
+	private void prune(Object key, Collection<Value> collection) {
+		if (collection.isEmpty()) {
+			innerMap.remove(key, collection);
+		} else {
+			// still used
+		}
+	}
+
+	@Override
+	public Collection<Value> remove(Object key) {
+		return innerMap.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		innerMap.clear();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return innerMap.containsKey(key);
+	}
+
+	@Override
+	public boolean containsCouple(Key key, Value value) {
+		Collection<Value> collection = innerMap.get(key);
+		return collection != null && collection.contains(value);
+	}
+
+	@Override
+	public int size() {
+		return innerMap.size();
+	}
+
+	@Override
+	public Collection<Value> getAll(Object key) {
+		Collection<Value> collection = innerMap.get(key);
+		if (collection == null) {
+			return null;
+		} else {
+			return new AbstractCollection<Value>() {
+
+				@Override
+				public Iterator<Value> iterator() {
+					Iterator<Value> iterator = collection.iterator();
+					return new Iterator<Value>() {
+
+						@Override
+						public boolean hasNext() {
+							return iterator.hasNext();
+						}
+
+						@Override
+						public Value next() {
+							return iterator.next();
+						}
+
+						@Override
+						public void remove() {
+							iterator.remove();
+							prune(key, collection);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return collection.size();
+				}
+
+				@Override
+				public boolean contains(Object value) {
+					return collection.contains(value);
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public boolean add(Value value) {
+					return TreeMultiMap.this.add((Key) key, value);
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public boolean remove(Object value) {
+					return TreeMultiMap.this.remove((Key) key, (Value) value);
+				}
+
+				@Override
+				public boolean equals(Object obj) {
+					return obj == this || collection.equals(obj);
+				}
+
+				@Override
+				public int hashCode() {
+					return collection.hashCode();
+				}
+			};
+		}
+	}
+
+	@Override
+	public NavigableSet<Key> keySet() {
+		return innerMap.navigableKeySet();
+	}
+
+	@Override
+	public Iterator<Entry<Key, Value>> iterator() {
+		return new Iterator<Entry<Key, Value>>() {
+
+			private final Iterator<Entry<Key, Collection<Value>>> entriesIterator = innerMap
+					.entrySet().iterator();
+			private Entry<Key, Collection<Value>> entry;
+			private Iterator<Value> valuesIterator = Collections
+					.<Value> emptySet().iterator();
+
+			@Override
+			public boolean hasNext() {
+				return valuesIterator.hasNext() || entriesIterator.hasNext();
+			}
+
+			@Override
+			public Entry<Key, Value> next() {
+				if (!valuesIterator.hasNext()) {
+					entry = entriesIterator.next();
+					valuesIterator = entry.getValue().iterator();
+				} else {
+					// continue on the current key
+				}
+				return new AbstractMap.SimpleImmutableEntry<Key, Value>(
+						entry.getKey(), valuesIterator.next());
+			}
+
+			@Override
+			public void remove() {
+				valuesIterator.remove();
+				if (entry.getValue().isEmpty()) {
+					entriesIterator.remove();
+				} else {
+					// still used
+				}
+			}
+		};
+	}
+
+	@Override
+	public Comparator<? super Key> comparator() {
+		return innerMap.comparator();
+	}
+
+	@Override
+	public Key firstKey() {
+		return innerMap.firstKey();
+	}
+
+	@Override
+	public Key lastKey() {
+		return innerMap.lastKey();
+	}
+
+	@Override
+	public Key ceilingKey(Key key) {
+		return innerMap.ceilingKey(key);
+	}
+
+	@Override
+	public Key floorKey(Key key) {
+		return innerMap.floorKey(key);
+	}
+
+	@Override
+	public Key higherKey(Key key) {
+		return innerMap.higherKey(key);
+	}
+
+	@Override
+	public Key lowerKey(Key key) {
+		return innerMap.lowerKey(key);
+	}
+
+	@Override
+	public NavigableMultiMap<Key, Value> subMap(Key fromKey,
+			boolean fromInclusive, Key toKey, boolean toInclusive) {
+		return new TreeMultiMap<Key, Value>(root, innerMap.subMap(fromKey,
+				fromInclusive, toKey, toInclusive));
+	}
+
+	@Override
+	public NavigableMultiMap<Key, Value> headMap(Key toKey, boolean inclusive) {
+		return new TreeMultiMap<Key, Value>(root, innerMap.headMap(toKey,
+				inclusive));
+	}
+
+	@Override
+	public NavigableMultiMap<Key, Value> tailMap(Key fromKey, boolean inclusive) {
+		return new TreeMultiMap<Key, Value>(root, innerMap.tailMap(fromKey,
+				inclusive));
+	}
+
+	@Override
+	public NavigableMultiMap<Key, Value> descendingMap() {
+		return new TreeMultiMap<Key, Value>(root, innerMap.descendingMap());
+	}
+}
@@ -0,0 +1,113 @@
+package fr.vergne.collection.util;
+
+import java.util.Objects;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * An {@link Equivalence} tells which objects should be considered as the same
+ * one, typically to use them as keys. It replaces the pair
+ * {@link Object#hashCode()} and {@link Object#equals(Object)}, which may be too
+ * expensive or not relevant for some keys: two equivalent objects must have
+ * the same hash, while objects with different hashes are known to be
+ * different without checking their equivalence. The <code>null</code> object
+ * may be provided too, so a custom {@link Equivalence} should support it if
+ * <code>null</code> is used.
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <T>
+ */
+public abstract class Equivalence<T> {
+
+	private static final Equivalence<Object> NATURAL = new Equivalence<Object>() {
+
+		@Override
+		public int hash(Object item) {
+			return Objects.hashCode(item);
+		}
+
+		@Override
+		public boolean equivalent(Object item1, Object item2) {
+			return Objects.equals(item1, item2);
+		}
+	};
+
+	private static final Equivalence<Object> IDENTITY = new Equivalence<Object>() {
+
+		@Override
+		public int hash(Object item) {
+			return System.identityHashCode(item);
+		}
+
+		@Override
+		public boolean equivalent(Object item1, Object item2) {
+			return item1 == item2;
+		}
+	};
+
+	/**
+	 *
+	 * @param item
+	 *            the object to hash
+	 * @return the hash of the object, which must be the same for equivalent
+	 *         objects
+	 */
+	public abstract int hash(T item);
+
+	/**
+	 *
+	 * @param item1
+	 *            the first object
+	 * @param item2
+	 *            the second object
+	 * @return <code>true</code> if both objects should be considered as the
+	 *         same one, <code>false</code> otherwise
+	 */
+	public abstract boolean equivalent(T item1, T item2);
+
+	/**
+	 *
+	 * @return the {@link Equivalence} based on {@link Object#hashCode()} and
+	 *         {@link Object#equals(Object)}
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Equivalence<T> natural() {
+		return (Equivalence<T>) NATURAL;
+	}
+
+	/**
+	 *
+	 * @return the {@link Equivalence} where an object is equivalent only to
+	 *         itself, which is enough for canonical instances
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Equivalence<T> identity() {
+		return (Equivalence<T>) IDENTITY;
+	}
+
+	/**
+	 *
+	 * @param hasher
+	 *            the hash function, which must provide the same hash for
+	 *            equivalent objects
+	 * @param equality
+	 *            the equivalence test
+	 * @return the {@link Equivalence} based on the provided functions
+	 */
+	public static <T> Equivalence<T> of(ToIntFunction<? super T> hasher,
+			BiPredicate<? super T, ? super T> equality) {
+		return new Equivalence<T>() {
+
+			@Override
+			public int hash(T item) {
+				return hasher.applyAsInt(item);
+			}
+
+			@Override
+			public boolean equivalent(T item1, T item2) {
+				return equality.test(item1, item2);
+			}
+		};
+	}
+}
@@ -0,0 +1,1094 @@
+package fr.vergne.collection.util;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Map.Entry;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Collector.Characteristics;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.impl.AbstractMultiMap;
+import fr.vergne.collection.impl.ConcurrentMultiMap;
+import fr.vergne.collection.impl.HashMultiMap;
+import fr.vergne.collection.impl.ListMultiMap;
+import fr.vergne.collection.impl.MultiMapView;
+
+public class MultiMapUtils {
+
+	private MultiMapUtils() {
+		// utilitary class, only static methods
+	}
+
+	/**
+	 * This method provides a {@link Collector} which builds an
+	 * {@link HashMultiMap} from the items of a {@link java.util.stream.Stream}.
+	 * When used on a parallel {@link java.util.stream.Stream}, each thread
+	 * fills its own {@link HashMultiMap}, and these {@link HashMultiMap}s are
+	 * merged with {@link AbstractMultiMap#absorb(AbstractMultiMap)}, which
+	 * moves the values rather than copying them.
+	 * 
+	 * @param keyMapper
+	 *            the function providing the key of an item
+	 * @param valueMapper
+	 *            the function providing the value of an item
+	 * @return a {@link Collector} building an {@link HashMultiMap}
+	 */
+	public static <T, K, V> Collector<T, ?, HashMultiMap<K, V>> toHashMultiMap(
+			Function<? super T, ? extends K> keyMapper,
+			Function<? super T, ? extends V> valueMapper) {
+		return toMultiMap(HashMultiMap::new, keyMapper, valueMapper,
+				Characteristics.UNORDERED);
+	}
+
+	/**
+	 * This method provides a {@link Collector} which builds a
+	 * {@link ListMultiMap} from the items of a {@link java.util.stream.Stream}
+	 * . The values of each key are in the order of the
+	 * {@link java.util.stream.Stream}, even if it is parallel.
+	 * 
+	 * @param keyMapper
+	 *            the function providing the key of an item
+	 * @param valueMapper
+	 *            the function providing the value of an item
+	 * @return a {@link Collector} building a {@link ListMultiMap}
+	 * @see #toHashMultiMap(Function, Function)
+	 */
+	public static <T, K, V> Collector<T, ?, ListMultiMap<K, V>> toListMultiMap(
+			Function<? super T, ? extends K> keyMapper,
+			Function<? super T, ? extends V> valueMapper) {
+		return toMultiMap(ListMultiMap::new, keyMapper, valueMapper);
+	}
+
+	/**
+	 * This method provides a {@link Collector} which builds any
+	 * {@link AbstractMultiMap} from the items of a
+	 * {@link java.util.stream.Stream}.
+	 * 
+	 * @param supplier
+	 *            the generator of empty {@link AbstractMultiMap}s
+	 * @param keyMapper
+	 *            the function providing the key of an item
+	 * @param valueMapper
+	 *            the function providing the value of an item
+	 * @param characteristics
+	 *            the additional {@link Characteristics} of the
+	 *            {@link Collector}, typically
+	 *            {@link Characteristics#UNORDERED} when the order of the values
+	 *            does not matter
+	 * @return a {@link Collector} building an {@link AbstractMultiMap}
+	 * @see #toHashMultiMap(Function, Function)
+	 */
+	public static <T, K, V, M extends AbstractMultiMap<K, V>> Collector<T, ?, M> toMultiMap(
+			Supplier<M> supplier, Function<? super T, ? extends K> keyMapper,
+			Function<? super T, ? extends V> valueMapper,
+			Characteristics... characteristics) {
+		return Collector.of(supplier,
+				(map, item) -> map.add(keyMapper.apply(item),
+						valueMapper.apply(item)), (map1, map2) -> {
+					map1.absorb(map2);
+					return map1;
+				}, withIdentityFinish(characteristics));
+	}
+
+	/**
+	 * This method provides a {@link Collector} which fills a single
+	 * {@link ConcurrentMultiMap} from all the threads of a parallel
+	 * {@link java.util.stream.Stream}, so no merge is needed.
+	 * 
+	 * @param keyMapper
+	 *            the function providing the key of an item
+	 * @param valueMapper
+	 *            the function providing the value of an item
+	 * @return a concurrent {@link Collector} building a
+	 *         {@link ConcurrentMultiMap}
+	 */
+	public static <T, K, V> Collector<T, ?, ConcurrentMultiMap<K, V>> toConcurrentMultiMap(
+			Function<? super T, ? extends K> keyMapper,
+			Function<? super T, ? extends V> valueMapper) {
+		return Collector.of(ConcurrentMultiMap::new,
+				(map, item) -> map.add(keyMapper.apply(item),
+						valueMapper.apply(item)), (map1, map2) -> {
+					map1.addAll(map2.toMap());
+					return map1;
+				}, Characteristics.CONCURRENT, Characteristics.UNORDERED,
+				Characteristics.IDENTITY_FINISH);
+	}
+
+	/**
+	 * This method merges many {@link AbstractMultiMap}s into a new one, using
+	 * {@link AbstractMultiMap#absorbAll(Collection)}: the merge is done in
+	 * parallel by partitions of keys, and the {@link Collection}s of the
+	 * merged {@link AbstractMultiMap}s are reused rather than copied, so the
+	 * merged {@link AbstractMultiMap}s are emptied.
+	 * 
+	 * @param maps
+	 *            the {@link AbstractMultiMap}s to merge
+	 * @param supplier
+	 *            the generator of the resulting {@link AbstractMultiMap}
+	 * @return an {@link AbstractMultiMap} containing all the couples
+	 */
+	public static <K, V, M extends AbstractMultiMap<K, V>> M mergeAll(
+			Collection<? extends M> maps, Supplier<M> supplier) {
+		M result = supplier.get();
+		result.absorbAll(maps);
+		return result;
+	}
+
+	/**
+	 * Equivalent to {@link #mergeAll(Collection, Supplier)} for
+	 * {@link HashMultiMap}s.
+	 */
+	public static <K, V> HashMultiMap<K, V> mergeAll(
+			Collection<? extends HashMultiMap<K, V>> maps) {
+		return mergeAll(maps, HashMultiMap::new);
+	}
+
+	/**
+	 * This method provides a view of a {@link MultiMap} where each value is
+	 * replaced by its transformation through a {@link Function}. Nothing is
+	 * copied: the values are transformed each time they are accessed, so the
+	 * view reflects the changes of the original {@link MultiMap}. Since the
+	 * transformed values cannot be converted back, adding couples is not
+	 * supported, but removing them is.
+	 * 
+	 * @param map
+	 *            the {@link MultiMap} to transform
+	 * @param mapper
+	 *            the transformation of the values
+	 * @return a view of the transformed {@link MultiMap}
+	 */
+	public static <K, V, W> MultiMap<K, W> mapValues(MultiMap<K, V> map,
+			Function<? super V, ? extends W> mapper) {
+		return new MultiMapView<K, W>() {
+
+			@Override
+			public boolean add(K key, W value) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public boolean remove(K key, W value) {
+				Collection<W> values = getAll(key);
+				return values != null && values.remove(value);
+			}
+
+			@Override
+			public Collection<W> remove(Object key) {
+				Collection<V> values = map.remove(key);
+				return values == null ? null : new ArrayList<W>(transform(
+						values, mapper));
+			}
+
+			@Override
+			public void clear() {
+				map.clear();
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return map.containsKey(key);
+			}
+
+			@Override
+			public boolean containsCouple(K key, W value) {
+				Collection<W> values = getAll(key);
+				return values != null && values.contains(value);
+			}
+
+			@Override
+			public int size() {
+				return map.size();
+			}
+
+			@Override
+			public Collection<W> getAll(Object key) {
+				Collection<V> values = map.getAll(key);
+				return values == null ? null : transform(values, mapper);
+			}
+
+			@Override
+			public Set<K> keySet() {
+				return map.keySet();
+			}
+		};
+	}
+
+	/**
+	 * This method provides a view of a {@link MultiMap} where each key is
+	 * replaced by its transformation through a {@link Function}. The
+	 * transformation must be injective, and its inverse must be provided to
+	 * find the original key from the transformed one, so
+	 * {@link MultiMap#getAll(Object)} and {@link MultiMap#containsKey(Object)}
+	 * remain direct accesses. Nothing is copied: the keys are transformed each
+	 * time they are accessed, so the view reflects the changes of the original
+	 * {@link MultiMap}, and changes on the view apply to the original
+	 * {@link MultiMap}. The methods accepting any {@link Object} as a key,
+	 * like {@link MultiMap#getAll(Object)}, check its type against the
+	 * {@link Class} of the transformed keys, so the inverse transformation is
+	 * only applied to transformed keys and its exceptions are never hidden.
+	 * 
+	 * @param map
+	 *            the {@link MultiMap} to transform
+	 * @param keyClass
+	 *            the {@link Class} of the transformed keys
+	 * @param mapper
+	 *            the injective transformation of the keys
+	 * @param inverse
+	 *            the inverse transformation
+	 * @return a view of the transformed {@link MultiMap}
+	 */
+	public static <K, L, V> MultiMap<L, V> mapKeys(MultiMap<K, V> map,
+			Class<L> keyClass, Function<? super K, ? extends L> mapper,
+			Function<? super L, ? extends K> inverse) {
+		return new MultiMapView<L, V>() {
+
+			private Object original(Object key) {
+				if (key == null || keyClass.isInstance(key)) {
+					return inverse.apply(keyClass.cast(key));
+				} else {
+					return NO_KEY;
+				}
+			}
+
+			@Override
+			public boolean add(L key, V value) {
+				return map.add(inverse.apply(key), value);
+			}
+
+			@Override
+			public boolean remove(L key, V value) {
+				return map.remove(inverse.apply(key), value);
+			}
+
+			@Override
+			public Collection<V> remove(Object key) {
+				Object original = original(key);
+				return original == NO_KEY ? null : map.remove(original);
+			}
+
+			@Override
+			public void clear() {
+				map.clear();
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				Object original = original(key);
+				return original != NO_KEY && map.containsKey(original);
+			}
+
+			@Override
+			public boolean containsCouple(L key, V value) {
+				return map.containsCouple(inverse.apply(key), value);
+			}
+
+			@Override
+			public int size() {
+				return map.size();
+			}
+
+			@Override
+			public Collection<V> getAll(Object key) {
+				Object original = original(key);
+				return original == NO_KEY ? null : map.getAll(original);
+			}
+
+			@Override
+			public Set<L> keySet() {
+				Set<K> keys = map.keySet();
+				return new AbstractSet<L>() {
+
+					@Override
+					public Iterator<L> iterator() {
+						return transform(keys.iterator(), mapper);
+					}
+
+					@Override
+					public int size() {
+						return keys.size();
+					}
+
+					@Override
+					public boolean contains(Object key) {
+						return containsKey(key);
+					}
+				};
+			}
+		};
+	}
+
+	private static final Object NO_KEY = new Object();
+
+	/**
+	 * This method provides a view of a {@link MultiMap} restricted to the keys
+	 * accepted by a {@link Predicate}. Nothing is copied: the keys are tested
+	 * each time they are accessed, so the view reflects the changes of the
+	 * original {@link MultiMap}. Adding a couple with a rejected key throws an
+	 * {@link IllegalArgumentException}. Because the keys need to be tested,
+	 * {@link MultiMap#size()} goes through all of them.
+	 * 
+	 * @param map
+	 *            the {@link MultiMap} to filter
+	 * @param predicate
+	 *            the condition satisfied by the kept keys
+	 * @return a view of the filtered {@link MultiMap}
+	 */
+	public static <K, V> MultiMap<K, V> filterKeys(MultiMap<K, V> map,
+			Predicate<? super K> predicate) {
+		return new MultiMapView<K, V>() {
+
+			@SuppressWarnings("unchecked")
+			private boolean isKept(Object key) {
+				return map.containsKey(key) && predicate.test((K) key);
+			}
+
+			@Override
+			public boolean add(K key, V value) {
+				if (predicate.test(key)) {
+					return map.add(key, value);
+				} else {
+					throw new IllegalArgumentException("Rejected key: " + key);
+				}
+			}
+
+			@Override
+			public boolean remove(K key, V value) {
+				return predicate.test(key) && map.remove(key, value);
+			}
+
+			@Override
+			public Collection<V> remove(Object key) {
+				return isKept(key) ? map.remove(key) : null;
+			}
+
+			@Override
+			public void clear() {
+				map.keySet().removeIf(predicate);
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return isKept(key);
+			}
+
+			@Override
+			public boolean containsCouple(K key, V value) {
+				return predicate.test(key) && map.containsCouple(key, value);
+			}
+
+			@Override
+			public Collection<V> getAll(Object key) {
+				return isKept(key) ? map.getAll(key) : null;
+			}
+
+			@Override
+			public Set<K> keySet() {
+				return filter(map.keySet(), predicate);
+			}
+		};
+	}
+
+	/**
+	 * This method provides a view of a {@link MultiMap} restricted to the
+	 * values accepted by a {@link Predicate}. The keys which have no accepted
+	 * value are not part of the view. Nothing is copied: the values are tested
+	 * each time they are accessed, so the view reflects the changes of the
+	 * original {@link MultiMap}. Adding a couple with a rejected value throws
+	 * an {@link IllegalArgumentException}. Because a key is part of the view
+	 * only if one of its values is accepted, {@link MultiMap#getAll(Object)}
+	 * and {@link MultiMap#containsKey(Object)} test the values of the key until
+	 * one is accepted, and {@link MultiMap#size()} goes through all of them.
+	 * 
+	 * @param map
+	 *            the {@link MultiMap} to filter
+	 * @param predicate
+	 *            the condition satisfied by the kept values
+	 * @return a view of the filtered {@link MultiMap}
+	 */
+	public static <K, V> MultiMap<K, V> filterValues(MultiMap<K, V> map,
+			Predicate<? super V> predicate) {
+		return new MultiMapView<K, V>() {
+
+			@Override
+			public boolean add(K key, V value) {
+				if (predicate.test(value)) {
+					return map.add(key, value);
+				} else {
+					throw new IllegalArgumentException("Rejected value: "
+							+ value);
+				}
+			}
+
+			@Override
+			public boolean remove(K key, V value) {
+				return predicate.test(value) && map.remove(key, value);
+			}
+
+			@Override
+			public void clear() {
+				Iterator<Entry<K, V>> iterator = map.iterator();
+				while (iterator.hasNext()) {
+					if (predicate.test(iterator.next().getValue())) {
+						iterator.remove();
+					} else {
+						// keep it
+					}
+				}
+			}
+
+			@Override
+			public boolean containsCouple(K key, V value) {
+				return predicate.test(value) && map.containsCouple(key, value);
+			}
+
+			@Override
+			public Collection<V> getAll(Object key) {
+				Collection<V> values = map.getAll(key);
+				if (values == null) {
+					return null;
+				} else {
+					Collection<V> filtered = filter(values, predicate);
+					return filtered.isEmpty() ? null : filtered;
+				}
+			}
+
+			@Override
+			public Set<K> keySet() {
+				return filter(map.keySet(), key -> getAll(key) != null);
+			}
+		};
+	}
+
+	/**
+	 * This method provides a read-only view of the union of two
+	 * {@link MultiMap}s: a couple is part of the union if it is part of at
+	 * least one of them. The values of a key are the values of the first
+	 * {@link MultiMap} followed by the values of the second one which are not
+	 * in the first one. Nothing is copied, so the view reflects the changes of
+	 * the original {@link MultiMap}s. Because the keys of the second
+	 * {@link MultiMap} need to be tested against the first one,
+	 * {@link MultiMap#size()} goes through all of them.
+	 * 
+	 * @param map1
+	 *            the first {@link MultiMap}
+	 * @param map2
+	 *            the second {@link MultiMap}
+	 * @return a view of the union of the {@link MultiMap}s
+	 */
+	public static <K, V> MultiMap<K, V> union(MultiMap<K, V> map1,
+			MultiMap<K, V> map2) {
+		return new ReadOnlyView<K, V>() {
+
+			@Override
+			public boolean containsKey(Object key) {
+				return map1.containsKey(key) || map2.containsKey(key);
+			}
+
+			@Override
+			public boolean containsCouple(K key, V value) {
+				return map1.containsCouple(key, value)
+						|| map2.containsCouple(key, value);
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public Collection<V> getAll(Object key) {
+				Collection<V> values1 = map1.getAll(key);
+				Collection<V> values2 = map2.getAll(key);
+				if (values2 == null) {
+					return values1 == null ? null : Collections
+							.unmodifiableCollection(values1);
+				} else if (values1 == null) {
+					return Collections.unmodifiableCollection(values2);
+				} else {
+					return concat(values1, filter(values2,
+							value -> !map1.containsCouple((K) key, value)));
+				}
+			}
+
+			@Override
+			public Set<K> keySet() {
+				Collection<K> keys = concat(map1.keySet(),
+						filter(map2.keySet(), key -> !map1.containsKey(key)));
+				return new AbstractSet<K>() {
+
+					@Override
+					public Iterator<K> iterator() {
+						return keys.iterator();
+					}
+
+					@Override
+					public int size() {
+						return keys.size();
+					}
+
+					@Override
+					public boolean contains(Object key) {
+						return containsKey(key);
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * This method provides a read-only view of the intersection of two
+	 * {@link MultiMap}s: a couple is part of the intersection if it is part of
+	 * both of them. For each key, the values are searched in the smaller
+	 * {@link Collection} and checked in the other {@link MultiMap}, so a
+	 * {@link MultiMap} allowing duplicates provides its duplicates only if its
+	 * {@link Collection} is the smaller one. Nothing is copied, so the view
+	 * reflects the changes of the original {@link MultiMap}s. Because a key is
+	 * part of the view only if it has a common value,
+	 * {@link MultiMap#getAll(Object)} and {@link MultiMap#containsKey(Object)}
+	 * test the values of the key until one is common, and
+	 * {@link MultiMap#size()} goes through the keys of the smaller
+	 * {@link MultiMap}.
+	 * 
+	 * @param map1
+	 *            the first {@link MultiMap}
+	 * @param map2
+	 *            the second {@link MultiMap}
+	 * @return a view of the intersection of the {@link MultiMap}s
+	 */
+	public static <K, V> MultiMap<K, V> intersection(MultiMap<K, V> map1,
+			MultiMap<K, V> map2) {
+		return new ReadOnlyView<K, V>() {
+
+			@Override
+			public boolean containsCouple(K key, V value) {
+				return map1.containsCouple(key, value)
+						&& map2.containsCouple(key, value);
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public Collection<V> getAll(Object key) {
+				Collection<V> values1 = map1.getAll(key);
+				Collection<V> values2 = map2.getAll(key);
+				if (values1 == null || values2 == null) {
+					return null;
+				} else {
+					Collection<V> common = values1.size() <= values2.size() ? filter(
+							values1,
+							value -> map2.containsCouple((K) key, value))
+							: filter(values2, value -> map1.containsCouple(
+									(K) key, value));
+					return common.isEmpty() ? null : Collections
+							.unmodifiableCollection(common);
+				}
+			}
+
+			@Override
+			public Set<K> keySet() {
+				Set<K> keys = map1.size() <= map2.size() ? map1.keySet() : map2
+						.keySet();
+				return Collections.unmodifiableSet(filter(keys,
+						key -> getAll(key) != null));
+			}
+		};
+	}
+
+	/**
+	 * This method provides a read-only view of the difference of two
+	 * {@link MultiMap}s: a couple is part of the difference if it is part of
+	 * the first one but not of the second one. Nothing is copied, so the view
+	 * reflects the changes of the original {@link MultiMap}s. Because a key is
+	 * part of the view only if one of its values is not in the second
+	 * {@link MultiMap}, {@link MultiMap#getAll(Object)} and
+	 * {@link MultiMap#containsKey(Object)} test the values of the key until one
+	 * is missing, and {@link MultiMap#size()} goes through all of them.
+	 * 
+	 * @param map1
+	 *            the {@link MultiMap} to take the couples from
+	 * @param map2
+	 *            the {@link MultiMap} of the couples to exclude
+	 * @return a view of the difference of the {@link MultiMap}s
+	 */
+	public static <K, V> MultiMap<K, V> difference(MultiMap<K, V> map1,
+			MultiMap<K, V> map2) {
+		return new ReadOnlyView<K, V>() {
+
+			@Override
+			public boolean containsCouple(K key, V value) {
+				return map1.containsCouple(key, value)
+						&& !map2.containsCouple(key, value);
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public Collection<V> getAll(Object key) {
+				Collection<V> values = map1.getAll(key);
+				if (values == null) {
+					return null;
+				} else if (!map2.containsKey(key)) {
+					return Collections.unmodifiableCollection(values);
+				} else {
+					Collection<V> remaining = filter(values,
+							value -> !map2.containsCouple((K) key, value));
+					return remaining.isEmpty() ? null : Collections
+							.unmodifiableCollection(remaining);
+				}
+			}
+
+			@Override
+			public Set<K> keySet() {
+				return Collections.unmodifiableSet(filter(map1.keySet(),
+						key -> getAll(key) != null));
+			}
+		};
+	}
+
+	/**
+	 * This method provides the inner join of two {@link MultiMap}s on their
+	 * keys: each value of a key in the first {@link MultiMap} is joined with
+	 * each value of the same key in the second one. The keys are taken from
+	 * the smaller {@link MultiMap} and searched in the bigger one, which is
+	 * already indexed by keys, so no intermediary structure is built. The
+	 * {@link Stream} is lazy: the {@link Joined} items are produced while it is
+	 * consumed.
+	 * 
+	 * @param left
+	 *            the {@link MultiMap} providing the left values
+	 * @param right
+	 *            the {@link MultiMap} providing the right values
+	 * @return a {@link Stream} of the joined couples
+	 */
+	public static <K, V, W> Stream<Joined<K, V, W>> join(MultiMap<K, V> left,
+			MultiMap<K, W> right) {
+		return join(left, right, false);
+	}
+
+	/**
+	 * Parallel version of {@link #join(MultiMap, MultiMap)}, where the keys of
+	 * the smaller {@link MultiMap} are split between the threads.
+	 */
+	public static <K, V, W> Stream<Joined<K, V, W>> parallelJoin(
+			MultiMap<K, V> left, MultiMap<K, W> right) {
+		return join(left, right, true);
+	}
+
+	private static <K, V, W> Stream<Joined<K, V, W>> join(MultiMap<K, V> left,
+			MultiMap<K, W> right, boolean parallel) {
+		boolean isLeftSmaller = left.size() <= right.size();
+		Set<K> keys = isLeftSmaller ? left.keySet() : right.keySet();
+		MultiMap<K, ?> other = isLeftSmaller ? right : left;
+		return StreamSupport
+				.stream(keys.spliterator(), parallel)
+				.filter(other::containsKey)
+				.flatMap(
+						key -> {
+							Collection<W> rights = right.getAll(key);
+							return left.getAll(key).stream()
+									.flatMap(
+											value -> rights.stream().map(
+													w -> new Joined<K, V, W>(
+															key, value, w)));
+						});
+	}
+
+	/**
+	 * This method provides the left outer join of two {@link MultiMap}s on
+	 * their keys: it is similar to {@link #join(MultiMap, MultiMap)}, but the
+	 * values of the keys which are not in the second {@link MultiMap} are
+	 * provided too, with a <code>null</code> right value. Since all the keys
+	 * of the first {@link MultiMap} are needed, they are the ones searched in
+	 * the second {@link MultiMap}, whatever their sizes.
+	 * 
+	 * @param left
+	 *            the {@link MultiMap} providing the left values
+	 * @param right
+	 *            the {@link MultiMap} providing the right values
+	 * @return a {@link Stream} of the joined couples
+	 */
+	public static <K, V, W> Stream<Joined<K, V, W>> leftJoin(
+			MultiMap<K, V> left, MultiMap<K, W> right) {
+		return leftJoin(left, right, false);
+	}
+
+	/**
+	 * Parallel version of {@link #leftJoin(MultiMap, MultiMap)}, where the keys
+	 * of the left {@link MultiMap} are split between the threads.
+	 */
+	public static <K, V, W> Stream<Joined<K, V, W>> parallelLeftJoin(
+			MultiMap<K, V> left, MultiMap<K, W> right) {
+		return leftJoin(left, right, true);
+	}
+
+	private static <K, V, W> Stream<Joined<K, V, W>> leftJoin(
+			MultiMap<K, V> left, MultiMap<K, W> right, boolean parallel) {
+		return StreamSupport.stream(left.keySet().spliterator(), parallel)
+				.flatMap(key -> {
+					Collection<W> rights = right.getAll(key);
+					Stream<V> values = left.getAll(key).stream();
+					if (rights == null) {
+						return values.map(value -> new Joined<K, V, W>(key,
+								value, null));
+					} else {
+						return values.flatMap(value -> rights.stream().map(
+								w -> new Joined<K, V, W>(key, value, w)));
+					}
+				});
+	}
+
+	/**
+	 * This method composes two {@link MultiMap}s: each value of the first
+	 * {@link MultiMap} is used as a key in the second one, providing a couple
+	 * (key, value) for each path key &rarr; intermediary &rarr; value. Several
+	 * paths leading to the same couple provide it several times, so collecting
+	 * the {@link Stream} in a {@link HashMultiMap} keeps each couple once. The
+	 * {@link Stream} is lazy: the couples are produced while it is consumed.
+	 * 
+	 * @param map1
+	 *            the {@link MultiMap} providing the intermediaries
+	 * @param map2
+	 *            the {@link MultiMap} providing the values of the
+	 *            intermediaries
+	 * @return a {@link Stream} of the composed couples
+	 */
+	public static <K, V, W> Stream<Entry<K, W>> compose(MultiMap<K, V> map1,
+			MultiMap<V, W> map2) {
+		return compose(map1, map2, false);
+	}
+
+	/**
+	 * Parallel version of {@link #compose(MultiMap, MultiMap)}, where the keys
+	 * of the first {@link MultiMap} are split between the threads.
+	 */
+	public static <K, V, W> Stream<Entry<K, W>> parallelCompose(
+			MultiMap<K, V> map1, MultiMap<V, W> map2) {
+		return compose(map1, map2, true);
+	}
+
+	private static <K, V, W> Stream<Entry<K, W>> compose(MultiMap<K, V> map1,
+			MultiMap<V, W> map2, boolean parallel) {
+		return StreamSupport.stream(map1.keySet().spliterator(), parallel)
+				.flatMap(key -> map1.getAll(key).stream().flatMap(via -> {
+					Collection<W> values = map2.getAll(via);
+					if (values == null) {
+						return Stream.empty();
+					} else {
+						return values.stream().map(
+								value -> new SimpleImmutableEntry<K, W>(key,
+										value));
+					}
+				}));
+	}
+
+	private static <T, R> Iterator<R> transform(Iterator<T> iterator,
+			Function<? super T, ? extends R> mapper) {
+		return new Iterator<R>() {
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public R next() {
+				return mapper.apply(iterator.next());
+			}
+
+			@Override
+			public void remove() {
+				iterator.remove();
+			}
+		};
+	}
+
+	private static <T, R> Collection<R> transform(Collection<T> collection,
+			Function<? super T, ? extends R> mapper) {
+		return new AbstractCollection<R>() {
+
+			@Override
+			public Iterator<R> iterator() {
+				return transform(collection.iterator(), mapper);
+			}
+
+			@Override
+			public int size() {
+				return collection.size();
+			}
+		};
+	}
+
+	/**
+	 * The returned {@link Iterator} supports {@link Iterator#remove()} only
+	 * if {@link Iterator#hasNext()} has not been called since the last
+	 * {@link Iterator#next()}, because it needs to look ahead.
+	 */
+	private static <T> Iterator<T> filter(Iterator<T> iterator,
+			Predicate<? super T> predicate) {
+		return new Iterator<T>() {
+
+			private T next;
+			private boolean hasNext = false;
+			private boolean isRemovable = false;
+
+			@Override
+			public boolean hasNext() {
+				while (!hasNext && iterator.hasNext()) {
+					isRemovable = false;
+					T candidate = iterator.next();
+					if (predicate.test(candidate)) {
+						next = candidate;
+						hasNext = true;
+					} else {
+						// continue searching
+					}
+				}
+				return hasNext;
+			}
+
+			@Override
+			public T next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				} else {
+					hasNext = false;
+					isRemovable = true;
+					return next;
+				}
+			}
+
+			@Override
+			public void remove() {
+				if (isRemovable) {
+					iterator.remove();
+					isRemovable = false;
+				} else {
+					throw new IllegalStateException(
+							"Cannot remove after hasNext()");
+				}
+			}
+		};
+	}
+
+	private static <T> Collection<T> filter(Collection<T> collection,
+			Predicate<? super T> predicate) {
+		return new AbstractCollection<T>() {
+
+			@Override
+			public Iterator<T> iterator() {
+				return filter(collection.iterator(), predicate);
+			}
+
+			@Override
+			public int size() {
+				int size = 0;
+				for (T item : collection) {
+					if (predicate.test(item)) {
+						size++;
+					} else {
+						// not counted
+					}
+				}
+				return size;
+			}
+
+			@Override
+			public boolean isEmpty() {
+				return !iterator().hasNext();
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public boolean contains(Object item) {
+				return collection.contains(item) && predicate.test((T) item);
+			}
+
+			@Override
+			public boolean add(T item) {
+				if (predicate.test(item)) {
+					return collection.add(item);
+				} else {
+					throw new IllegalArgumentException("Rejected item: "
+							+ item);
+				}
+			}
+
+			@Override
+			public void clear() {
+				collection.removeIf(predicate);
+			}
+		};
+	}
+
+	private static <T> Set<T> filter(Set<T> set, Predicate<? super T> predicate) {
+		Collection<T> filtered = filter((Collection<T>) set, predicate);
+		return new AbstractSet<T>() {
+
+			@Override
+			public Iterator<T> iterator() {
+				return filtered.iterator();
+			}
+
+			@Override
+			public int size() {
+				return filtered.size();
+			}
+
+			@Override
+			public boolean isEmpty() {
+				return filtered.isEmpty();
+			}
+
+			@Override
+			public boolean contains(Object item) {
+				return filtered.contains(item);
+			}
+
+			@Override
+			public void clear() {
+				filtered.clear();
+			}
+		};
+	}
+
+	private static <T> Collection<T> concat(Collection<T> collection1,
+			Collection<T> collection2) {
+		return new AbstractCollection<T>() {
+
+			@Override
+			public Iterator<T> iterator() {
+				Iterator<T> iterator1 = collection1.iterator();
+				Iterator<T> iterator2 = collection2.iterator();
+				return new Iterator<T>() {
+
+					@Override
+					public boolean hasNext() {
+						return iterator1.hasNext() || iterator2.hasNext();
+					}
+
+					@Override
+					public T next() {
+						return iterator1.hasNext() ? iterator1.next()
+								: iterator2.next();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return collection1.size() + collection2.size();
+			}
+
+			@Override
+			public boolean contains(Object item) {
+				return collection1.contains(item) || collection2.contains(item);
+			}
+		};
+	}
+
+	private static Characteristics[] withIdentityFinish(
+			Characteristics... characteristics) {
+		Characteristics[] result = new Characteristics[characteristics.length + 1];
+		System.arraycopy(characteristics, 0, result, 0, characteristics.length);
+		result[characteristics.length] = Characteristics.IDENTITY_FINISH;
+		return result;
+	}
+
+	/**
+	 * A {@link MultiMapView} which does not support any modification.
+	 */
+	private static abstract class ReadOnlyView<K, V> extends
+			MultiMapView<K, V> {
+
+		@Override
+		public boolean add(K key, V value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean remove(K key, V value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Collection<V> remove(Object key) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void clear() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * A {@link Joined} item is the result of a join between two
+	 * {@link MultiMap}s: it associates a key to a value of each of them.
+	 * 
+	 * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+	 * 
+	 * @param <K>
+	 * @param <V>
+	 * @param <W>
+	 */
+	public static class Joined<K, V, W> {
+
+		private final K key;
+		private final V left;
+		private final W right;
+
+		public Joined(K key, V left, W right) {
+			this.key = key;
+			this.left = left;
+			this.right = right;
+		}
+
+		public K getKey() {
+			return key;
+		}
+
+		public V getLeft() {
+			return left;
+		}
+
+		/**
+		 * 
+		 * @return the value of the right {@link MultiMap}, <code>null</code>
+		 *         if it is a left join and the key has no right value
+		 */
+		public W getRight() {
+			return right;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			} else if (obj instanceof Joined) {
+				Joined<?, ?, ?> joined = (Joined<?, ?, ?>) obj;
+				return Objects.equals(key, joined.key)
+						&& Objects.equals(left, joined.left)
+						&& Objects.equals(right, joined.right);
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(key, left, right);
+		}
+
+		@Override
+		public String toString() {
+			return key + "=(" + left + ", " + right + ")";
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package fr.vergne.collection.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link Serializer} converts objects to bytes and back. Equal objects must
+ * be converted to the same bytes, so the bytes can be compared instead of the
+ * objects.
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ *
+ * @param <T>
+ */
+public interface Serializer<T> {
+
+	public byte[] serialize(T object);
+
+	public T deserialize(byte[] bytes);
+
+	/**
+	 *
+	 * @return a {@link Serializer} of {@link String}s using UTF-8
+	 */
+	public static Serializer<String> string() {
+		return new Serializer<String>() {
+
+			@Override
+			public byte[] serialize(String string) {
+				return string.getBytes(StandardCharsets.UTF_8);
+			}
+
+			@Override
+			public String deserialize(byte[] bytes) {
+				return new String(bytes, StandardCharsets.UTF_8);
+			}
+		};
+	}
+
+	/**
+	 * This {@link Serializer} relies on the Java serialization. Be sure that
+	 * equal objects are serialized in the same way, which is not the case of
+	 * objects containing unordered collections for instance.
+	 *
+	 * @return a {@link Serializer} using the Java serialization
+	 */
+	public static <T extends Serializable> Serializer<T> java() {
+		return new Serializer<T>() {
+
+			@Override
+			public byte[] serialize(T object) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				try (ObjectOutputStream stream = new ObjectOutputStream(bytes)) {
+					stream.writeObject(object);
+				} catch (IOException cause) {
+					throw new UncheckedIOException(cause);
+				}
+				return bytes.toByteArray();
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public T deserialize(byte[] bytes) {
+				try (ObjectInputStream stream = new ObjectInputStream(
+						new ByteArrayInputStream(bytes))) {
+					return (T) stream.readObject();
+				} catch (IOException cause) {
+					throw new UncheckedIOException(cause);
+				} catch (ClassNotFoundException cause) {
+					throw new IllegalStateException(cause);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,105 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Spliterator;
+
+import org.junit.Test;
+
+import fr.vergne.collection.util.Equivalence;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link ArrayListMultiMap} for details.
+ */
+public class ArrayListMultiMapTest {
+
+	@Test
+	public void testValuesAreKeptInOrderWithDuplicates() {
+		ArrayListMultiMap<String, Integer> map = new ArrayListMultiMap<String, Integer>();
+
+		map.add("a", 3);
+		map.add("a", 1);
+		map.add("a", 3);
+		map.addAll("b", Arrays.asList(4, 5));
+
+		assertEquals(Arrays.asList(3, 1, 3), map.getAll("a"));
+		assertEquals(Arrays.asList(4, 5), map.getAll("b"));
+
+		assertTrue(map.remove("a", 3));
+		assertEquals(Arrays.asList(1, 3), map.getAll("a"));
+	}
+
+	@Test
+	public void testPositionalAccessThroughGetAll() {
+		ArrayListMultiMap<String, Integer> map = new ArrayListMultiMap<String, Integer>();
+		map.add("a", 1);
+
+		List<Integer> values = (List<Integer>) map.getAll("a");
+		values.add(0, 0);
+		values.add(2);
+		assertEquals(Arrays.asList(0, 1, 2), map.getAll("a"));
+		assertEquals((Integer) 1, values.get(1));
+
+		values.remove(1);
+		values.remove(0);
+		assertEquals(Arrays.asList(2), map.getAll("a"));
+		values.remove(0);
+		assertFalse(map.containsKey("a"));
+	}
+
+	@Test
+	public void testTrimToSizeKeepsContent() {
+		ArrayListMultiMap<Integer, Integer> map = new ArrayListMultiMap<Integer, Integer>();
+		for (int i = 0; i < 100; i++) {
+			for (int j = 0; j <= i % 5; j++) {
+				map.add(i, j);
+			}
+		}
+
+		map.trimToSize();
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i % 5 + 1, map.getAll(i).size());
+		}
+	}
+
+	@Test
+	public void testParallelStreamCoversAllCouples() {
+		ArrayListMultiMap<Integer, Integer> map = new ArrayListMultiMap<Integer, Integer>();
+		long sum = 0;
+		for (int i = 0; i < 1000; i++) {
+			map.add(i, i);
+			sum += i;
+		}
+		for (int i = 0; i < 10000; i++) {
+			map.add(-1, i);
+			sum += i;
+		}
+
+		assertEquals(map.couplesCount(), map.stream().count());
+		assertEquals(sum, map.parallelStream().mapToLong(Entry::getValue)
+				.sum());
+		assertTrue(map.spliterator().hasCharacteristics(Spliterator.SIZED));
+		assertEquals(map.couplesCount(), map.spliterator().estimateSize());
+	}
+
+	@Test
+	public void testCustomEquivalenceMergesEquivalentKeys() {
+		ArrayListMultiMap<String, Integer> map = new ArrayListMultiMap<String, Integer>(
+				Equivalence.<String> of(key -> key.toLowerCase().hashCode(),
+						String::equalsIgnoreCase));
+		map.add("a", 1);
+		map.add("A", 2);
+		map.add("a", 1);
+
+		assertEquals(1, map.size());
+		assertEquals(Arrays.asList(1, 2, 1), map.getAll("A"));
+		assertEquals(3, map.couplesCount());
+	}
+}
@@ -0,0 +1,86 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link BidirectionalMultiMap} for details.
+ */
+public class BidirectionalMultiMapTest {
+
+	@Test
+	public void testInverseReflectsChanges() {
+		BidirectionalMultiMap<String, Integer> map = new BidirectionalMultiMap<String, Integer>();
+		BidirectionalMultiMap<Integer, String> inverse = map.inverse();
+
+		map.addAll("a", Arrays.asList(1, 2));
+		map.addAll("b", Arrays.asList(2, 3));
+
+		assertEquals(new HashSet<String>(Arrays.asList("a")),
+				new HashSet<String>(inverse.getAll(1)));
+		assertEquals(new HashSet<String>(Arrays.asList("a", "b")),
+				new HashSet<String>(inverse.getAll(2)));
+		assertEquals(3, inverse.size());
+
+		map.remove("a", 2);
+		assertEquals(new HashSet<String>(Arrays.asList("b")),
+				new HashSet<String>(inverse.getAll(2)));
+
+		map.replaceAll("b", Arrays.asList(4));
+		assertFalse(inverse.containsKey(2));
+		assertFalse(inverse.containsKey(3));
+		assertTrue(inverse.containsCouple(4, "b"));
+
+		map.remove("a");
+		assertFalse(inverse.containsKey(1));
+
+		map.clear();
+		assertTrue(inverse.isEmpty());
+	}
+
+	@Test
+	public void testChangesOnInverseAreReflected() {
+		BidirectionalMultiMap<String, Integer> map = new BidirectionalMultiMap<String, Integer>();
+
+		map.inverse().add(1, "a");
+		map.inverse().getAll(1).add("b");
+
+		assertTrue(map.containsCouple("a", 1));
+		assertTrue(map.containsCouple("b", 1));
+		assertSame(map, map.inverse().inverse());
+	}
+
+	@Test
+	public void testViewsKeepBothSidesSynchronized() {
+		BidirectionalMultiMap<String, Integer> map = new BidirectionalMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2));
+		map.addAll("b", Arrays.asList(1, 3));
+
+		map.getAll("a").remove(1);
+		assertEquals(Arrays.asList("b"),
+				Arrays.asList(map.inverse().getAll(1).toArray()));
+
+		Iterator<Entry<String, Integer>> iterator = map.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getValue() == 3) {
+				iterator.remove();
+			} else {
+				// keep it
+			}
+		}
+		assertFalse(map.inverse().containsKey(3));
+
+		map.keySet().remove("b");
+		assertFalse(map.inverse().containsKey(1));
+		assertEquals(1, map.inverse().size());
+	}
+}
@@ -0,0 +1,86 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import fr.vergne.collection.util.Equivalence;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link BloomFilterMultiMap} for details.
+ */
+public class BloomFilterMultiMapTest {
+
+	@Test
+	public void testAnswersAreExact() {
+		BloomFilterMultiMap<Integer, Integer> map = new BloomFilterMultiMap<Integer, Integer>(
+				new ListMultiMap<Integer, Integer>(), 10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			map.add(i % 10, i);
+		}
+
+		for (int i = 0; i < 20000; i++) {
+			assertEquals(i < 10000, map.containsCouple(i % 10, i));
+		}
+		assertTrue(map.getFalsePositiveRate() < 0.02);
+	}
+
+	@Test
+	public void testRemovedCouplesAreForgotten() {
+		ListMultiMap<String, Integer> inner = new ListMultiMap<String, Integer>();
+		inner.addAll("a", Arrays.asList(1, 2, 2));
+		BloomFilterMultiMap<String, Integer> map = new BloomFilterMultiMap<String, Integer>(
+				inner);
+
+		assertTrue(map.containsCouple("a", 2));
+		assertTrue(map.remove("a", 2));
+		assertTrue(map.containsCouple("a", 2));
+		Iterator<Integer> iterator = map.getAll("a").iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() == 2) {
+				iterator.remove();
+			} else {
+				// keep it
+			}
+		}
+		assertFalse(map.containsCouple("a", 2));
+		assertTrue(map.containsCouple("a", 1));
+
+		map.remove("a");
+		assertFalse(map.containsCouple("a", 1));
+		assertTrue(inner.isEmpty());
+		assertEquals(0, map.getFalsePositiveRate(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRateIsRejected() {
+		new BloomFilterMultiMap<String, Integer>(
+				new HashMultiMap<String, Integer>(), 100, 1.5);
+	}
+
+	@Test
+	public void testKeysAreHashedLikeInTheDecoratedMap() {
+		BloomFilterMultiMap<String, Integer> map = new BloomFilterMultiMap<String, Integer>(
+				new HashMultiMap<String, Integer>(Equivalence.of(
+						key -> key.toLowerCase().hashCode(),
+						String::equalsIgnoreCase)));
+		map.add("a", 1);
+
+		assertTrue(map.containsCouple("A", 1));
+		assertFalse(map.containsCouple("A", 2));
+		assertTrue(map.remove("A", 1));
+		assertFalse(map.containsKey("a"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testComparatorBasedMapIsRejected() {
+		new BloomFilterMultiMap<String, Integer>(new TreeMultiMap<String, Integer>(
+				String.CASE_INSENSITIVE_ORDER));
+	}
+}
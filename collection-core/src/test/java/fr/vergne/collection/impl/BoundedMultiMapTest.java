@@ -0,0 +1,100 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.vergne.collection.impl.BoundedMultiMap.EvictionPolicy;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link BoundedMultiMap} for details.
+ */
+public class BoundedMultiMapTest {
+
+	@Test
+	public void testOldestValuesAreDropped() {
+		BoundedMultiMap<String, Integer> map = new BoundedMultiMap<String, Integer>(
+				10, 3);
+		List<String> evicted = new ArrayList<String>();
+		map.setEvictionListener((key, value) -> evicted.add(key + value));
+
+		for (int i = 1; i <= 5; i++) {
+			map.add("a", i);
+		}
+
+		assertEquals(Arrays.asList(3, 4, 5),
+				new ArrayList<Integer>(map.getAll("a")));
+		assertEquals(Arrays.asList("a1", "a2"), evicted);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedKeyIsEvicted() {
+		BoundedMultiMap<String, Integer> map = new BoundedMultiMap<String, Integer>(
+				2, 10, EvictionPolicy.LEAST_RECENTLY_USED);
+		List<String> evicted = new ArrayList<String>();
+		map.setEvictionListener((key, value) -> evicted.add(key + value));
+
+		map.add("a", 1);
+		map.add("a", 2);
+		map.add("b", 3);
+		map.getAll("a");
+		map.add("c", 4);
+
+		assertEquals(new HashSet<String>(Arrays.asList("a", "c")),
+				map.keySet());
+		assertEquals(Arrays.asList("b3"), evicted);
+
+		map.add("c", 5);
+		map.add("d", 6);
+		assertEquals(new HashSet<String>(Arrays.asList("c", "d")),
+				map.keySet());
+		assertEquals(Arrays.asList("b3", "a1", "a2"), evicted);
+	}
+
+	@Test
+	public void testLeastFrequentlyUsedKeyIsEvicted() {
+		BoundedMultiMap<String, Integer> map = new BoundedMultiMap<String, Integer>(
+				2, 10, EvictionPolicy.LEAST_FREQUENTLY_USED);
+
+		map.add("a", 1);
+		map.add("a", 2);
+		map.add("a", 3);
+		map.add("b", 4);
+		map.add("b", 5);
+		map.add("c", 6);
+		assertEquals(new HashSet<String>(Arrays.asList("a", "c")),
+				map.keySet());
+
+		map.add("d", 7);
+		assertEquals(new HashSet<String>(Arrays.asList("a", "d")),
+				map.keySet());
+
+		map.remove("a");
+		map.add("e", 8);
+		map.add("f", 9);
+		assertEquals(new HashSet<String>(Arrays.asList("e", "f")),
+				map.keySet());
+	}
+
+	@Test
+	public void testRemovingAllValuesRemovesTheKey() {
+		BoundedMultiMap<String, Integer> map = new BoundedMultiMap<String, Integer>(
+				2, 2);
+		map.add("a", 1);
+		map.add("b", 2);
+		map.getAll("a").remove(1);
+		assertFalse(map.containsKey("a"));
+
+		map.add("c", 3);
+		assertEquals(2, map.size());
+		assertTrue(map.containsCouple("b", 2));
+	}
+}
@@ -0,0 +1,59 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BucketListTest {
+
+	private static class Item extends BucketList.Node<Item> {
+		final String name;
+
+		Item(String name) {
+			this.name = name;
+		}
+	}
+
+	private static List<String> content(BucketList<Item> list) {
+		List<String> content = new ArrayList<String>();
+		for (BucketList.Bucket<Item> bucket = list.first(); bucket != null; bucket = bucket.next) {
+			for (Item item = bucket.first; item != null; item = item.next) {
+				content.add(item.name + bucket.rank);
+			}
+		}
+		return content;
+	}
+
+	@Test
+	public void testItemsMoveBetweenRanks() {
+		BucketList<Item> list = new BucketList<Item>();
+		Item a = new Item("a");
+		Item b = new Item("b");
+		Item c = new Item("c");
+		list.addFirst(a, 1);
+		list.addFirst(b, 1);
+		list.addLast(c, 3);
+		assertEquals(Arrays.asList("a1", "b1", "c3"), content(list));
+
+		list.promote(a);
+		assertEquals(Arrays.asList("b1", "a2", "c3"), content(list));
+		list.promote(a);
+		assertEquals(Arrays.asList("b1", "c3", "a3"), content(list));
+		list.demote(c);
+		assertEquals(Arrays.asList("b1", "c2", "a3"), content(list));
+		list.moveToEnd(b);
+		assertEquals(Arrays.asList("b1", "c2", "a3"), content(list));
+
+		list.remove(b);
+		assertEquals(2, list.first().rank);
+		list.remove(a);
+		assertEquals(2, list.last().rank);
+		list.remove(c);
+		assertNull(list.first());
+		assertNull(list.last());
+	}
+}
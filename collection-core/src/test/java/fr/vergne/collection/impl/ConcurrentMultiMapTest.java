@@ -0,0 +1,102 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link ConcurrentMultiMap} for details.
+ */
+public class ConcurrentMultiMapTest {
+
+	@Test
+	public void testAddedCouplesAreContained() {
+		ConcurrentMultiMap<String, Integer> map = new ConcurrentMultiMap<String, Integer>();
+
+		assertTrue(map.add("a", 1));
+		assertTrue(map.add("a", 2));
+		assertFalse(map.add("a", 1));
+		assertTrue(map.addAll("b", Arrays.asList(3, 4)));
+
+		assertEquals(2, map.size());
+		assertTrue(map.containsCouple("a", 1));
+		assertTrue(map.containsCouple("a", 2));
+		assertTrue(map.containsCouple("b", 3));
+		assertTrue(map.containsCouple("b", 4));
+		assertFalse(map.containsCouple("a", 3));
+		assertFalse(map.containsCouple("c", 1));
+	}
+
+	@Test
+	public void testRemovingLastValueRemovesKey() {
+		ConcurrentMultiMap<String, Integer> map = new ConcurrentMultiMap<String, Integer>();
+		map.add("a", 1);
+		map.add("a", 2);
+
+		assertTrue(map.remove("a", 1));
+		assertTrue(map.containsKey("a"));
+		assertFalse(map.remove("a", 1));
+		assertTrue(map.remove("a", 2));
+		assertFalse(map.containsKey("a"));
+		assertFalse(map.remove("b", 1));
+		assertFalse(map.containsKey("b"));
+	}
+
+	@Test
+	public void testIteratorToleratesConcurrentModifications() {
+		ConcurrentMultiMap<String, Integer> map = new ConcurrentMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2, 3));
+		map.addAll("b", Arrays.asList(4, 5));
+
+		List<Integer> values = new LinkedList<Integer>();
+		Iterator<Entry<String, Integer>> iterator = map.iterator();
+		while (iterator.hasNext()) {
+			Entry<String, Integer> entry = iterator.next();
+			values.add(entry.getValue());
+			map.add("c", 6);
+			iterator.remove();
+		}
+
+		assertTrue(values.containsAll(Arrays.asList(1, 2, 3, 4, 5)));
+		assertFalse(map.containsKey("a"));
+		assertFalse(map.containsKey("b"));
+	}
+
+	@Test
+	public void testConcurrentAddsAreNotLost() throws InterruptedException {
+		ConcurrentMultiMap<Integer, Integer> map = new ConcurrentMultiMap<Integer, Integer>();
+		int threads = 8;
+		int valuesPerThread = 1000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int thread = 0; thread < threads; thread++) {
+			int offset = thread * valuesPerThread;
+			executor.execute(() -> {
+				for (int value = offset; value < offset + valuesPerThread; value++) {
+					map.add(value % 10, value);
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+		assertEquals(10, map.size());
+		int count = 0;
+		for (Entry<Integer, Integer> entry : map) {
+			assertEquals(entry.getValue() % 10, (int) entry.getKey());
+			count++;
+		}
+		assertEquals(threads * valuesPerThread, count);
+	}
+}
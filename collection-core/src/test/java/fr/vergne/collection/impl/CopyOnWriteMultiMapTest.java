@@ -0,0 +1,145 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.junit.Test;
+
+import fr.vergne.collection.MultiMap;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link CopyOnWriteMultiMap} for details.
+ */
+public class CopyOnWriteMultiMapTest {
+
+	/**
+	 * A key with a constant hash code, to force collisions.
+	 */
+	private static class Colliding {
+		private final int id;
+
+		public Colliding(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return 42;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Colliding && ((Colliding) obj).id == id;
+		}
+	}
+
+	@Test
+	public void testBehavesLikeHashMultiMap() {
+		CopyOnWriteMultiMap<Integer, Integer> map = new CopyOnWriteMultiMap<Integer, Integer>();
+		HashMultiMap<Integer, Integer> reference = new HashMultiMap<Integer, Integer>();
+		for (int i = 0; i < 5000; i++) {
+			int key = (i * 31) % 1000;
+			assertEquals(reference.add(key, i % 7), map.add(key, i % 7));
+		}
+		for (int i = 0; i < 3000; i++) {
+			int key = (i * 17) % 1000;
+			assertEquals(reference.remove(key, i % 7), map.remove(key, i % 7));
+		}
+		for (int key = 0; key < 1000; key += 3) {
+			assertEquals(reference.remove(key) == null, map.remove(key) == null);
+		}
+
+		assertEquals(reference.size(), map.size());
+		assertEquals(reference.keySet(), map.keySet());
+		for (Integer key : reference.keySet()) {
+			assertEquals(reference.getAll(key), new HashSet<Integer>(
+					map.getAll(key)));
+		}
+	}
+
+	@Test
+	public void testCollidingKeysAreDistinguished() {
+		CopyOnWriteMultiMap<Colliding, Integer> map = new CopyOnWriteMultiMap<Colliding, Integer>();
+		for (int i = 0; i < 10; i++) {
+			map.add(new Colliding(i), i);
+		}
+		map.add(null, -1);
+
+		assertEquals(11, map.size());
+		assertTrue(map.containsCouple(new Colliding(3), 3));
+		assertFalse(map.containsCouple(new Colliding(3), 4));
+		assertTrue(map.containsCouple(null, -1));
+
+		map.remove(new Colliding(3));
+		assertFalse(map.containsKey(new Colliding(3)));
+		assertTrue(map.containsKey(new Colliding(4)));
+		assertEquals(10, map.keySet().size());
+	}
+
+	@Test
+	public void testIteratorsReadTheirVersion() {
+		CopyOnWriteMultiMap<String, Integer> map = new CopyOnWriteMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2));
+		map.add("b", 3);
+
+		Iterator<Entry<String, Integer>> iterator = map.iterator();
+		map.clear();
+		int count = 0;
+		while (iterator.hasNext()) {
+			iterator.next();
+			count++;
+		}
+
+		assertEquals(3, count);
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void testMutatePublishesAllChangesAtOnce() {
+		CopyOnWriteMultiMap<String, Integer> map = new CopyOnWriteMultiMap<String, Integer>();
+		map.add("a", 1);
+		Collection<Integer> values = map.getAll("a");
+
+		map.mutate(draft -> {
+			draft.add("a", 2);
+			draft.add("b", 3);
+			draft.remove("a", 1);
+			assertFalse(map.containsKey("b"));
+			assertTrue(draft.containsKey("b"));
+		});
+
+		assertEquals(Arrays.asList(2), Arrays.asList(values.toArray()));
+		assertEquals(Arrays.asList(3), Arrays.asList(map.getAll("b").toArray()));
+	}
+
+	@Test
+	public void testFailedMutateIsNotPublished() {
+		CopyOnWriteMultiMap<String, Integer> map = new CopyOnWriteMultiMap<String, Integer>();
+		MultiMap<?, ?>[] leaked = { null };
+		try {
+			map.mutate(draft -> {
+				leaked[0] = draft;
+				draft.add("a", 1);
+				throw new IllegalArgumentException();
+			});
+			fail("No exception thrown");
+		} catch (IllegalArgumentException cause) {
+			assertTrue(map.isEmpty());
+		}
+
+		try {
+			leaked[0].size();
+			fail("No exception thrown");
+		} catch (IllegalStateException cause) {
+			// draft closed
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link CountedMultiMap} for details.
+ */
+public class CountedMultiMapTest {
+
+	@Test
+	public void testInstancesAreCounted() {
+		CountedMultiMap<String, Integer> map = new CountedMultiMap<String, Integer>();
+		assertEquals(0, map.count("a", 1));
+		map.add("a", 1);
+		assertEquals(1, map.count("a", 1));
+		for (int i = 0; i < 1000; i++) {
+			map.add("a", 2);
+		}
+		map.add("a", 1);
+
+		assertEquals(2, map.count("a", 1));
+		assertEquals(1000, map.count("a", 2));
+		assertEquals(1002, map.getAll("a").size());
+		assertEquals(1002, map.couplesCount());
+
+		assertTrue(map.remove("a", 2));
+		assertEquals(999, map.count("a", 2));
+		assertEquals(1001, map.couplesCount());
+	}
+
+	@Test
+	public void testIterationRepeatsInstances() {
+		CountedMultiMap<String, Integer> map = new CountedMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2, 1, 3, 2));
+
+		List<Integer> values = new ArrayList<Integer>(map.getAll("a"));
+		assertEquals(Arrays.asList(1, 1, 2, 2, 3), values);
+
+		Iterator<Integer> iterator = map.getAll("a").iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() == 2) {
+				iterator.remove();
+			} else {
+				// keep it
+			}
+		}
+		assertEquals(0, map.count("a", 2));
+		assertEquals(3, map.couplesCount());
+	}
+
+	@Test
+	public void testCountsProvideCompactView() {
+		CountedMultiMap<String, Integer> map = new CountedMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2, 1));
+		map.add("b", 3);
+
+		Map<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>();
+		expected.put(1, 2);
+		expected.put(2, 1);
+		assertEquals(expected, map.getCounts("a"));
+		assertEquals(Collections.singletonMap(3, 1), map.getCounts("b"));
+		assertNull(map.getCounts("c"));
+	}
+
+	@Test
+	public void testValuesEqualListsInIterationOrder() {
+		CountedMultiMap<String, Integer> map = new CountedMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2, 1));
+		map.add("b", 3);
+
+		assertEquals(map.getAll("a"), map.getAll("a"));
+		assertEquals(map.getAll("a").hashCode(), map.getAll("a").hashCode());
+		assertEquals(Arrays.asList(1, 1, 2), map.getAll("a"));
+		assertEquals(map.getAll("a"), Arrays.asList(1, 1, 2));
+		assertNotEquals(map.getAll("a"), Arrays.asList(1, 2, 1));
+		assertEquals(Arrays.asList(3), map.getAll("b"));
+		assertTrue(map.containsCollection(new ArrayList<Integer>(map
+				.getAll("a"))));
+		assertTrue(map.containsCollection(Arrays.asList(3)));
+
+		CountedMultiMap<String, Integer> other = new CountedMultiMap<String, Integer>();
+		other.addAll("a", Arrays.asList(1, 1, 2));
+		assertEquals(map.getAll("a"), other.getAll("a"));
+	}
+
+	@Test
+	public void testPositionalAccessFollowsIterationOrder() {
+		CountedMultiMap<String, Integer> map = new CountedMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2, 1, 3));
+		List<Integer> values = (List<Integer>) map.getAll("a");
+
+		assertEquals(Integer.valueOf(1), values.get(1));
+		assertEquals(Integer.valueOf(2), values.get(2));
+		assertEquals(Integer.valueOf(2), values.remove(2));
+		assertEquals(Arrays.asList(1, 1, 3), values);
+		assertEquals(3, map.couplesCount());
+		try {
+			values.add(0, 3);
+			fail("No exception thrown");
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+		assertEquals(3, map.couplesCount());
+	}
+}
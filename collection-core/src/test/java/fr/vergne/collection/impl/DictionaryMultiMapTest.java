@@ -0,0 +1,98 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.junit.Test;
+
+import fr.vergne.collection.impl.DictionaryMultiMap.Dictionary;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link DictionaryMultiMap} for details.
+ */
+public class DictionaryMultiMapTest {
+
+	@Test
+	public void testValuesAreKeptInOrderWithDuplicates() {
+		DictionaryMultiMap<String, String> map = new DictionaryMultiMap<String, String>();
+		map.addAll("a", Arrays.asList("x", "y", "x", null));
+
+		assertEquals(Arrays.asList("x", "y", "x", null), map.getAll("a"));
+		assertEquals(4, map.couplesCount());
+		assertTrue(map.containsCouple("a", null));
+		assertFalse(map.containsCouple("a", "z"));
+
+		assertTrue(map.remove("a", "x"));
+		assertEquals(Arrays.asList("y", "x", null), map.getAll("a"));
+		assertNull(map.getAll("b"));
+	}
+
+	@Test
+	public void testDistinctValuesAreInternedOnce() {
+		DictionaryMultiMap<Integer, String> map = new DictionaryMultiMap<Integer, String>();
+		for (int i = 0; i < 10000; i++) {
+			map.add(i, new String("value" + (i % 10)));
+		}
+
+		assertEquals(10, map.getDictionary().size());
+		assertEquals(10000, map.couplesCount());
+		assertSame(map.getAll(3).iterator().next(), map.getAll(13).iterator()
+				.next());
+	}
+
+	@Test
+	public void testUnusedValuesAreReleased() {
+		Dictionary<String> dictionary = new Dictionary<String>();
+		DictionaryMultiMap<String, String> map1 = new DictionaryMultiMap<String, String>(
+				dictionary);
+		DictionaryMultiMap<String, String> map2 = new DictionaryMultiMap<String, String>(
+				dictionary);
+		map1.addAll("a", Arrays.asList("x", "y"));
+		map2.add("b", "x");
+		assertEquals(2, dictionary.size());
+
+		map1.remove("a");
+		assertEquals(1, dictionary.size());
+		assertEquals(Arrays.asList("x"), map2.getAll("b"));
+
+		map2.clear();
+		assertEquals(0, dictionary.size());
+		assertTrue(map2.isEmpty());
+	}
+
+	@Test
+	public void testViewsModifyTheMap() {
+		DictionaryMultiMap<String, String> map = new DictionaryMultiMap<String, String>();
+		map.addAll("a", Arrays.asList("x", "y", "z"));
+		map.add("b", "x");
+
+		List<String> values = (List<String>) map.getAll("a");
+		values.set(1, "w");
+		values.add(0, "v");
+		assertEquals(Arrays.asList("v", "x", "w", "z"), map.getAll("a"));
+		assertEquals(5, map.couplesCount());
+
+		Iterator<Entry<String, String>> iterator = map.iterator();
+		List<String> remaining = new ArrayList<String>();
+		while (iterator.hasNext()) {
+			Entry<String, String> couple = iterator.next();
+			if (couple.getValue().equals("x")) {
+				iterator.remove();
+			} else {
+				remaining.add(couple.getValue());
+			}
+		}
+		assertEquals(3, remaining.size());
+		assertFalse(map.containsKey("b"));
+		assertEquals(Arrays.asList("v", "w", "z"), map.getAll("a"));
+		assertEquals(3, map.getDictionary().size());
+	}
+}
@@ -0,0 +1,208 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fr.vergne.collection.util.Equivalence;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link FrozenMultiMap} for details.
+ */
+public class FrozenMultiMapTest {
+
+	private HashMultiMap<String, Integer> createSource() {
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2, 3));
+		map.add("b", 4);
+		for (int i = 0; i < 1000; i++) {
+			map.add("c", i * 7);
+		}
+		map.add("d", null);
+		return map;
+	}
+
+	@Test
+	public void testFrozenMapHasSameContent() {
+		HashMultiMap<String, Integer> source = createSource();
+		FrozenMultiMap<String, Integer> frozen = source.freeze();
+
+		assertEquals(source.size(), frozen.size());
+		assertEquals(source.keySet(), frozen.keySet());
+		for (String key : source.keySet()) {
+			assertEquals(source.getAll(key),
+					new HashSet<Integer>(frozen.getAll(key)));
+		}
+		assertNull(frozen.getAll("e"));
+
+		Set<Entry<String, Integer>> sourceCouples = new HashSet<Entry<String, Integer>>();
+		source.forEach(sourceCouples::add);
+		Set<Entry<String, Integer>> frozenCouples = new HashSet<Entry<String, Integer>>();
+		frozen.forEach(frozenCouples::add);
+		assertEquals(sourceCouples, frozenCouples);
+		assertEquals(sourceCouples.size(), frozen.couplesCount());
+	}
+
+	@Test
+	public void testContainsCoupleFindsAllCouples() {
+		HashMultiMap<String, Integer> source = createSource();
+		FrozenMultiMap<String, Integer> frozen = new FrozenMultiMap<String, Integer>(
+				source);
+
+		for (Entry<String, Integer> couple : source) {
+			assertTrue(couple.toString(),
+					frozen.containsCouple(couple.getKey(), couple.getValue()));
+		}
+		assertFalse(frozen.containsCouple("a", 4));
+		assertFalse(frozen.containsCouple("c", 1));
+		assertFalse(frozen.containsCouple("d", 1));
+		assertFalse(frozen.containsCouple("e", 1));
+		assertTrue(frozen.getAll("c").contains(7));
+	}
+
+	@Test
+	public void testFrozenMapIsNotModifiable() {
+		FrozenMultiMap<String, Integer> frozen = createSource().freeze();
+		Collection<Integer> values = frozen.getAll("a");
+
+		try {
+			frozen.add("a", 4);
+			fail("No exception thrown");
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+		try {
+			values.add(4);
+			fail("No exception thrown");
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+		try {
+			frozen.iterator().remove();
+			fail("No exception thrown");
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+		assertEquals(3, values.size());
+	}
+
+	@Test
+	public void testFreezeKeepsKeyEquivalence() {
+		HashMultiMap<String, Integer> identity = new HashMultiMap<String, Integer>(
+				Equivalence.identity());
+		String key1 = new String("a");
+		String key2 = new String("a");
+		identity.add(key1, 1);
+		identity.add(key2, 2);
+		FrozenMultiMap<String, Integer> frozenIdentity = identity.freeze();
+
+		assertEquals(2, frozenIdentity.size());
+		assertEquals(Arrays.asList(1),
+				new ArrayList<Integer>(frozenIdentity.getAll(key1)));
+		assertEquals(Arrays.asList(2),
+				new ArrayList<Integer>(frozenIdentity.getAll(key2)));
+		assertFalse(frozenIdentity.containsKey("a"));
+
+		HashMultiMap<String, Integer> ignoreCase = new HashMultiMap<String, Integer>(
+				Equivalence.<String> of(key -> key.toLowerCase().hashCode(),
+						String::equalsIgnoreCase));
+		ignoreCase.addAll("a", Arrays.asList(1, 2));
+		FrozenMultiMap<String, Integer> frozenIgnoreCase = ignoreCase.freeze();
+
+		assertTrue(frozenIgnoreCase.containsKey("A"));
+		assertTrue(frozenIgnoreCase.containsCouple("A", 2));
+		assertEquals(2, frozenIgnoreCase.getAll("A").size());
+	}
+
+	@Test
+	public void testValuesEqualSameValuesWhateverTheOrder() {
+		HashMultiMap<String, Integer> source = createSource();
+		FrozenMultiMap<String, Integer> frozen = source.freeze();
+		for (String key : source.keySet()) {
+			assertEquals(source.getAll(key), frozen.getAll(key));
+			assertEquals(frozen.getAll(key), source.getAll(key));
+			assertEquals(source.getAll(key).hashCode(), frozen.getAll(key)
+					.hashCode());
+		}
+
+		ListMultiMap<String, Integer> list = new ListMultiMap<String, Integer>();
+		list.addAll("a", Arrays.asList(3, 1, 2, 1));
+		Collection<Integer> values = new FrozenMultiMap<String, Integer>(list)
+				.getAll("a");
+		ListMultiMap<String, Integer> reordered = new ListMultiMap<String, Integer>();
+		reordered.addAll("a", Arrays.asList(1, 2, 1, 3));
+		Collection<Integer> reorderedValues = new FrozenMultiMap<String, Integer>(
+				reordered).getAll("a");
+		assertEquals(values, reorderedValues);
+		assertEquals(reorderedValues, values);
+		assertEquals(values.hashCode(), reorderedValues.hashCode());
+
+		ListMultiMap<String, Integer> other = new ListMultiMap<String, Integer>();
+		other.addAll("a", Arrays.asList(1, 2, 3, 3));
+		assertNotEquals(values,
+				new FrozenMultiMap<String, Integer>(other).getAll("a"));
+		assertNotEquals(values, list.getAll("a"));
+		assertNotEquals(list.getAll("a"), values);
+		assertNotEquals(values, new HashSet<Integer>(Arrays.asList(1, 2, 3)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooManyCouplesAreRejected() {
+		Collection<Integer> huge = new AbstractCollection<Integer>() {
+
+			@Override
+			public Iterator<Integer> iterator() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public int size() {
+				return 1 << 30;
+			}
+		};
+		new FrozenMultiMap<String, Integer>(new MultiMapView<String, Integer>() {
+
+			@Override
+			public boolean add(String key, Integer value) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public boolean remove(String key, Integer value) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public boolean containsCouple(String key, Integer value) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Collection<Integer> getAll(Object key) {
+				return huge;
+			}
+
+			@Override
+			public Set<String> keySet() {
+				return new HashSet<String>(Arrays.asList("a", "b"));
+			}
+
+			@Override
+			public void clear() {
+				throw new UnsupportedOperationException();
+			}
+		});
+	}
+}
@@ -0,0 +1,290 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import fr.vergne.collection.MultiMap.Cursor;
+import fr.vergne.collection.util.Equivalence;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link HashMultiMap} for details.
+ */
+public class HashMultiMapTest {
+
+	@Test
+	public void testDuplicatedValuesAreIgnored() {
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>();
+
+		assertTrue(map.add("a", 1));
+		assertFalse(map.add("a", 1));
+		assertEquals(1, map.getAll("a").size());
+		assertTrue(map.add("a", 2));
+		assertFalse(map.add("a", 2));
+		assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)), map.getAll("a"));
+		assertEquals(map.getAll("a"), new HashSet<Integer>(Arrays.asList(1, 2)));
+
+		assertTrue(map.remove("a", 1));
+		assertFalse(map.remove("a", 1));
+		assertEquals(new HashSet<Integer>(Arrays.asList(2)), map.getAll("a"));
+	}
+
+	@Test
+	public void testCollectionValuesAreSupported() {
+		HashMultiMap<String, HashSet<Integer>> map = new HashMultiMap<String, HashSet<Integer>>();
+		HashSet<Integer> value = new HashSet<Integer>(Arrays.asList(1, 2));
+
+		assertTrue(map.add("a", value));
+		assertEquals(1, map.getAll("a").size());
+		assertTrue(map.containsCouple("a", value));
+		assertEquals(value, map.getAll("a").iterator().next());
+		assertTrue(map.remove("a", value));
+		assertFalse(map.containsKey("a"));
+	}
+
+	@Test
+	public void testForEachAndCursorVisitAllCouples() {
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2, 3));
+		map.add("b", 4);
+		Set<Entry<String, Integer>> expected = new HashSet<Entry<String, Integer>>();
+		for (Entry<String, Integer> couple : map) {
+			expected.add(couple);
+		}
+
+		Set<Entry<String, Integer>> visited = new HashSet<Entry<String, Integer>>();
+		map.forEach((String key, Integer value) -> visited
+				.add(new SimpleEntry<String, Integer>(key, value)));
+		assertEquals(expected, visited);
+
+		Set<Entry<String, Integer>> cursored = new HashSet<Entry<String, Integer>>();
+		Cursor<String, Integer> cursor = map.cursor();
+		while (cursor.advance()) {
+			cursored.add(new SimpleEntry<String, Integer>(cursor.key(), cursor
+					.value()));
+		}
+		assertEquals(expected, cursored);
+		try {
+			cursor.key();
+			fail("No exception thrown");
+		} catch (IllegalStateException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void testAbsentAndEmptiedKeysAreNotStored() {
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>();
+		assertFalse(map.remove("a", 1));
+		assertFalse(map.removeAll("a", Arrays.asList(1, 2)));
+		assertFalse(map.containsCouple("a", 1));
+		assertNull(map.getAll("a"));
+		assertTrue(map.keySet().isEmpty());
+
+		map.addAll("b", Arrays.asList(1, 2, 3));
+		Iterator<Integer> iterator = map.getAll("b").iterator();
+		while (iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+		assertFalse(map.containsKey("b"));
+		assertEquals(0, map.size());
+	}
+
+	@Test
+	public void testCompactKeepsAllCouples() {
+		HashMultiMap<Integer, Integer> map = new HashMultiMap<Integer, Integer>();
+		for (int i = 0; i < 10000; i++) {
+			map.add(i % 100, i);
+		}
+		for (int i = 0; i < 10000; i++) {
+			if (i % 1000 != 0) {
+				map.remove(i % 100, i);
+			} else {
+				// keep it
+			}
+		}
+		map.compact();
+
+		assertEquals(1, map.size());
+		assertEquals(10, map.couplesCount());
+		assertEquals(10, map.getAll(0).size());
+		assertTrue(map.containsCouple(0, 9000));
+		map.add(0, 1);
+		assertEquals(11, map.getAll(0).size());
+	}
+
+	@Test
+	public void testIdentityEquivalenceSeparatesEqualKeys() {
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>(
+				Equivalence.identity());
+		String key1 = new String("a");
+		String key2 = new String("a");
+		map.add(key1, 1);
+		map.add(key2, 2);
+
+		assertEquals(2, map.size());
+		assertEquals(new HashSet<Integer>(Arrays.asList(1)), map.getAll(key1));
+		assertEquals(new HashSet<Integer>(Arrays.asList(2)), map.getAll(key2));
+		assertFalse(map.containsKey("b"));
+	}
+
+	@Test
+	public void testCustomEquivalenceMergesEquivalentKeys() {
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>(
+				Equivalence.<String> of(key -> key.toLowerCase().hashCode(),
+						String::equalsIgnoreCase));
+		map.add("a", 1);
+		map.add("A", 2);
+
+		assertEquals(1, map.size());
+		assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)),
+				map.getAll("a"));
+		assertTrue(map.containsCouple("A", 1));
+	}
+
+	@Test
+	public void testSetSemanticsAcrossArrayThreshold() {
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>();
+		map.setArrayThreshold(4);
+		Set<Integer> expected = new HashSet<Integer>();
+		for (int i = 0; i < 20; i++) {
+			assertTrue(map.add("a", i));
+			assertFalse(map.add("a", i));
+			expected.add(i);
+			assertEquals(expected, map.getAll("a"));
+		}
+		for (int i = 19; i > 0; i--) {
+			assertTrue(map.remove("a", i));
+			assertFalse(map.remove("a", i));
+			expected.remove(i);
+			assertEquals(expected, map.getAll("a"));
+			assertFalse(map.containsCouple("a", i));
+		}
+		assertTrue(map.add("a", null));
+		assertFalse(map.add("a", null));
+		assertTrue(map.containsCouple("a", null));
+		assertEquals(2, map.couplesCount());
+	}
+
+	@Test
+	public void testAbsorbedKeysFollowTheNewEquivalence() {
+		HashMultiMap<String, Integer> source = new HashMultiMap<String, Integer>(
+				Equivalence.identity());
+		source.addAll(new String("a"), Arrays.asList(1, 2));
+		source.addAll(new String("a"), Arrays.asList(2, 3));
+		source.add("b", 4);
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>();
+		map.add("b", 5);
+
+		map.absorb(source);
+		assertTrue(source.isEmpty());
+		assertEquals(2, map.size());
+		assertEquals(5, map.couplesCount());
+		assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 3)),
+				map.getAll("a"));
+		assertEquals(new HashSet<Integer>(Arrays.asList(4, 5)),
+				map.getAll("b"));
+	}
+
+	@Test
+	public void testAbsorbedValuesFollowTheNewThreshold() {
+		HashMultiMap<String, Integer> source = new HashMultiMap<String, Integer>();
+		source.setArrayThreshold(100);
+		source.addAll("a", Arrays.asList(5, 4, 3));
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>();
+		map.setArrayThreshold(1);
+
+		map.absorb(source);
+		assertEquals(Arrays.asList(5, 4, 3),
+				new ArrayList<Integer>(map.getAll("a")));
+		map.add("a", 2);
+
+		// moved to a HashSet, which sorts small integers
+		assertEquals(Arrays.asList(2, 3, 4, 5),
+				new ArrayList<Integer>(map.getAll("a")));
+	}
+
+	@Test
+	public void testSubclassGeneratingItsOwnCollectionsIsUsed() {
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>() {
+			@Override
+			protected Collection<Integer> generateInnerCollection(String key) {
+				return new TreeSet<Integer>();
+			}
+		};
+		map.addAll("a", Arrays.asList(3, 1, 2));
+		map.add("b", 5);
+		map.add("b", 4);
+
+		assertEquals(Arrays.asList(1, 2, 3),
+				new ArrayList<Integer>(map.getAll("a")));
+		assertEquals(Arrays.asList(4, 5),
+				new ArrayList<Integer>(map.getAll("b")));
+	}
+
+	@Test
+	public void testIteratorRemovalOnArrayValues() {
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2, 3, 4));
+		Iterator<Integer> iterator = map.getAll("a").iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() % 2 == 0) {
+				iterator.remove();
+			} else {
+				// keep it
+			}
+		}
+
+		assertEquals(new HashSet<Integer>(Arrays.asList(1, 3)),
+				map.getAll("a"));
+		assertEquals(2, map.couplesCount());
+	}
+
+	@Test
+	public void testLargeAdditionIsPreSized() {
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>();
+		List<Integer> values = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			values.add(i % 500);
+		}
+		map.addAll("a", values);
+
+		assertEquals(500, map.getAll("a").size());
+		assertEquals(500, map.couplesCount());
+	}
+
+	@Test
+	public void testKeySetRemovalUpdatesCouplesCount() {
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2, 3));
+		map.add("b", 4);
+
+		Iterator<String> iterator = map.keySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().equals("a")) {
+				iterator.remove();
+			} else {
+				// keep it
+			}
+		}
+		assertEquals(1, map.couplesCount());
+
+		map.keySet().remove("b");
+		assertEquals(0, map.couplesCount());
+	}
+}
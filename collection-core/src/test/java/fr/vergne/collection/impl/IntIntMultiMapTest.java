@@ -0,0 +1,161 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fr.vergne.collection.MultiMap;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link IntIntMultiMap} for details.
+ */
+public class IntIntMultiMapTest {
+
+	@Test
+	public void testAddedCouplesAreContained() {
+		IntIntMultiMap map = new IntIntMultiMap();
+
+		assertTrue(map.add(1, 10));
+		assertTrue(map.add(1, 5));
+		assertFalse(map.add(1, 10));
+		assertTrue(map.addAll(2, 3, 2, 1));
+
+		assertEquals(2, map.size());
+		assertEquals(5, map.couplesCount());
+		assertTrue(map.containsCouple(1, 5));
+		assertTrue(map.containsCouple(1, 10));
+		assertFalse(map.containsCouple(1, 1));
+		assertFalse(map.containsCouple(3, 1));
+		assertArrayEquals(new int[] { 5, 10 }, map.getAll(1));
+		assertArrayEquals(new int[] { 1, 2, 3 }, map.getAll(2));
+		assertArrayEquals(new int[0], map.getAll(3));
+	}
+
+	@Test
+	public void testAddAllMergesValuesWithCurrentOnes() {
+		IntIntMultiMap map = new IntIntMultiMap();
+		map.addAll(1, 4, 8);
+
+		assertTrue(map.addAll(1, 9, 2, 4, 6, 2, 0));
+		assertFalse(map.addAll(1, 8, 0, 9));
+		assertFalse(map.addAll(2));
+		assertFalse(map.containsKey(2));
+
+		assertEquals(6, map.couplesCount());
+		assertArrayEquals(new int[] { 0, 2, 4, 6, 8, 9 }, map.getAll(1));
+		assertTrue(map.add(1, 5));
+		assertTrue(map.remove(1, 0));
+		assertArrayEquals(new int[] { 2, 4, 5, 6, 8, 9 }, map.getAll(1));
+	}
+
+	@Test
+	public void testAddAllIsConsistentWithAdd() {
+		IntIntMultiMap bulk = new IntIntMultiMap();
+		IntIntMultiMap single = new IntIntMultiMap();
+		Random random = new Random(0);
+		for (int i = 0; i < 1000; i++) {
+			int key = random.nextInt(10) * 1000;
+			int[] values = new int[random.nextInt(20)];
+			for (int index = 0; index < values.length; index++) {
+				values[index] = random.nextInt(500) - 250;
+			}
+			boolean isChanged = false;
+			for (int value : values) {
+				isChanged |= single.add(key, value);
+			}
+			assertEquals(isChanged, bulk.addAll(key, values));
+		}
+
+		assertEquals(single.couplesCount(), bulk.couplesCount());
+		for (int key = 0; key < 10; key++) {
+			assertArrayEquals(single.getAll(key * 1000),
+					bulk.getAll(key * 1000));
+		}
+	}
+
+	@Test
+	public void testRemovingLastValueRemovesKey() {
+		IntIntMultiMap map = new IntIntMultiMap();
+		map.addAll(1, 1, 2);
+
+		assertTrue(map.remove(1, 1));
+		assertTrue(map.containsKey(1));
+		assertFalse(map.remove(1, 1));
+		assertTrue(map.remove(1, 2));
+		assertFalse(map.containsKey(1));
+		assertEquals(0, map.size());
+		assertEquals(0, map.couplesCount());
+	}
+
+	@Test
+	public void testConsistentWithHashMultiMapOnRandomOperations() {
+		IntIntMultiMap map = new IntIntMultiMap();
+		HashMultiMap<Integer, Integer> reference = new HashMultiMap<Integer, Integer>();
+		Random random = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			int key = random.nextInt(1000) - 500;
+			int value = random.nextInt(20);
+			if (random.nextInt(3) == 0) {
+				assertEquals(reference.remove(key, value),
+						map.remove(key, value));
+			} else {
+				assertEquals(reference.add(key, value), map.add(key, value));
+			}
+		}
+		map.trimToSize();
+
+		Set<Entry<Integer, Integer>> expected = new HashSet<Entry<Integer, Integer>>();
+		for (Entry<Integer, Integer> entry : reference) {
+			expected.add(entry);
+		}
+		Set<Entry<Integer, Integer>> actual = new HashSet<Entry<Integer, Integer>>();
+		for (Entry<Integer, Integer> entry : map.asMultiMap()) {
+			actual.add(entry);
+		}
+		assertEquals(expected, actual);
+
+		long[] count = { 0 };
+		map.forEach((key, value) -> {
+			assertTrue(reference.containsCouple(key, value));
+			count[0]++;
+		});
+		assertEquals(expected.size(), count[0]);
+		assertEquals(expected.size(), map.couplesCount());
+	}
+
+	@Test
+	public void testMultiMapViewReflectsChanges() {
+		IntIntMultiMap map = new IntIntMultiMap();
+		MultiMap<Integer, Integer> view = map.asMultiMap();
+
+		view.addAll(1, Arrays.asList(1, 2, 3));
+		assertTrue(map.containsCouple(1, 2));
+		assertEquals(1, view.size());
+		assertEquals(3, view.getAll(1).size());
+		assertNull(view.getAll(2));
+
+		Iterator<Integer> iterator = view.getAll(1).iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() == 2) {
+				iterator.remove();
+			} else {
+				// keep it
+			}
+		}
+		assertArrayEquals(new int[] { 1, 3 }, map.getAll(1));
+
+		assertEquals(new HashSet<Integer>(Arrays.asList(1, 3)),
+				new HashSet<Integer>(view.remove((Object) 1)));
+		assertTrue(map.isEmpty());
+	}
+}
@@ -0,0 +1,119 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link ListMultiMap} for details.
+ */
+public class ListMultiMapTest {
+
+	@Test
+	public void testDuplicatedValuesAreKept() {
+		ListMultiMap<String, Integer> map = new ListMultiMap<String, Integer>();
+
+		assertTrue(map.add("a", 1));
+		assertEquals(Arrays.asList(1), map.getAll("a"));
+		assertTrue(map.add("a", 1));
+		assertEquals(Arrays.asList(1, 1), map.getAll("a"));
+		assertTrue(map.add("a", 2));
+		assertEquals(Arrays.asList(1, 1, 2), map.getAll("a"));
+		assertEquals(3, map.couplesCount());
+
+		assertTrue(map.remove("a", 1));
+		assertEquals(Arrays.asList(1, 2), map.getAll("a"));
+		assertTrue(map.remove("a", 1));
+		assertEquals(Arrays.asList(2), map.getAll("a"));
+		assertFalse(map.remove("a", 1));
+		assertTrue(map.remove("a", 2));
+		assertFalse(map.containsKey("a"));
+		assertNull(map.getAll("a"));
+	}
+
+	@Test
+	public void testGetAllIsALiveView() {
+		ListMultiMap<String, Integer> map = new ListMultiMap<String, Integer>();
+		map.add("a", 1);
+		Collection<Integer> values = map.getAll("a");
+
+		values.add(2);
+		assertTrue(map.containsCouple("a", 2));
+		assertEquals(2, values.size());
+
+		values.remove(1);
+		assertFalse(map.containsCouple("a", 1));
+		assertEquals(Arrays.asList(2), values);
+
+		values.clear();
+		assertFalse(map.containsKey("a"));
+		assertTrue(values.isEmpty());
+	}
+
+	@Test
+	public void testIteratorRemovesCouples() {
+		ListMultiMap<String, Integer> map = new ListMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2, 3));
+		map.add("b", 4);
+		map.addAll("c", Arrays.asList(5, 6));
+
+		List<Integer> values = new LinkedList<Integer>();
+		Iterator<Entry<String, Integer>> iterator = map.iterator();
+		while (iterator.hasNext()) {
+			Entry<String, Integer> entry = iterator.next();
+			values.add(entry.getValue());
+			if (entry.getValue() != 2) {
+				iterator.remove();
+			} else {
+				// keep it
+			}
+		}
+
+		assertEquals(6, values.size());
+		assertEquals(1, map.size());
+		assertEquals(1, map.couplesCount());
+		assertEquals(Arrays.asList(2), map.getAll("a"));
+	}
+
+	@Test
+	public void testReplaceAllReturnsPreviousValues() {
+		ListMultiMap<String, Integer> map = new ListMultiMap<String, Integer>();
+		map.add("a", 1);
+
+		assertEquals(Arrays.asList(1), map.replaceAll("a", Arrays.asList(2, 3)));
+		assertEquals(Arrays.asList(2, 3), map.replaceAll("a", Arrays.asList(4)));
+		assertEquals(Arrays.asList(4), map.getAll("a"));
+		assertNull(map.replaceAll("b", Arrays.asList(5)));
+		assertTrue(map.containsCollection(Arrays.asList(4)));
+		assertTrue(map.containsCollection(Arrays.asList(5)));
+		assertFalse(map.containsCollection(Arrays.asList(2, 3)));
+	}
+
+	@Test
+	public void testAbsorbMovesAllCouples() {
+		ListMultiMap<String, Integer> map1 = new ListMultiMap<String, Integer>();
+		map1.add("a", 1);
+		map1.add("b", 2);
+		ListMultiMap<String, Integer> map2 = new ListMultiMap<String, Integer>();
+		map2.addAll("a", Arrays.asList(3, 4, 5));
+		map2.add("c", 6);
+
+		map1.absorb(map2);
+
+		assertTrue(map2.isEmpty());
+		assertEquals(Arrays.asList(1, 3, 4, 5), map1.getAll("a"));
+		assertEquals(Arrays.asList(2), map1.getAll("b"));
+		assertEquals(Arrays.asList(6), map1.getAll("c"));
+		assertEquals(6, map1.couplesCount());
+	}
+}
@@ -0,0 +1,225 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fr.vergne.collection.MultiMap;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link LongLongMultiMap} for details.
+ */
+public class LongLongMultiMapTest {
+
+	private static final long BIG = 1L << 40;
+
+	@Test
+	public void testAddedCouplesAreContained() {
+		LongLongMultiMap map = new LongLongMultiMap();
+
+		assertTrue(map.add(BIG, 10));
+		assertTrue(map.add(BIG, -BIG));
+		assertFalse(map.add(BIG, 10));
+		assertTrue(map.addAll(2, 3, 2, 1, 2));
+
+		assertEquals(2, map.size());
+		assertEquals(5, map.couplesCount());
+		assertTrue(map.containsCouple(BIG, -BIG));
+		assertTrue(map.containsCouple(BIG, 10));
+		assertFalse(map.containsCouple(BIG, 1));
+		assertFalse(map.containsCouple(BIG + 1, 10));
+		assertEquals(2, map.count(BIG));
+		assertEquals(0, map.count(3));
+		assertArrayEquals(new long[] { -BIG, 10 }, map.getAll(BIG));
+		assertArrayEquals(new long[] { 1, 2, 3 }, map.getAll(2));
+		assertArrayEquals(new long[0], map.getAll(3));
+	}
+
+	@Test
+	public void testAddAllMergesValuesWithCurrentOnes() {
+		LongLongMultiMap map = new LongLongMultiMap();
+		map.addAll(1, 4, 8);
+
+		assertTrue(map.addAll(1, 9, 2, 4, 6, 2, 0));
+		assertFalse(map.addAll(1, 8, 0, 9));
+		assertFalse(map.addAll(2));
+		assertFalse(map.containsKey(2));
+
+		assertEquals(6, map.couplesCount());
+		assertArrayEquals(new long[] { 0, 2, 4, 6, 8, 9 }, map.getAll(1));
+		assertTrue(map.add(1, 5));
+		assertTrue(map.remove(1, 0));
+		assertArrayEquals(new long[] { 2, 4, 5, 6, 8, 9 }, map.getAll(1));
+	}
+
+	@Test
+	public void testAddAllIsConsistentWithAdd() {
+		LongLongMultiMap bulk = new LongLongMultiMap();
+		LongLongMultiMap single = new LongLongMultiMap();
+		Random random = new Random(0);
+		for (int i = 0; i < 1000; i++) {
+			long key = random.nextInt(10) * BIG;
+			long[] values = new long[random.nextInt(20)];
+			for (int index = 0; index < values.length; index++) {
+				values[index] = random.nextInt(500) - 250;
+			}
+			boolean isChanged = false;
+			for (long value : values) {
+				isChanged |= single.add(key, value);
+			}
+			assertEquals(isChanged, bulk.addAll(key, values));
+		}
+
+		assertEquals(single.couplesCount(), bulk.couplesCount());
+		for (int key = 0; key < 10; key++) {
+			assertArrayEquals(single.getAll(key * BIG),
+					bulk.getAll(key * BIG));
+		}
+	}
+
+	@Test
+	public void testRemovingLastValueRemovesKey() {
+		LongLongMultiMap map = new LongLongMultiMap();
+		map.addAll(BIG, 1, 2);
+
+		assertTrue(map.remove(BIG, 1));
+		assertTrue(map.containsKey(BIG));
+		assertFalse(map.remove(BIG, 1));
+		assertTrue(map.remove(BIG, 2));
+		assertFalse(map.containsKey(BIG));
+		assertEquals(0, map.size());
+		assertEquals(0, map.couplesCount());
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void testGrowthKeepsKeysDespiteRemovedOnes() {
+		LongLongMultiMap map = new LongLongMultiMap();
+		for (long key = 0; key < 1000; key++) {
+			map.add(key * BIG, key);
+			if (key % 2 == 0) {
+				map.remove(key * BIG);
+			} else {
+				// keep it
+			}
+		}
+		for (long key = 1000; key < 5000; key++) {
+			map.add(key * BIG, key);
+		}
+
+		assertEquals(4500, map.size());
+		assertEquals(4500, map.couplesCount());
+		for (long key = 0; key < 5000; key++) {
+			assertEquals(key < 1000 && key % 2 == 0 ? 0 : 1,
+					map.count(key * BIG));
+		}
+	}
+
+	@Test
+	public void testTrimToSizeKeepsCouples() {
+		LongLongMultiMap map = new LongLongMultiMap(1000);
+		for (long value = 0; value < 100; value++) {
+			map.add(1, value);
+		}
+		for (long value = 0; value < 90; value++) {
+			map.remove(1, value);
+		}
+		map.add(2, BIG);
+		map.trimToSize();
+
+		assertEquals(2, map.size());
+		assertEquals(11, map.couplesCount());
+		assertArrayEquals(new long[] { 90, 91, 92, 93, 94, 95, 96, 97, 98, 99 },
+				map.getAll(1));
+		assertArrayEquals(new long[] { BIG }, map.getAll(2));
+		assertTrue(map.add(3, 3));
+		assertEquals(3, map.size());
+	}
+
+	@Test
+	public void testClearRemovesEverything() {
+		LongLongMultiMap map = new LongLongMultiMap();
+		map.addAll(1, 1, 2, 3);
+		map.add(BIG, BIG);
+		map.clear();
+
+		assertTrue(map.isEmpty());
+		assertEquals(0, map.couplesCount());
+		assertFalse(map.containsKey(1));
+		assertFalse(map.containsKey(BIG));
+		assertTrue(map.add(1, 1));
+	}
+
+	@Test
+	public void testConsistentWithHashMultiMapOnRandomOperations() {
+		LongLongMultiMap map = new LongLongMultiMap();
+		HashMultiMap<Long, Long> reference = new HashMultiMap<Long, Long>();
+		Random random = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			long key = (random.nextInt(1000) - 500) * BIG;
+			long value = random.nextInt(20);
+			if (random.nextInt(3) == 0) {
+				assertEquals(reference.remove(key, value),
+						map.remove(key, value));
+			} else {
+				assertEquals(reference.add(key, value), map.add(key, value));
+			}
+		}
+		map.trimToSize();
+
+		Set<Entry<Long, Long>> expected = new HashSet<Entry<Long, Long>>();
+		for (Entry<Long, Long> entry : reference) {
+			expected.add(entry);
+		}
+		Set<Entry<Long, Long>> actual = new HashSet<Entry<Long, Long>>();
+		for (Entry<Long, Long> entry : map.asMultiMap()) {
+			actual.add(entry);
+		}
+		assertEquals(expected, actual);
+
+		long[] count = { 0 };
+		map.forEach((key, value) -> {
+			assertTrue(reference.containsCouple(key, value));
+			count[0]++;
+		});
+		assertEquals(expected.size(), count[0]);
+		assertEquals(expected.size(), map.couplesCount());
+	}
+
+	@Test
+	public void testMultiMapViewReflectsChanges() {
+		LongLongMultiMap map = new LongLongMultiMap();
+		MultiMap<Long, Long> view = map.asMultiMap();
+
+		view.addAll(BIG, Arrays.asList(1L, 2L, 3L));
+		assertTrue(map.containsCouple(BIG, 2));
+		assertEquals(1, view.size());
+		assertEquals(3, view.getAll(BIG).size());
+		assertNull(view.getAll(2L));
+		assertFalse(view.containsKey((int) 1));
+
+		Iterator<Long> iterator = view.getAll(BIG).iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() == 2) {
+				iterator.remove();
+			} else {
+				// keep it
+			}
+		}
+		assertArrayEquals(new long[] { 1, 3 }, map.getAll(BIG));
+
+		assertEquals(new HashSet<Long>(Arrays.asList(1L, 3L)),
+				new HashSet<Long>(view.remove((Object) BIG)));
+		assertTrue(map.isEmpty());
+	}
+}
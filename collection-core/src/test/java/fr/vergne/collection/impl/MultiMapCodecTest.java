@@ -0,0 +1,151 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.util.Serializer;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link MultiMapCodec} for details.
+ */
+public class MultiMapCodecTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final MultiMapCodec<String, String> codec = new MultiMapCodec<String, String>(
+			Serializer.string(), Serializer.string());
+
+	private ListMultiMap<String, String> createMap() {
+		ListMultiMap<String, String> map = new ListMultiMap<String, String>();
+		map.addAll("a", Arrays.asList("x", "y", "x"));
+		map.add("b", "y");
+		for (int i = 0; i < 300; i++) {
+			map.add("c", "v" + i);
+		}
+		return map;
+	}
+
+	@Test
+	public void testStreamingReadRestoresCouples() throws IOException {
+		ListMultiMap<String, String> map = createMap();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		codec.write(map, Channels.newChannel(bytes));
+
+		ListMultiMap<String, String> read = new ListMultiMap<String, String>();
+		codec.read(Channels.newChannel(new ByteArrayInputStream(bytes
+				.toByteArray())), read);
+
+		assertEquals(map.keySet(), read.keySet());
+		for (String key : map.keySet()) {
+			assertEquals(map.getAll(key), read.getAll(key));
+		}
+	}
+
+	@Test
+	public void testMappedReadDecodesOnDemand() throws IOException {
+		ListMultiMap<String, String> map = createMap();
+		Path file = folder.getRoot().toPath().resolve("snapshot");
+		codec.write(map, file);
+
+		MultiMap<String, String> read = codec.open(file);
+		assertEquals(3, read.size());
+		assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c")),
+				read.keySet());
+		assertEquals(Arrays.asList("x", "y", "x"),
+				new ArrayList<String>(read.getAll("a")));
+		assertEquals(300, read.getAll("c").size());
+		assertTrue(read.containsCouple("c", "v299"));
+		assertFalse(read.containsCouple("b", "x"));
+		assertNull(read.getAll("d"));
+	}
+
+	@Test
+	public void testMappedReadFindsKeysThroughTheIndex() throws IOException {
+		ListMultiMap<String, String> map = new ListMultiMap<String, String>();
+		for (int i = 0; i < 1000; i++) {
+			map.add("k" + i, "v" + (i % 10));
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		codec.write(map, Channels.newChannel(bytes));
+
+		MultiMap<String, String> read = codec.open(ByteBuffer.wrap(bytes
+				.toByteArray()));
+		assertEquals(1000, read.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(Arrays.asList("v" + (i % 10)), new ArrayList<String>(
+					read.getAll("k" + i)));
+		}
+		for (int i = 1000; i < 2000; i++) {
+			assertFalse(read.containsKey("k" + i));
+		}
+		assertEquals(map.keySet(), read.keySet());
+	}
+
+	@Test
+	public void testMappedReadDecodesMoreThanItCaches() throws IOException {
+		ListMultiMap<String, String> map = new ListMultiMap<String, String>();
+		for (int i = 0; i < 10000; i++) {
+			map.addAll("k" + (i % 100), Arrays.asList("v" + i, "w" + i));
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		codec.write(map, Channels.newChannel(bytes));
+
+		MultiMap<String, String> read = codec.open(ByteBuffer.wrap(bytes
+				.toByteArray()));
+		for (int round = 0; round < 2; round++) {
+			for (String key : map.keySet()) {
+				assertEquals(map.getAll(key), new ArrayList<String>(
+						read.getAll(key)));
+			}
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(read.containsCouple("k" + (i % 100), "w" + i));
+			assertFalse(read.containsCouple("k" + ((i + 1) % 100), "w" + i));
+		}
+		assertTrue(read.getAll("k0").contains("v100"));
+		assertFalse(read.getAll("k0").contains("v101"));
+		assertFalse(read.getAll("k0").contains(0));
+	}
+
+	@Test(expected = IOException.class)
+	public void testPositionOutOfTheSnapshotIsRejected() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		codec.write(createMap(), Channels.newChannel(bytes));
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		// a position which would be 0 once truncated to an int
+		buffer.putLong(buffer.limit() - (5 * 8 + 3 * 4), 1L << 32);
+
+		codec.open(buffer);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testMappedReadIsReadOnly() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		codec.write(createMap(), Channels.newChannel(bytes));
+
+		codec.open(ByteBuffer.wrap(bytes.toByteArray())).add("d", "z");
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnknownFormatIsRejected() throws IOException {
+		codec.open(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6 }));
+	}
+}
@@ -0,0 +1,230 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import fr.vergne.collection.impl.ObservableMultiMap.Event;
+import fr.vergne.collection.impl.ObservableMultiMap.Event.Type;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link ObservableMultiMap} for details.
+ */
+public class ObservableMultiMapTest {
+
+	@Test
+	public void testActualChangesAreNotified() {
+		ObservableMultiMap<String, Integer> map = new ObservableMultiMap<String, Integer>(
+				new HashMultiMap<String, Integer>());
+		List<String> events = new ArrayList<String>();
+		map.addListener(batch -> batch.forEach(event -> events.add(event
+				.toString())));
+
+		map.add("a", 1);
+		map.add("a", 1);
+		map.remove("a", 2);
+		map.getAll("a").add(2);
+		map.remove("a", 1);
+		map.replaceAll("a", Arrays.asList(3));
+		map.clear();
+		map.clear();
+
+		assertEquals(Arrays.asList("ADDED(a, 1)", "ADDED(a, 2)",
+				"REMOVED(a, 1)", "REPLACED(a, [2] -> [3])", "CLEARED"), events);
+	}
+
+	@Test
+	public void testMultipleChangesAreDeliveredInBatch() {
+		ObservableMultiMap<String, Integer> map = new ObservableMultiMap<String, Integer>(
+				new ListMultiMap<String, Integer>());
+		List<List<Event<String, Integer>>> batches = new ArrayList<List<Event<String, Integer>>>();
+		map.addListener(batches::add);
+
+		map.addAll("a", Arrays.asList(1, 2, 3));
+		assertEquals(1, batches.size());
+		assertEquals(3, batches.get(0).size());
+
+		map.batch(() -> {
+			map.add("b", 4);
+			map.remove("a");
+			assertEquals(1, batches.size());
+		});
+		assertEquals(2, batches.size());
+		assertEquals(4, batches.get(1).size());
+		for (Event<String, Integer> event : batches.get(1).subList(1, 4)) {
+			assertEquals(Type.REMOVED, event.getType());
+			assertEquals("a", event.getKey());
+		}
+	}
+
+	@Test
+	public void testDerivedCountsRemainConsistent() {
+		ObservableMultiMap<Integer, Integer> map = new ObservableMultiMap<Integer, Integer>(
+				new HashMultiMap<Integer, Integer>());
+		int[] count = { 0 };
+		map.addListener(batch -> {
+			for (Event<Integer, Integer> event : batch) {
+				switch (event.getType()) {
+				case ADDED:
+					count[0]++;
+					break;
+				case REMOVED:
+					count[0]--;
+					break;
+				case REPLACED:
+					count[0] += event.getNewValues().size()
+							- event.getPreviousValues().size();
+					break;
+				case CLEARED:
+					count[0] = 0;
+					break;
+				}
+			}
+		});
+
+		for (int i = 0; i < 100; i++) {
+			map.add(i % 7, i);
+		}
+		map.keySet().remove(3);
+		Iterator<Entry<Integer, Integer>> iterator = map.iterator();
+		iterator.next();
+		iterator.remove();
+		map.getAll(4).removeIf(value -> value % 2 == 0);
+		map.replaceAll(5, Arrays.asList(-1, -2));
+		Iterator<Integer> keyIterator = map.keySet().iterator();
+		keyIterator.next();
+		keyIterator.remove();
+
+		int expected = 0;
+		for (Integer key : map.keySet()) {
+			expected += map.getAll(key).size();
+		}
+		assertEquals(expected, count[0]);
+	}
+
+	@Test
+	public void testAsynchronousDeliveryKeepsOrder() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		ObservableMultiMap<Integer, Integer> map = new ObservableMultiMap<Integer, Integer>(
+				new ListMultiMap<Integer, Integer>(), executor);
+		List<Integer> values = new ArrayList<Integer>();
+		CountDownLatch delivered = new CountDownLatch(1000);
+		map.addListener(batch -> batch.forEach(event -> {
+			values.add(event.getValue());
+			delivered.countDown();
+		}));
+
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			map.add(0, i);
+			expected.add(i);
+		}
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+		executor.shutdown();
+
+		assertEquals(expected, values);
+	}
+
+	@Test
+	public void testRejectedDispatchDoesNotBlockLaterOnes() {
+		boolean[] isRejecting = { true };
+		Executor executor = task -> {
+			if (isRejecting[0]) {
+				throw new RejectedExecutionException();
+			} else {
+				task.run();
+			}
+		};
+		ObservableMultiMap<String, Integer> map = new ObservableMultiMap<String, Integer>(
+				new HashMultiMap<String, Integer>(), executor);
+		List<String> events = new ArrayList<String>();
+		map.addListener(batch -> batch.forEach(event -> events.add(event
+				.toString())));
+
+		try {
+			map.add("a", 1);
+			fail("No exception thrown");
+		} catch (RejectedExecutionException e) {
+			// OK
+		}
+		assertTrue(events.isEmpty());
+
+		isRejecting[0] = false;
+		map.add("a", 2);
+		assertEquals(Arrays.asList("ADDED(a, 1)", "ADDED(a, 2)"), events);
+	}
+
+	@Test
+	public void testFailingListenerDoesNotBlockLaterDeliveries()
+			throws InterruptedException {
+		List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+		ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task);
+			thread.setUncaughtExceptionHandler((t, cause) -> failures.add(cause));
+			return thread;
+		});
+		ObservableMultiMap<String, Integer> map = new ObservableMultiMap<String, Integer>(
+				new ListMultiMap<String, Integer>(), executor);
+		boolean[] isFailing = { true };
+		map.addListener(batch -> {
+			if (isFailing[0]) {
+				isFailing[0] = false;
+				throw new IllegalStateException("listener failure");
+			} else {
+				// accept the next ones
+			}
+		});
+		List<String> events = new CopyOnWriteArrayList<String>();
+		CountDownLatch delivered = new CountDownLatch(3);
+		map.addListener(batch -> batch.forEach(event -> {
+			events.add(event.toString());
+			delivered.countDown();
+		}));
+
+		map.add("a", 1);
+		map.add("a", 2);
+		map.add("a", 3);
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertEquals(Arrays.asList("ADDED(a, 1)", "ADDED(a, 2)", "ADDED(a, 3)"),
+				events);
+		assertEquals(1, failures.size());
+		assertEquals("listener failure", failures.get(0).getMessage());
+	}
+
+	@Test
+	public void testReplacingWithSameValuesIsNotNotified() {
+		ObservableMultiMap<String, Integer> map = new ObservableMultiMap<String, Integer>(
+				new HashMultiMap<String, Integer>());
+		List<String> events = new ArrayList<String>();
+		map.addListener(batch -> batch.forEach(event -> events.add(event
+				.toString())));
+		map.addAll("a", Arrays.asList(1, 2));
+		events.clear();
+
+		map.replaceAll("a", Arrays.asList(2, 1));
+		map.replaceAll("b", Arrays.asList());
+		assertEquals(Arrays.asList(), events);
+
+		map.replaceAll("a", Arrays.asList(1));
+		assertEquals(Arrays.asList("REPLACED(a, [2, 1] -> [1])"), events);
+	}
+}
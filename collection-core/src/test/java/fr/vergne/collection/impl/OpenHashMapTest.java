@@ -0,0 +1,91 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import fr.vergne.collection.util.Equivalence;
+
+public class OpenHashMapTest {
+
+	@Test
+	public void testBehavesLikeHashMap() {
+		Random random = new Random(0);
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		OpenHashMap<Integer, Integer> map = new OpenHashMap<Integer, Integer>(
+				Equivalence.natural());
+		for (int i = 0; i < 100000; i++) {
+			Integer key = random.nextInt(1000) - 10;
+			if (key < 0) {
+				key = null;
+			} else {
+				// keep it
+			}
+			int action = random.nextInt(3);
+			if (action == 0) {
+				assertEquals(expected.put(key, i), map.put(key, i));
+			} else if (action == 1) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				assertEquals(expected.get(key), map.get(key));
+				assertEquals(expected.containsKey(key), map.containsKey(key));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		assertEquals(expected, map);
+	}
+
+	@Test
+	public void testIteratorRemovalVisitsAllEntries() {
+		Random random = new Random(0);
+		for (int round = 0; round < 100; round++) {
+			OpenHashMap<Integer, Integer> map = new OpenHashMap<Integer, Integer>(
+					Equivalence.natural());
+			for (int i = 0; i < 1000; i++) {
+				map.put(random.nextInt(), i);
+			}
+			Set<Integer> keys = new HashSet<Integer>(map.keySet());
+
+			Set<Integer> visited = new HashSet<Integer>();
+			Set<Integer> removed = new HashSet<Integer>();
+			Iterator<Entry<Integer, Integer>> iterator = map.entrySet()
+					.iterator();
+			while (iterator.hasNext()) {
+				Integer key = iterator.next().getKey();
+				assertTrue(visited.add(key));
+				if (random.nextBoolean()) {
+					iterator.remove();
+					removed.add(key);
+				} else {
+					// keep it
+				}
+			}
+
+			assertEquals(keys, visited);
+			keys.removeAll(removed);
+			assertEquals(keys, map.keySet());
+		}
+	}
+
+	@Test
+	public void testSpliteratorProvidesAllKeys() {
+		OpenHashMap<Integer, Integer> map = new OpenHashMap<Integer, Integer>(
+				Equivalence.natural());
+		for (int i = 0; i < 10000; i++) {
+			map.put(i, i);
+		}
+
+		assertEquals(map.keySet().stream().collect(Collectors.toSet()), map
+				.keySet().parallelStream().collect(Collectors.toSet()));
+		assertEquals(10000, map.keySet().parallelStream().count());
+	}
+}
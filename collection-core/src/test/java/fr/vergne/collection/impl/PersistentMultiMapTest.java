@@ -0,0 +1,206 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.vergne.collection.util.Serializer;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link PersistentMultiMap} for details.
+ */
+public class PersistentMultiMapTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Serializer<String> keys = Serializer
+			.string();
+	private final Serializer<Integer> values = Serializer
+			.java();
+
+	@Test
+	public void testCouplesAreStoredAsInASet() throws IOException {
+		try (PersistentMultiMap<String, Integer> map = new PersistentMultiMap<String, Integer>(
+				folder.getRoot().toPath(), keys, values)) {
+			assertTrue(map.add("a", 1));
+			assertFalse(map.add("a", 1));
+			assertTrue(map.add("a", 2));
+			assertTrue(map.add("b", 3));
+			assertEquals(2, map.size());
+			assertTrue(map.containsCouple("a", 2));
+			assertEquals(Arrays.asList(1, 2), new ArrayList<Integer>(
+					map.getAll("a")));
+
+			assertTrue(map.remove("a", 1));
+			assertFalse(map.remove("a", 1));
+			assertFalse(map.containsCouple("a", 1));
+			assertTrue(map.add("a", 1));
+			assertEquals(Arrays.asList(2, 1), new ArrayList<Integer>(
+					map.getAll("a")));
+
+			assertEquals(Arrays.asList(2, 1), map.remove("a"));
+			assertFalse(map.containsKey("a"));
+			assertNull(map.getAll("a"));
+			assertEquals(1, map.size());
+		}
+	}
+
+	@Test
+	public void testCouplesSurviveReopening() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (PersistentMultiMap<String, Integer> map = new PersistentMultiMap<String, Integer>(
+				directory, keys, values)) {
+			for (int i = 0; i < 100; i++) {
+				map.add("k" + (i % 30), i);
+			}
+			map.remove("k0");
+			map.remove("k1", 1);
+		}
+
+		try (PersistentMultiMap<String, Integer> map = new PersistentMultiMap<String, Integer>(
+				directory, keys, values)) {
+			assertEquals(29, map.size());
+			assertFalse(map.containsKey("k0"));
+			assertEquals(Arrays.asList(31, 61, 91), new ArrayList<Integer>(
+					map.getAll("k1")));
+			assertEquals(Arrays.asList(2, 32, 62, 92), new ArrayList<Integer>(
+					map.getAll("k2")));
+		}
+	}
+
+	@Test
+	public void testCompactionKeepsLiveCouples() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		try (PersistentMultiMap<String, Integer> map = new PersistentMultiMap<String, Integer>(
+				directory, keys, values)) {
+			for (int i = 0; i < 2000; i++) {
+				map.add("k" + (i % 10), i);
+			}
+			for (int i = 0; i < 2000; i++) {
+				if (i % 4 != 0) {
+					map.remove("k" + (i % 10), i);
+				} else {
+					// keep it
+				}
+			}
+			map.compactInBackground().get();
+
+			assertEquals(5, map.size());
+			assertEquals(Arrays.asList(0, 20, 40), map.getAll("k0").stream()
+					.limit(3).collect(Collectors.toList()));
+			assertEquals(100, map.getAll("k4").size());
+			assertFalse(map.containsKey("k1"));
+		}
+
+		try (PersistentMultiMap<String, Integer> map = new PersistentMultiMap<String, Integer>(
+				directory, keys, values)) {
+			assertEquals(new HashSet<String>(Arrays.asList("k0", "k2", "k4",
+					"k6", "k8")), map.keySet());
+			assertTrue(map.containsCouple("k8", 1988));
+		}
+	}
+
+	@Test
+	public void testIteratorRemovesCouples() throws IOException {
+		try (PersistentMultiMap<String, Integer> map = new PersistentMultiMap<String, Integer>(
+				folder.getRoot().toPath(), keys, values)) {
+			map.addAll("a", Arrays.asList(1, 2, 3));
+			map.add("b", 4);
+
+			Iterator<Integer> iterator = map.getAll("a").iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next() != 2) {
+					iterator.remove();
+				} else {
+					// keep it
+				}
+			}
+			Collection<Integer> remaining = map.getAll("a");
+			assertEquals(Arrays.asList(2), new ArrayList<Integer>(remaining));
+
+			map.keySet().removeIf(key -> key.equals("b"));
+			assertEquals(1, map.size());
+			assertFalse(map.containsKey("b"));
+		}
+	}
+
+	@Test
+	public void testChangesDuringBackgroundCompactionAreKept()
+			throws Exception {
+		Path directory = folder.getRoot().toPath();
+		HashMultiMap<String, Integer> expected = new HashMultiMap<String, Integer>();
+		try (PersistentMultiMap<String, Integer> map = new PersistentMultiMap<String, Integer>(
+				directory, keys, values)) {
+			for (int i = 0; i < 5000; i++) {
+				map.add("k" + (i % 500), i);
+				expected.add("k" + (i % 500), i);
+			}
+			Future<Void> compaction = map.compactInBackground();
+			for (int i = 0; i < 500; i++) {
+				map.remove("k" + i, i);
+				expected.remove("k" + i, i);
+				map.add("n" + (i % 7), i);
+				expected.add("n" + (i % 7), i);
+			}
+			map.remove("k1");
+			expected.remove("k1");
+			compaction.get();
+
+			assertEquals(expected.size(), map.size());
+			for (String key : expected.keySet()) {
+				assertEquals(key, expected.getAll(key), new HashSet<Integer>(
+						map.getAll(key)));
+			}
+		}
+
+		try (PersistentMultiMap<String, Integer> map = new PersistentMultiMap<String, Integer>(
+				directory, keys, values)) {
+			assertEquals(expected.keySet(), map.keySet());
+			assertTrue(map.containsCouple("n3", 493));
+			assertFalse(map.containsCouple("k2", 2));
+			assertTrue(map.containsCouple("k2", 502));
+		}
+	}
+
+	@Test
+	public void testAutomaticCompactionFailureIsThrownOnClose()
+			throws IOException {
+		Path directory = folder.getRoot().toPath();
+		PersistentMultiMap<String, Integer> map = new PersistentMultiMap<String, Integer>(
+				directory, keys, values);
+		// prevent the compacted log to be written
+		Path blocker = directory.resolve("multimap.log.compact");
+		Files.createDirectory(blocker);
+		Files.createFile(blocker.resolve("blocker"));
+		for (int i = 0; i < 2000; i++) {
+			map.add("k" + (i % 10), i);
+		}
+		for (int i = 0; i < 2000; i++) {
+			map.remove("k" + (i % 10), i);
+		}
+
+		try {
+			map.close();
+			fail("No exception thrown");
+		} catch (IOException cause) {
+			assertTrue(cause.getCause() instanceof IOException);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.vergne.collection.util.Equivalence;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link RankedMultiMap} for details.
+ */
+public class RankedMultiMapTest {
+
+	@Test
+	public void testTopKeysAreSortedBySize() {
+		RankedMultiMap<String, Integer> map = new RankedMultiMap<String, Integer>(
+				new HashMultiMap<String, Integer>());
+		map.addAll("a", Arrays.asList(1, 2, 3));
+		map.addAll("b", Arrays.asList(1));
+		map.addAll("c", Arrays.asList(1, 2, 3, 4, 5));
+		map.addAll("d", Arrays.asList(1, 2));
+		map.add("b", 1);
+
+		assertEquals(Arrays.asList("c", "a"), map.topKeysBySize(2));
+		assertEquals(Arrays.asList("c", "a", "d", "b"), map.topKeysBySize(10));
+		assertEquals(11, map.valueCount());
+
+		map.remove("c");
+		map.remove("a", 1);
+		map.getAll("d").add(3);
+		assertEquals(Arrays.asList("d", "a", "b"), map.topKeysBySize(3));
+		assertEquals(6, map.valueCount());
+	}
+
+	@Test
+	public void testRankingFollowsRandomChanges() {
+		Random random = new Random(0);
+		ListMultiMap<Integer, Integer> inner = new ListMultiMap<Integer, Integer>();
+		for (int i = 0; i < 100; i++) {
+			inner.add(random.nextInt(20), i);
+		}
+		RankedMultiMap<Integer, Integer> map = new RankedMultiMap<Integer, Integer>(
+				inner);
+		for (int i = 0; i < 10000; i++) {
+			int key = random.nextInt(20);
+			int value = random.nextInt(5);
+			if (random.nextBoolean()) {
+				map.add(key, value);
+			} else if (random.nextInt(10) > 0) {
+				map.remove(key, value);
+			} else {
+				Iterator<Integer> iterator = map.keySet().iterator();
+				if (iterator.hasNext()) {
+					iterator.next();
+					iterator.remove();
+				} else {
+					// nothing to remove
+				}
+			}
+
+			List<Integer> top = map.topKeysBySize(5);
+			assertEquals(Math.min(5, inner.size()), top.size());
+			int previous = Integer.MAX_VALUE;
+			for (Integer topKey : top) {
+				int size = inner.getAll(topKey).size();
+				assertTrue(size <= previous);
+				previous = size;
+			}
+			for (Integer other : inner.keySet()) {
+				if (!top.contains(other)) {
+					assertTrue(inner.getAll(other).size() <= previous);
+				} else {
+					// already checked
+				}
+			}
+			assertEquals(inner.couplesCount(), map.valueCount());
+		}
+	}
+
+	@Test
+	public void testKeysFollowTheComparatorOfTheDecoratedMap() {
+		RankedMultiMap<String, Integer> map = new RankedMultiMap<String, Integer>(
+				new TreeMultiMap<String, Integer>(String.CASE_INSENSITIVE_ORDER));
+		map.add("a", 1);
+		map.add("A", 2);
+		assertEquals(1, map.size());
+		assertEquals(2, map.valueCount());
+
+		assertTrue(map.remove("A", 1));
+		assertTrue(map.remove("a", 2));
+		assertEquals(0, map.size());
+		assertEquals(0, map.valueCount());
+		assertEquals(Arrays.asList(), map.topKeysBySize(1));
+	}
+
+	@Test
+	public void testKeysFollowTheEquivalenceOfTheDecoratedMap() {
+		RankedMultiMap<String, Integer> map = new RankedMultiMap<String, Integer>(
+				new HashMultiMap<String, Integer>(Equivalence.of(
+						key -> key.toLowerCase().hashCode(),
+						String::equalsIgnoreCase)));
+		map.addAll("a", Arrays.asList(1, 2));
+		map.add("B", 1);
+
+		assertTrue(map.containsKey("A"));
+		assertEquals(2, map.size());
+		assertEquals(Arrays.asList("a"), map.topKeysBySize(1));
+		map.remove("A");
+		assertEquals(1, map.valueCount());
+	}
+}
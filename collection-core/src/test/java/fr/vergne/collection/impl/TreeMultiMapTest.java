@@ -0,0 +1,97 @@
+package fr.vergne.collection.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.junit.Test;
+
+import fr.vergne.collection.NavigableMultiMap;
+
+/**
+ *
+ * @author Matthieu Vergne <matthieu.vergne@gmail.com>
+ * @deprecated Deprecated since the tested class is deprecated. See the
+ *             documentation of {@link TreeMultiMap} for details.
+ */
+public class TreeMultiMapTest {
+
+	private TreeMultiMap<Integer, String> createMap() {
+		TreeMultiMap<Integer, String> map = new TreeMultiMap<Integer, String>();
+		map.add(30, "c");
+		map.add(10, "a1");
+		map.add(10, "a2");
+		map.add(20, "b");
+		map.add(40, "d");
+		return map;
+	}
+
+	@Test
+	public void testKeysAreSorted() {
+		TreeMultiMap<Integer, String> map = createMap();
+
+		assertEquals(Arrays.asList(10, 20, 30, 40),
+				new ArrayList<Integer>(map.keySet()));
+		assertEquals((Integer) 10, map.firstKey());
+		assertEquals((Integer) 40, map.lastKey());
+		assertEquals((Integer) 20, map.ceilingKey(15));
+		assertEquals((Integer) 20, map.ceilingKey(20));
+		assertEquals((Integer) 10, map.floorKey(15));
+		assertEquals((Integer) 30, map.higherKey(20));
+		assertEquals((Integer) 10, map.lowerKey(20));
+		assertNull(map.higherKey(40));
+
+		List<String> values = new ArrayList<String>();
+		for (Entry<Integer, String> couple : map) {
+			values.add(couple.getValue());
+		}
+		assertEquals(Arrays.asList("a1", "a2", "b", "c", "d"), values);
+	}
+
+	@Test
+	public void testRangesAreBackedByTheMap() {
+		TreeMultiMap<Integer, String> map = createMap();
+		NavigableMultiMap<Integer, String> range = map.subMap(15, 35);
+
+		assertEquals(Arrays.asList(20, 30), new ArrayList<Integer>(range.keySet()));
+		assertFalse(range.containsKey(10));
+
+		range.add(25, "e");
+		assertTrue(map.containsCouple(25, "e"));
+		map.add(35, "f");
+		assertFalse(range.containsKey(35));
+		map.add(34, "g");
+		assertTrue(range.containsKey(34));
+
+		range.remove(20);
+		assertFalse(map.containsKey(20));
+
+		try {
+			range.add(50, "x");
+			fail("No exception thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		assertEquals(Arrays.asList(40, 35, 34, 30, 25, 10),
+				new ArrayList<Integer>(map.descendingMap().keySet()));
+		assertEquals(Arrays.asList(10, 25),
+				new ArrayList<Integer>(map.headMap(25, true).keySet()));
+		assertEquals(Arrays.asList(35, 40),
+				new ArrayList<Integer>(map.tailMap(34, false).keySet()));
+	}
+
+	@Test
+	public void testEmptyKeysAreRemoved() {
+		TreeMultiMap<Integer, String> map = createMap();
+
+		map.remove(10, "a1");
+		assertTrue(map.containsKey(10));
+		map.getAll(10).remove("a2");
+		assertFalse(map.containsKey(10));
+		assertEquals((Integer) 20, map.firstKey());
+	}
+}
@@ -0,0 +1,331 @@
+package fr.vergne.collection.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Map.Entry;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import fr.vergne.collection.MultiMap;
+import fr.vergne.collection.impl.ArrayListMultiMap;
+import fr.vergne.collection.impl.ConcurrentMultiMap;
+import fr.vergne.collection.impl.HashMultiMap;
+import fr.vergne.collection.impl.ListMultiMap;
+
+public class MultiMapUtilsTest {
+
+	@Test
+	public void testToHashMultiMapCollectsAllCouples() {
+		HashMultiMap<Integer, Integer> map = IntStream.range(0, 100000)
+				.parallel().boxed()
+				.collect(MultiMapUtils.toHashMultiMap(i -> i % 100, i -> i));
+
+		assertEquals(100, map.size());
+		assertEquals(100000, map.couplesCount());
+		for (int i = 0; i < 100000; i++) {
+			assertTrue(map.containsCouple(i % 100, i));
+		}
+	}
+
+	@Test
+	public void testToListMultiMapPreservesOrder() {
+		ListMultiMap<Integer, Integer> map = IntStream.range(0, 100000)
+				.parallel().boxed()
+				.collect(MultiMapUtils.toListMultiMap(i -> i % 3, i -> i));
+
+		assertEquals(3, map.size());
+		for (int key = 0; key < 3; key++) {
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int i = key; i < 100000; i += 3) {
+				expected.add(i);
+			}
+			assertEquals(expected, map.getAll(key));
+		}
+	}
+
+	@Test
+	public void testToConcurrentMultiMapCollectsAllCouples() {
+		ConcurrentMultiMap<Integer, Integer> map = IntStream.range(0, 10000)
+				.parallel().boxed()
+				.collect(MultiMapUtils.toConcurrentMultiMap(i -> i % 10, i -> i));
+
+		assertEquals(10, map.size());
+		assertEquals(1000, map.getAll(3).size());
+	}
+
+	@Test
+	public void testMapValuesTransformsOnAccess() {
+		ListMultiMap<String, Integer> map = new ListMultiMap<String, Integer>();
+		map.addAll("a", Arrays.asList(1, 2, 3));
+		MultiMap<String, String> view = MultiMapUtils.mapValues(map,
+				i -> "v" + i);
+
+		assertEquals(Arrays.asList("v1", "v2", "v3"), new ArrayList<String>(
+				view.getAll("a")));
+		map.add("b", 4);
+		assertTrue(view.containsCouple("b", "v4"));
+		assertTrue(view.remove("a", "v2"));
+		assertEquals(Arrays.asList(1, 3), map.getAll("a"));
+		try {
+			view.add("c", "v5");
+			fail("No exception thrown");
+		} catch (UnsupportedOperationException cause) {
+			// cannot convert back
+		}
+	}
+
+	@Test
+	public void testMapKeysUsesTheInverse() {
+		HashMultiMap<Integer, String> map = new HashMultiMap<Integer, String>();
+		map.add(1, "a");
+		MultiMap<String, String> view = MultiMapUtils.mapKeys(map,
+				String.class, i -> "k" + i,
+				k -> Integer.parseInt(k.substring(1)));
+
+		assertEquals(new HashSet<String>(Arrays.asList("k1")), view.keySet());
+		assertTrue(view.containsKey("k1"));
+		assertFalse(view.containsKey(1));
+		assertTrue(view.add("k2", "b"));
+		assertTrue(map.containsCouple(2, "b"));
+	}
+
+	@Test(expected = ClassCastException.class)
+	public void testMapKeysPropagatesExceptionsOfTheInverse() {
+		HashMultiMap<Integer, String> map = new HashMultiMap<Integer, String>();
+		map.add(1, "a");
+		MultiMap<Object, String> view = MultiMapUtils.mapKeys(map,
+				Object.class, i -> i, k -> (Integer) k);
+
+		view.containsKey("1");
+	}
+
+	@Test
+	public void testFiltersCompose() {
+		ListMultiMap<Integer, Integer> map = new ListMultiMap<Integer, Integer>();
+		for (int i = 0; i < 100; i++) {
+			map.add(i % 10, i);
+		}
+		MultiMap<Integer, Integer> view = MultiMapUtils.filterValues(
+				MultiMapUtils.filterKeys(map, k -> k % 2 == 0), v -> v < 50);
+
+		assertEquals(5, view.size());
+		assertNull(view.getAll(1));
+		assertEquals(Arrays.asList(4, 14, 24, 34, 44), new ArrayList<Integer>(
+				view.getAll(4)));
+		assertFalse(view.containsCouple(4, 54));
+		try {
+			view.add(1, 1);
+			fail("No exception thrown");
+		} catch (IllegalArgumentException cause) {
+			// rejected key
+		}
+
+		view.clear();
+		assertEquals(10, map.size());
+		assertEquals(75, map.couplesCount());
+		assertTrue(view.isEmpty());
+	}
+
+	@Test
+	public void testMergeAllMovesAllCouples() {
+		List<ListMultiMap<Integer, Integer>> maps = new ArrayList<ListMultiMap<Integer, Integer>>();
+		for (int m = 0; m < 20; m++) {
+			ListMultiMap<Integer, Integer> map = new ListMultiMap<Integer, Integer>();
+			for (int i = 0; i < 1000; i++) {
+				map.add((m * 1000 + i) % 1500, m);
+			}
+			maps.add(map);
+		}
+
+		ListMultiMap<Integer, Integer> merged = MultiMapUtils.mergeAll(maps,
+				ListMultiMap::new);
+
+		assertEquals(1500, merged.size());
+		assertEquals(20000, merged.couplesCount());
+		for (ListMultiMap<Integer, Integer> map : maps) {
+			assertTrue(map.isEmpty());
+		}
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int m = 0; m < 20; m++) {
+			for (int i = 0; i < 1000; i++) {
+				if ((m * 1000 + i) % 1500 == 7) {
+					expected.add(m);
+				} else {
+					// other key
+				}
+			}
+		}
+		assertEquals(expected, merged.getAll(7));
+	}
+
+	@Test
+	public void testMergeAllKeepsTheOrderOfMapsOfOtherClasses() {
+		ListMultiMap<String, Integer> map1 = new ListMultiMap<String, Integer>();
+		map1.addAll("a", Arrays.asList(1, 2));
+		ListMultiMap<String, Integer> map2 = new ArrayListMultiMap<String, Integer>();
+		map2.addAll("a", Arrays.asList(3, 4));
+		map2.add("b", 5);
+		ListMultiMap<String, Integer> map3 = new ListMultiMap<String, Integer>();
+		map3.add("a", 6);
+		map3.add("b", 7);
+
+		ListMultiMap<String, Integer> merged = MultiMapUtils.mergeAll(
+				Arrays.asList(map1, map2, map3), ListMultiMap::new);
+
+		assertEquals(Arrays.asList(1, 2, 3, 4, 6), merged.getAll("a"));
+		assertEquals(Arrays.asList(5, 7), merged.getAll("b"));
+		assertEquals(7, merged.couplesCount());
+		assertTrue(map2.isEmpty());
+	}
+
+	@Test
+	public void testMergeAllRemovesDuplicatesOfSets() {
+		HashMultiMap<String, Integer> map1 = new HashMultiMap<String, Integer>();
+		map1.addAll("a", Arrays.asList(1, 2));
+		map1.add("b", 3);
+		HashMultiMap<String, Integer> map2 = new HashMultiMap<String, Integer>();
+		map2.addAll("a", Arrays.asList(2, 3));
+
+		HashMultiMap<String, Integer> merged = MultiMapUtils.mergeAll(Arrays
+				.asList(map1, map2));
+
+		assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 3)),
+				merged.getAll("a"));
+		assertEquals(4, merged.couplesCount());
+	}
+
+	private static HashMultiMap<String, Integer> multiMap(Object... couples) {
+		HashMultiMap<String, Integer> map = new HashMultiMap<String, Integer>();
+		for (int i = 0; i < couples.length; i += 2) {
+			map.add((String) couples[i], (Integer) couples[i + 1]);
+		}
+		return map;
+	}
+
+	@Test
+	public void testUnionContainsCouplesOfBothMaps() {
+		HashMultiMap<String, Integer> map1 = multiMap("a", 1, "a", 2, "b", 3);
+		HashMultiMap<String, Integer> map2 = multiMap("a", 2, "a", 4, "c", 5);
+
+		MultiMap<String, Integer> union = MultiMapUtils.union(map1, map2);
+
+		assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c")),
+				union.keySet());
+		assertEquals(3, union.size());
+		assertEquals(Arrays.asList(1, 2, 4),
+				new ArrayList<Integer>(union.getAll("a")));
+		assertTrue(union.containsCouple("c", 5));
+		assertNull(union.getAll("d"));
+
+		map2.add("d", 6);
+		assertTrue(union.containsCouple("d", 6));
+	}
+
+	@Test
+	public void testIntersectionContainsCommonCouples() {
+		HashMultiMap<String, Integer> map1 = multiMap("a", 1, "a", 2, "b", 3,
+				"c", 4);
+		HashMultiMap<String, Integer> map2 = multiMap("a", 2, "a", 5, "b", 6,
+				"c", 4);
+
+		MultiMap<String, Integer> intersection = MultiMapUtils.intersection(
+				map1, map2);
+
+		assertEquals(new HashSet<String>(Arrays.asList("a", "c")),
+				intersection.keySet());
+		assertEquals(Arrays.asList(2),
+				new ArrayList<Integer>(intersection.getAll("a")));
+		assertFalse(intersection.containsKey("b"));
+		assertFalse(intersection.containsCouple("a", 1));
+	}
+
+	@Test
+	public void testDifferenceExcludesCouplesOfSecondMap() {
+		HashMultiMap<String, Integer> map1 = multiMap("a", 1, "a", 2, "b", 3,
+				"c", 4);
+		HashMultiMap<String, Integer> map2 = multiMap("a", 2, "b", 3);
+
+		MultiMap<String, Integer> difference = MultiMapUtils.difference(map1,
+				map2);
+
+		assertEquals(new HashSet<String>(Arrays.asList("a", "c")),
+				difference.keySet());
+		assertEquals(Arrays.asList(1),
+				new ArrayList<Integer>(difference.getAll("a")));
+		assertNull(difference.getAll("b"));
+		assertTrue(difference.containsCouple("c", 4));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSetOperationsAreReadOnly() {
+		MultiMapUtils.union(multiMap("a", 1), multiMap("b", 2)).add("c", 3);
+	}
+
+	@Test
+	public void testJoinCombinesValuesOfCommonKeys() {
+		HashMultiMap<String, Integer> map1 = multiMap("a", 1, "a", 2, "b", 3);
+		HashMultiMap<String, String> map2 = new HashMultiMap<String, String>();
+		map2.add("a", "x");
+		map2.add("c", "y");
+		for (int i = 0; i < 10; i++) {
+			map2.add("k" + i, "z");
+		}
+
+		Set<MultiMapUtils.Joined<String, Integer, String>> expected = new HashSet<MultiMapUtils.Joined<String, Integer, String>>(
+				Arrays.asList(
+						new MultiMapUtils.Joined<String, Integer, String>("a",
+								1, "x"),
+						new MultiMapUtils.Joined<String, Integer, String>("a",
+								2, "x")));
+		assertEquals(expected, MultiMapUtils.join(map1, map2)
+				.collect(Collectors.toSet()));
+		assertEquals(expected, MultiMapUtils.parallelJoin(map1, map2)
+				.collect(Collectors.toSet()));
+	}
+
+	@Test
+	public void testLeftJoinKeepsKeysWithoutRightValue() {
+		HashMultiMap<String, Integer> map1 = multiMap("a", 1, "b", 3);
+		HashMultiMap<String, String> map2 = new HashMultiMap<String, String>();
+		map2.add("a", "x");
+		map2.add("a", "y");
+
+		Set<MultiMapUtils.Joined<String, Integer, String>> expected = new HashSet<MultiMapUtils.Joined<String, Integer, String>>(
+				Arrays.asList(
+						new MultiMapUtils.Joined<String, Integer, String>("a",
+								1, "x"),
+						new MultiMapUtils.Joined<String, Integer, String>("a",
+								1, "y"),
+						new MultiMapUtils.Joined<String, Integer, String>("b",
+								3, null)));
+		assertEquals(expected, MultiMapUtils.leftJoin(map1, map2)
+				.collect(Collectors.toSet()));
+		assertEquals(expected, MultiMapUtils.parallelLeftJoin(map1, map2)
+				.collect(Collectors.toSet()));
+	}
+
+	@Test
+	public void testComposeFollowsTwoHops() {
+		HashMultiMap<String, Integer> map1 = multiMap("a", 1, "a", 2, "b", 3);
+		HashMultiMap<Integer, String> map2 = new HashMultiMap<Integer, String>();
+		map2.add(1, "x");
+		map2.add(2, "x");
+		map2.add(2, "y");
+
+		HashMultiMap<String, String> composed = MultiMapUtils
+				.compose(map1, map2)
+				.collect(MultiMapUtils.toHashMultiMap(Entry::getKey,
+						Entry::getValue));
+		assertEquals(1, composed.size());
+		assertEquals(new HashSet<String>(Arrays.asList("x", "y")),
+				composed.getAll("a"));
+		assertEquals(3, MultiMapUtils.parallelCompose(map1, map2).count());
+	}
+}